@@ -0,0 +1,35 @@
+package me.googas.lazy.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each thread count with the GC profiler, so that both the throughput
+ * and the allocation rate are reported. The thread counts are given by the {@code threads} system
+ * property, separated by commas, every other option is read from the JMH command line:
+ *
+ * <pre>
+ *     java -Dthreads=1,4,16 -jar benchmarks/target/benchmarks.jar CacheBenchmark.get -p size=1000
+ * </pre>
+ */
+public final class BenchmarkRunner {
+
+  private BenchmarkRunner() {}
+
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    for (String threads : System.getProperty("threads", "1,4").split(",")) {
+      new Runner(
+              new OptionsBuilder()
+                  .parent(options)
+                  .threads(Integer.parseInt(threads.trim()))
+                  .addProfiler(GCProfiler.class)
+                  .build())
+          .run();
+    }
+  }
+}
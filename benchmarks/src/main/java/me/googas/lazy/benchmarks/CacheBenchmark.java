@@ -0,0 +1,196 @@
+package me.googas.lazy.benchmarks;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+import me.googas.lazy.cache.Cache;
+import me.googas.lazy.cache.CacheMap;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.KeyedCache;
+import me.googas.lazy.cache.MemoryCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the operations of the caches. Every thread works on the same cache which is filled with
+ * {@link #size} items of {@link #types} concrete classes before the trial starts.
+ *
+ * <p>The implementations are:
+ *
+ * <ul>
+ *   <li>{@code memory}: {@link MemoryCache}
+ *   <li>{@code map}: {@link MapCache}, the default methods of {@link CacheMap}
+ *   <li>{@code keyed}: {@link KeyedCache}
+ * </ul>
+ *
+ * <p>One of every {@link #EXPIRING} items expires at a random time during the warmup and
+ * measurement iterations, so that {@link #run()} measures expirations and not only empty ticks.
+ *
+ * <p>Map based caches are filled using {@link CacheMap#store(Catchable, long)}, which is what
+ * {@link CacheMap#add(Catchable)} does once it checks that the object is not inside the cache,
+ * scheduling its expiration. The check is skipped because it is a scan of the cache, which would
+ * make filling it with a million objects quadratic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CacheBenchmark {
+
+  /** One of every this many items expires during the benchmark. */
+  private static final int EXPIRING = 10;
+
+  /** The millis that the warmup and measurement iterations take, the items expire within them. */
+  private static final int WINDOW = 8000;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  private int size;
+
+  @Param({"1", "8"})
+  private int types;
+
+  @Param({"memory", "map", "keyed"})
+  private String cache;
+
+  /** Gives each thread a range of ids that are not inside the cache. */
+  @NonNull private final AtomicInteger ranges = new AtomicInteger();
+
+  private Cache instance;
+  private Item[] items;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    switch (this.cache) {
+      case "memory":
+        this.instance = new MemoryCache();
+        break;
+      case "map":
+        this.instance = new MapCache();
+        break;
+      case "keyed":
+        this.instance = new KeyedCache();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown cache " + this.cache);
+    }
+    this.items = new Item[this.size];
+    SplittableRandom random = new SplittableRandom(this.size);
+    for (int i = 0; i < this.size; i++) {
+      Item item =
+          i % CacheBenchmark.EXPIRING == 0
+              ? Item.create(i % this.types, i, 1 + random.nextInt(CacheBenchmark.WINDOW))
+              : Item.create(i % this.types, i);
+      this.items[i] = item;
+      if (this.instance instanceof CacheMap) {
+        ((CacheMap) this.instance).store(item, this.instance.getTimeToRemove(item));
+      } else {
+        this.instance.add(item);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.instance.close();
+  }
+
+  @NonNull
+  private Item random() {
+    return this.items[ThreadLocalRandom.current().nextInt(this.size)];
+  }
+
+  /**
+   * Add an item that is not inside the cache. It is removed afterwards so that the size of the
+   * cache does not change
+   *
+   * @param ids the ids of the thread
+   * @return whether the item was removed
+   */
+  @Benchmark
+  public boolean add(@NonNull Ids ids) {
+    Item item = Item.create(ids.next % this.types, ids.next());
+    this.instance.add(item);
+    return this.instance.remove(item);
+  }
+
+  /**
+   * Remove an item that is inside the cache. It is added back afterwards so that the size of the
+   * cache does not change
+   *
+   * @return whether the item was removed
+   */
+  @Benchmark
+  public boolean remove() {
+    Item item = this.random();
+    boolean removed = this.instance.remove(item);
+    // Another thread may have removed it first, only the one that removed it adds it back
+    if (removed) this.instance.add(item);
+    return removed;
+  }
+
+  @Benchmark
+  public Optional<? extends Item> get() {
+    Item item = this.random();
+    int id = item.getId();
+    return this.instance.get(item.getClass(), candidate -> candidate.getId() == id);
+  }
+
+  @Benchmark
+  public Optional<? extends Item> getByKey() {
+    Item item = this.random();
+    return this.instance.getByKey(item.getClass(), item.getCacheKey());
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return this.instance.contains(this.random());
+  }
+
+  @Benchmark
+  public void refresh() {
+    this.instance.refresh(this.random());
+  }
+
+  @Benchmark
+  public Collection<Item> getMany() {
+    return this.instance.getMany(Item.class, item -> item.getId() % 100 == 0);
+  }
+
+  @Benchmark
+  public void run() {
+    this.instance.run();
+  }
+
+  /** The ids that a thread uses for items which are not inside the cache. */
+  @State(Scope.Thread)
+  public static class Ids {
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup(@NonNull CacheBenchmark benchmark) {
+      this.next = benchmark.size + benchmark.ranges.getAndIncrement() * (1 << 24);
+    }
+
+    private int next() {
+      return this.next++;
+    }
+  }
+}
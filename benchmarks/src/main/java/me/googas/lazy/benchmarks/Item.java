@@ -0,0 +1,129 @@
+package me.googas.lazy.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import lombok.Getter;
+import lombok.NonNull;
+import me.googas.lazy.cache.Catchable;
+
+/**
+ * The object stored in the benchmarked caches. There are many concrete classes so that the number
+ * of types inside the cache can change between runs.
+ */
+public abstract class Item implements Catchable {
+
+  /** The number of concrete classes of items. */
+  public static final int TYPES = 8;
+
+  private static final long TO_REMOVE = TimeUnit.HOURS.toMillis(1);
+
+  @NonNull
+  @SuppressWarnings("unchecked")
+  private static final IntFunction<Item>[] CONSTRUCTORS =
+      new IntFunction[] {
+        Type0::new,
+        Type1::new,
+        Type2::new,
+        Type3::new,
+        Type4::new,
+        Type5::new,
+        Type6::new,
+        Type7::new
+      };
+
+  @Getter private final int id;
+  /** The key is kept boxed so that lookups do not allocate it. */
+  @NonNull private final Integer key;
+
+  private long toRemove = Item.TO_REMOVE;
+
+  private Item(int id) {
+    this.id = id;
+    this.key = id;
+  }
+
+  /**
+   * Create an item.
+   *
+   * @param type the index of the concrete class of the item, from 0 to {@link #TYPES}
+   * @param id the id of the item
+   * @return the item
+   */
+  @NonNull
+  public static Item create(int type, int id) {
+    return Item.CONSTRUCTORS[type].apply(id);
+  }
+
+  /**
+   * Create an item that expires after a time.
+   *
+   * @param type the index of the concrete class of the item, from 0 to {@link #TYPES}
+   * @param id the id of the item
+   * @param toRemove the time in millis for the item to expire after being added
+   * @return the item
+   */
+  @NonNull
+  public static Item create(int type, int id, long toRemove) {
+    Item item = Item.create(type, id);
+    item.toRemove = toRemove;
+    return item;
+  }
+
+  @Override
+  public long getToRemove() {
+    return this.toRemove;
+  }
+
+  @Override
+  public @NonNull Integer getCacheKey() {
+    return this.key;
+  }
+
+  public static final class Type0 extends Item {
+    private Type0(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type1 extends Item {
+    private Type1(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type2 extends Item {
+    private Type2(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type3 extends Item {
+    private Type3(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type4 extends Item {
+    private Type4(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type5 extends Item {
+    private Type5(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type6 extends Item {
+    private Type6(int id) {
+      super(id);
+    }
+  }
+
+  public static final class Type7 extends Item {
+    private Type7(int id) {
+      super(id);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package me.googas.lazy.benchmarks;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+import me.googas.lazy.cache.CacheMap;
+import me.googas.lazy.cache.Catchable;
+
+/**
+ * A {@link CacheMap} that does not override any of its default methods, to measure them apart from
+ * the ones that {@link me.googas.lazy.cache.MemoryCache} overrides.
+ */
+public class MapCache implements CacheMap {
+
+  @NonNull @Getter
+  private final Map<SoftReference<Catchable>, Long> map = new ConcurrentHashMap<>();
+
+  @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+
+  @Override
+  public @NonNull MapCache handle(@NonNull Consumer<Throwable> handler) {
+    this.handler = handler;
+    return this;
+  }
+}
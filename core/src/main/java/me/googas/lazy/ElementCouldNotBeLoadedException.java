@@ -0,0 +1,16 @@
+package me.googas.lazy;
+
+import lombok.NonNull;
+
+/** Thrown when an element could not be loaded from the database after it was not found in cache. */
+public class ElementCouldNotBeLoadedException extends Exception {
+
+  /**
+   * Create the exception.
+   *
+   * @param cause another exception to why it could not be loaded.
+   */
+  public ElementCouldNotBeLoadedException(@NonNull Throwable cause) {
+    super(cause);
+  }
+}
@@ -0,0 +1,107 @@
+package me.googas.lazy;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.NonNull;
+
+/**
+ * The subloaders of a {@link Loader}. Finding the subloader for a class goes through every
+ * subloader only the first time, the result is kept by the class so the next lookups for it are a
+ * single hash lookup. The results are forgotten each time the registry changes.
+ *
+ * @param <S> the type of the subloaders
+ */
+public class SubloaderRegistry<S> extends AbstractList<S> {
+
+  /** Marks the classes for which there's no subloader. */
+  @NonNull private static final Object NONE = new Object();
+
+  @NonNull private final List<S> subloaders;
+
+  /** The subloader that is assignable to each class, replaced when the registry changes. */
+  @NonNull private volatile ClassValue<Object> resolved;
+
+  /** Create an empty registry. */
+  public SubloaderRegistry() {
+    this.subloaders = new CopyOnWriteArrayList<>();
+    this.resolved = this.resolution();
+  }
+
+  /**
+   * Create a registry with subloaders.
+   *
+   * @param subloaders the subloaders to add
+   */
+  public SubloaderRegistry(@NonNull Collection<? extends S> subloaders) {
+    this.subloaders = new CopyOnWriteArrayList<>(subloaders);
+    this.resolved = this.resolution();
+  }
+
+  @NonNull
+  private ClassValue<Object> resolution() {
+    return new ClassValue<Object>() {
+      @Override
+      protected Object computeValue(Class<?> type) {
+        for (S subloader : SubloaderRegistry.this.subloaders) {
+          if (type.isAssignableFrom(subloader.getClass())) return subloader;
+        }
+        return SubloaderRegistry.NONE;
+      }
+    };
+  }
+
+  /**
+   * Get the first subloader that is assignable to a class.
+   *
+   * @param clazz the class of the subloader or a class that is assignable for it
+   * @param <T> the type of the subloader
+   * @return the subloader
+   * @throws NullPointerException if the subloader could not be found
+   */
+  @NonNull
+  public <T> T get(@NonNull Class<T> clazz) {
+    Object subloader = this.resolved.get(clazz);
+    if (subloader == SubloaderRegistry.NONE) {
+      throw new NullPointerException("Could not find subloader for " + clazz);
+    }
+    return clazz.cast(subloader);
+  }
+
+  @Override
+  public S get(int index) {
+    return this.subloaders.get(index);
+  }
+
+  @Override
+  public int size() {
+    return this.subloaders.size();
+  }
+
+  @Override
+  public S set(int index, @NonNull S subloader) {
+    S previous = this.subloaders.set(index, subloader);
+    this.resolved = this.resolution();
+    return previous;
+  }
+
+  @Override
+  public void add(int index, @NonNull S subloader) {
+    this.subloaders.add(index, subloader);
+    this.resolved = this.resolution();
+  }
+
+  @Override
+  public S remove(int index) {
+    S removed = this.subloaders.remove(index);
+    this.resolved = this.resolution();
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    this.subloaders.clear();
+    this.resolved = this.resolution();
+  }
+}
@@ -0,0 +1,350 @@
+package me.googas.lazy.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A {@link KeyedCache} that holds up to a maximum weight of objects, the weight of each object is
+ * given by {@link Catchable#getWeight()} which is 1 by default, making the maximum a number of
+ * objects. When the maximum is exceeded objects are removed, calling {@link Catchable#onRemove()},
+ * before they expire.
+ *
+ * <p>Objects to remove are chosen with the W-TinyLFU policy: new objects go into a small LRU window
+ * and when they leave it they may only enter the main space if they have been used more often than
+ * the object that would be removed to make room for them, the frequency of use is estimated with a
+ * {@link FrequencySketch}. The main space is a segmented LRU, objects that are used again are moved
+ * from its probation segment to its protected one, so a burst of objects that are used only once
+ * cannot push out the ones that are used all the time.
+ *
+ * <p>Evicted objects may be demoted into an {@link OffHeapTier} instead of being removed, see
+ * {@link #demoteTo(OffHeapTier)}.
+ *
+ * <p>Readers never wait for each other: reads are put into a buffer of the reading thread and
+ * recorded in the policy by whichever thread next gets to update it. A read is only dropped when
+ * its buffer is full and another thread is updating the policy, which barely changes the estimated
+ * frequencies.
+ */
+public class BoundedCache extends KeyedCache {
+
+  /** The percentage of the maximum that the window takes. */
+  private static final double WINDOW = 0.01;
+  /** The percentage of the main space that the protected segment takes. */
+  private static final double PROTECTED = 0.8;
+
+  /** The number of read buffers, a power of two so that threads are assigned with a mask. */
+  private static final int BUFFERS =
+      Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+
+  /** The maximum weight of the objects inside the cache. */
+  @Getter private final long maximum;
+
+  private final long windowMaximum;
+  private final long protectedMaximum;
+  @NonNull private final ReentrantLock lock = new ReentrantLock();
+  @NonNull private final FrequencySketch sketch;
+  @NonNull private final Region window = new Region();
+  @NonNull private final Region probation = new Region();
+  @NonNull private final Region protectedRegion = new Region();
+  @NonNull private final ReadBuffer[] buffers = new ReadBuffer[BoundedCache.BUFFERS];
+
+  /**
+   * Create the cache.
+   *
+   * @param maximum the maximum weight of the objects inside the cache
+   * @param resolution the resolution of the expiration ticks. Objects may be removed up to this
+   *     much time after their removal time
+   * @param unit the unit of the resolution
+   */
+  public BoundedCache(long maximum, long resolution, @NonNull TimeUnit unit) {
+    super(resolution, unit);
+    if (maximum < 0) throw new IllegalArgumentException("Maximum must not be negative");
+    this.maximum = maximum;
+    this.windowMaximum = Math.max(1, (long) (maximum * BoundedCache.WINDOW));
+    this.protectedMaximum = (long) ((maximum - this.windowMaximum) * BoundedCache.PROTECTED);
+    this.sketch = new FrequencySketch(maximum);
+    for (int i = 0; i < this.buffers.length; i++) {
+      this.buffers[i] = new ReadBuffer();
+    }
+  }
+
+  /**
+   * Create the cache with a resolution of a second.
+   *
+   * @param maximum the maximum weight of the objects inside the cache
+   */
+  public BoundedCache(long maximum) {
+    this(maximum, 1, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public @NonNull BoundedCache removeWith(@NonNull RemovalPipeline pipeline) {
+    super.removeWith(pipeline);
+    return this;
+  }
+
+  @Override
+  public @NonNull BoundedCache listen(@NonNull Consumer<Collection<Catchable>> listener) {
+    super.listen(listener);
+    return this;
+  }
+
+  @Override
+  public @NonNull BoundedCache demoteTo(@NonNull OffHeapTier tier) {
+    super.demoteTo(tier);
+    return this;
+  }
+
+  @Override
+  public @NonNull BoundedCache snapshotTo(@NonNull CacheSnapshot snapshot) {
+    super.snapshotTo(snapshot);
+    return this;
+  }
+
+  @Override
+  public @NonNull <T extends Catchable> BoundedCache refreshAhead(
+      @NonNull Class<T> clazz, double fraction, @NonNull Reload<T> reload) {
+    super.refreshAhead(clazz, fraction, reload);
+    return this;
+  }
+
+  @Override
+  public @NonNull <T extends Catchable> BoundedCache refreshAhead(
+      @NonNull Class<T> clazz,
+      double fraction,
+      @NonNull Executor executor,
+      @NonNull Reload<T> reload) {
+    super.refreshAhead(clazz, fraction, executor, reload);
+    return this;
+  }
+
+  /**
+   * Get the current weight of the objects inside the cache.
+   *
+   * @return the weight of the objects
+   */
+  public long getWeightedSize() {
+    this.lock.lock();
+    try {
+      return this.weight();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private long weight() {
+    return this.window.weight + this.probation.weight + this.protectedRegion.weight;
+  }
+
+  @Override
+  void added(@NonNull Entry entry) {
+    List<Entry> victims;
+    this.lock.lock();
+    try {
+      this.drain();
+      this.sketch.increment(entry.hash());
+      this.window.add(entry);
+      victims = this.evictions();
+    } finally {
+      this.lock.unlock();
+    }
+    // Objects are removed outside the lock as their onRemove may take long
+    List<Catchable> removed = new ArrayList<>();
+    for (Entry victim : victims) {
+      this.demote(victim, removed);
+    }
+    this.onRemove(removed);
+  }
+
+  @Override
+  void accessed(@NonNull Entry entry) {
+    ReadBuffer buffer =
+        this.buffers[(int) Thread.currentThread().getId() & (this.buffers.length - 1)];
+    boolean buffered = buffer.offer(entry);
+    if (!this.lock.tryLock()) return;
+    try {
+      this.drain();
+      if (!buffered) this.record(entry);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Record the buffered reads in the policy. Must be called while holding the lock */
+  private void drain() {
+    for (ReadBuffer buffer : this.buffers) {
+      buffer.drain(this::record);
+    }
+  }
+
+  /**
+   * Record the read of an entry in the policy. Must be called while holding the lock
+   *
+   * @param entry the read entry
+   */
+  private void record(@NonNull Entry entry) {
+    this.sketch.increment(entry.hash());
+    if (this.window.touch(entry) || this.protectedRegion.touch(entry)) return;
+    if (this.probation.remove(entry)) {
+      this.protectedRegion.add(entry);
+      while (this.protectedRegion.weight > this.protectedMaximum) {
+        Entry demoted = this.protectedRegion.eldest();
+        this.protectedRegion.remove(demoted);
+        this.probation.add(demoted);
+      }
+    }
+  }
+
+  @Override
+  void removed(@NonNull Entry entry) {
+    this.lock.lock();
+    try {
+      this.drain();
+      this.detach(entry);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void detach(@NonNull Entry entry) {
+    if (!this.window.remove(entry) && !this.probation.remove(entry)) {
+      this.protectedRegion.remove(entry);
+    }
+  }
+
+  /**
+   * Move the entries that overflow the window into the main space and choose the entries to remove
+   * until the cache does not exceed its maximum. Must be called while holding the lock
+   *
+   * @return the entries to remove
+   */
+  @NonNull
+  private List<Entry> evictions() {
+    Deque<Entry> candidates = new ArrayDeque<>();
+    while (this.window.weight > this.windowMaximum) {
+      Entry moved = this.window.eldest();
+      this.window.remove(moved);
+      this.probation.add(moved);
+      candidates.add(moved);
+    }
+    List<Entry> victims = new ArrayList<>();
+    while (this.weight() > this.maximum) {
+      Entry victim = this.probation.eldest();
+      Entry candidate = candidates.peekLast();
+      if (victim == null) {
+        victim = this.protectedRegion.eldest();
+        if (victim == null) victim = this.window.eldest();
+      } else if (candidate != null
+          && candidate != victim
+          && this.sketch.frequency(candidate.hash()) <= this.sketch.frequency(victim.hash())) {
+        // The candidate is not used more than the victim so it is not admitted
+        victim = candidate;
+      }
+      this.detach(victim);
+      candidates.remove(victim);
+      victims.add(victim);
+    }
+    return victims;
+  }
+
+  /**
+   * A ring of reads that many threads may add to and that is drained by the thread holding the
+   * lock. Reads of entries that have been removed in the meantime are not inside any region, so
+   * recording them only increments their frequency.
+   */
+  private static final class ReadBuffer {
+
+    /** The number of reads that the buffer holds, a power of two. */
+    private static final int SIZE = 16;
+
+    @NonNull private final AtomicReferenceArray<Entry> reads = new AtomicReferenceArray<>(SIZE);
+    @NonNull private final AtomicLong tail = new AtomicLong();
+    /** The position of the next read to drain, only written while holding the lock. */
+    private volatile long head;
+
+    /**
+     * Add a read into the buffer.
+     *
+     * @param entry the read entry
+     * @return whether the read was added, false if the buffer is full or another thread added a
+     *     read at the same time
+     */
+    private boolean offer(@NonNull Entry entry) {
+      long tail = this.tail.get();
+      if (tail - this.head >= ReadBuffer.SIZE) return false;
+      if (!this.tail.compareAndSet(tail, tail + 1)) return false;
+      this.reads.lazySet((int) tail & (ReadBuffer.SIZE - 1), entry);
+      return true;
+    }
+
+    /**
+     * Take the reads out of the buffer. Must be called while holding the lock
+     *
+     * @param consumer the consumer of the reads
+     */
+    private void drain(@NonNull Consumer<Entry> consumer) {
+      long head = this.head;
+      long tail = this.tail.get();
+      for (; head < tail; head++) {
+        int index = (int) head & (ReadBuffer.SIZE - 1);
+        Entry entry = this.reads.get(index);
+        // The read has a position but has not been written yet
+        if (entry == null) break;
+        this.reads.lazySet(index, null);
+        consumer.accept(entry);
+      }
+      this.head = head;
+    }
+  }
+
+  /** A segment of the cache in LRU order. */
+  private static final class Region {
+
+    @NonNull
+    private final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+
+    private void add(@NonNull Entry entry) {
+      if (this.entries.put(entry, entry) == null) this.weight += entry.weight();
+    }
+
+    private boolean remove(@NonNull Entry entry) {
+      if (this.entries.remove(entry) == null) return false;
+      this.weight -= entry.weight();
+      return true;
+    }
+
+    /**
+     * Move the entry to the most recently used position.
+     *
+     * @param entry the entry to move
+     * @return whether the entry is inside this region
+     */
+    private boolean touch(@NonNull Entry entry) {
+      return this.entries.get(entry) != null;
+    }
+
+    /**
+     * Get the least recently used entry.
+     *
+     * @return the entry or null if the region is empty
+     */
+    private Entry eldest() {
+      Iterator<Entry> iterator = this.entries.keySet().iterator();
+      return iterator.hasNext() ? iterator.next() : null;
+    }
+  }
+}
@@ -1,8 +1,10 @@
 package me.googas.lazy.cache;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -53,9 +55,37 @@ public interface Cache extends Runnable {
   @NonNull
   default <T extends Catchable> Optional<T> get(
       @NonNull Class<T> clazz, @NonNull Predicate<T> predicate, boolean refresh) {
-    Optional<T> optional = this.filter(clazz, predicate).findFirst();
-    if (refresh) optional.ifPresent(this::refresh);
-    return optional;
+    T catchable = this.find(clazz, predicate);
+    if (refresh && catchable != null) this.refresh(catchable);
+    return Optional.ofNullable(catchable);
+  }
+
+  /**
+   * Find the first object matching a predicate. This is the read path of {@link #get(Class,
+   * Predicate, boolean)}, implementations should override it to look for the object without
+   * creating a {@link Stream}. This will not refresh the object
+   *
+   * @param clazz the clazz of the catchable for casting
+   * @param predicate the predicate to match the catchable
+   * @param <T> the type of the catchable
+   * @return the catchable if found else null
+   */
+  default <T extends Catchable> T find(@NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    return this.filter(clazz, predicate).findFirst().orElse(null);
+  }
+
+  /**
+   * Get an object from cache using its {@link Catchable#getCacheKey()}. This will not refresh the
+   * object use {@link #refresh(Catchable)} to refresh it
+   *
+   * @param clazz the clazz of the catchable for casting
+   * @param key the key of the catchable
+   * @param <T> the type of the catchable
+   * @return a {@link Optional} instance containing the catchable if found else null
+   */
+  @NonNull
+  default <T extends Catchable> Optional<T> getByKey(@NonNull Class<T> clazz, @NonNull Object key) {
+    return this.filter(clazz, catchable -> key.equals(catchable.getCacheKey())).findFirst();
   }
 
   /**
@@ -122,6 +152,90 @@ public interface Cache extends Runnable {
    */
   void add(@NonNull Catchable catchable);
 
+  /**
+   * Add an object to the cache unless there's already an instance of it. Checking and adding is
+   * atomic, so when many threads add the same object only one of them succeeds and the rest get the
+   * instance that was added
+   *
+   * @param catchable the object to add
+   * @param <T> the type of the object
+   * @return the instance that is inside the cache, which is the given object if it was added
+   */
+  @NonNull
+  @SuppressWarnings("unchecked")
+  default <T extends Catchable> T addIfAbsent(@NonNull T catchable) {
+    synchronized (this) {
+      T cached = this.find((Class<T>) catchable.getClass(), stored -> stored.equals(catchable));
+      if (cached != null) return cached;
+      this.add(catchable);
+      return catchable;
+    }
+  }
+
+  /**
+   * Add an object to the cache unless there's already an instance of it, to be removed at the given
+   * time instead of after its {@link Catchable#getToRemove()}. This is used to restore objects that
+   * were cached before, such as from a {@link CacheSnapshot}. Caches that can't schedule the
+   * removal at a given time add the object as in {@link #addIfAbsent(Catchable)}
+   *
+   * @param catchable the object to add
+   * @param time the time in millis for the object to be removed
+   * @param <T> the type of the object
+   * @return the instance that is inside the cache, which is the given object if it was added
+   */
+  @NonNull
+  default <T extends Catchable> T addIfAbsent(@NonNull T catchable, long time) {
+    return this.addIfAbsent(catchable);
+  }
+
+  /**
+   * Remove the object of a class that has a key, such as when it changed somewhere else and the
+   * cached copy is stale. Unlike getting it and then removing it this does not count as a read, so
+   * it is not recorded in the statistics nor does it refresh the object. By default the objects of
+   * the class are gone through to find it, implementations should override it if they can find
+   * objects by their key
+   *
+   * @param clazz the class of the object
+   * @param key the {@link Catchable#getCacheKey()} of the object
+   * @return whether an object was removed
+   */
+  default boolean remove(@NonNull Class<? extends Catchable> clazz, @NonNull Object key) {
+    Catchable catchable =
+        this.filter(clazz, stored -> key.equals(stored.getCacheKey())).findFirst().orElse(null);
+    return catchable != null && this.remove(catchable);
+  }
+
+  /**
+   * Add many objects to the cache, each unless there's already an instance of it and to be removed
+   * at its own time, as in {@link #addIfAbsent(Catchable, long)}. This is used to restore many
+   * objects at once, such as from a {@link CacheSnapshot}, implementations should override it if
+   * they can add them faster than one by one
+   *
+   * @param catchables the objects to add and the time in millis for each to be removed
+   * @return the number of objects that were added
+   */
+  default int addAllIfAbsent(@NonNull Map<? extends Catchable, Long> catchables) {
+    int added = 0;
+    for (Map.Entry<? extends Catchable, Long> entry : catchables.entrySet()) {
+      if (this.addIfAbsent(entry.getKey(), entry.getValue()) == entry.getKey()) added++;
+    }
+    return added;
+  }
+
+  /**
+   * Go through every object inside the cache with the time in millis for it to be removed. This is
+   * used to save the objects, such as into a {@link CacheSnapshot}, implementations should override
+   * it to not look up the time of each object
+   *
+   * @param action the action to perform with each object and its removal time
+   */
+  default void forEachEntry(@NonNull ObjLongConsumer<Catchable> action) {
+    this.filter(Catchable.class, catchable -> true)
+        .forEach(
+            catchable ->
+                action.accept(catchable, System.currentTimeMillis() + this.getTimeLeft(catchable)));
+  }
+
   /**
    * Get the time left of an object inside of cache as milliseconds.
    *
@@ -150,6 +264,24 @@ public interface Cache extends Runnable {
   /** Closes the cache and removes all the objects inside of it. */
   void close();
 
+  /**
+   * Add a listener for the objects that leave the cache because they expired, were evicted or the
+   * cache was closed. Listeners are called with the removed objects before their {@link
+   * Catchable#onRemove()}, in the thread that removes them. Objects removed using {@link
+   * #remove(Catchable)} are not given to the listeners.
+   *
+   * <p>By default the listener is ignored, as caches that do not override this cannot tell when
+   * objects leave them. Users of listeners must not depend on them being called, such as {@link
+   * WriteBehind} which also writes dirty objects on its own interval
+   *
+   * @param listener the listener to add
+   * @return this same instance
+   */
+  @NonNull
+  default Cache listen(@NonNull Consumer<Collection<Catchable>> listener) {
+    return this;
+  }
+
   /**
    * Get the time in which an object must be removed.
    *
@@ -168,4 +300,16 @@ public interface Cache extends Runnable {
    */
   @NonNull
   Consumer<Throwable> getHandler();
+
+  /**
+   * Get a snapshot of the statistics of the cache, such as how many lookups found an object and how
+   * many objects expired. Caches that do not record statistics return {@link CacheStats#EMPTY}
+   *
+   * @see CacheStatsBean#register(Cache, String)
+   * @return the statistics of the cache
+   */
+  @NonNull
+  default CacheStats getStats() {
+    return CacheStats.EMPTY;
+  }
 }
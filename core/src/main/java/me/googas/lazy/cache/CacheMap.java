@@ -1,11 +1,16 @@
 package me.googas.lazy.cache;
 
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import lombok.NonNull;
@@ -46,17 +51,40 @@ public interface CacheMap extends Cache {
 
   /**
    * This map contains the reference to the cache object and the time in millis for the object to be
-   * removed.
+   * removed. The map is iterated directly, without copying it, so it must support being modified
+   * while it is iterated, such as {@link java.util.concurrent.ConcurrentHashMap}
    *
    * @return the map with the reference and time of the objects
    */
   @NonNull
   Map<SoftReference<Catchable>, Long> getMap();
 
+  /**
+   * Get the counter in which the statistics of the cache are recorded.
+   *
+   * @return the counter, {@link StatsCounter#DISABLED} if the cache does not record statistics
+   */
+  @NonNull
+  default StatsCounter getCounter() {
+    return StatsCounter.DISABLED;
+  }
+
+  @Override
+  default @NonNull CacheStats getStats() {
+    StatsCounter counter = this.getCounter();
+    if (counter == StatsCounter.DISABLED) return CacheStats.EMPTY;
+    Map<Class<?>, Long> sizes = new HashMap<>();
+    for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+      Catchable catchable = reference.get();
+      if (catchable != null) sizes.merge(catchable.getClass(), 1L, Long::sum);
+    }
+    return counter.snapshot(sizes);
+  }
+
   @Override
   default <T extends Catchable> @NonNull Stream<T> filter(
       @NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
-    return this.keySetCopy().stream()
+    return this.getMap().keySet().stream()
         .filter(
             reference -> {
               Catchable catchable = reference.get();
@@ -66,9 +94,44 @@ public interface CacheMap extends Cache {
         .filter(predicate);
   }
 
+  @Override
+  default <T extends Catchable> @NonNull Optional<T> get(
+      @NonNull Class<T> clazz, @NonNull Predicate<T> predicate, boolean refresh) {
+    // Refresh in the same pass instead of looking for the object again
+    for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+      Catchable catchable = reference.get();
+      if (clazz.isInstance(catchable)) {
+        T cast = clazz.cast(catchable);
+        if (predicate.test(cast)) {
+          if (refresh) this.getMap().replace(reference, this.getTimeToRemove(cast));
+          this.getCounter().recordHit();
+          return Optional.of(cast);
+        }
+      }
+    }
+    this.getCounter().recordMiss();
+    return Optional.empty();
+  }
+
+  @Override
+  default <T extends Catchable> T find(@NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+      Catchable catchable = reference.get();
+      if (clazz.isInstance(catchable)) {
+        T cast = clazz.cast(catchable);
+        if (predicate.test(cast)) {
+          this.getCounter().recordHit();
+          return cast;
+        }
+      }
+    }
+    this.getCounter().recordMiss();
+    return null;
+  }
+
   @Override
   default boolean contains(@NonNull Catchable catchable) {
-    for (SoftReference<Catchable> reference : this.keySetCopy()) {
+    for (SoftReference<Catchable> reference : this.getMap().keySet()) {
       Catchable referencedCatchable = reference.get();
       if (catchable.equals(referencedCatchable)
           || (referencedCatchable != null
@@ -81,36 +144,139 @@ public interface CacheMap extends Cache {
 
   @Override
   default void add(@NonNull Catchable catchable) {
-    if (this.contains(catchable)) {
-      throw new IllegalStateException(
-          "There's already an instance of " + catchable + " inside of the cache");
+    synchronized (HashLocks.of(catchable)) {
+      if (this.contains(catchable)) {
+        throw new IllegalStateException(
+            "There's already an instance of " + catchable + " inside of the cache");
+      }
+      this.store(catchable, this.getTimeToRemove(catchable));
+    }
+  }
+
+  /**
+   * Put an object into the {@link #getMap()} without checking whether there's an instance of it
+   * already. This is called while holding the lock of the hash code of the object, so it may run
+   * concurrently with stores of other objects. Implementations that schedule the removal of objects
+   * must override it to schedule them
+   *
+   * @param catchable the object to put
+   * @param time the time in millis for the object to be removed
+   */
+  default void store(@NonNull Catchable catchable, long time) {
+    this.getMap().put(new SoftReference<>(catchable), time);
+    this.getCounter().recordAdd();
+  }
+
+  /**
+   * {@inheritDoc} Checking whether the object is inside the cache and adding it is atomic, only
+   * adds of objects with the same hash code wait for each other.
+   */
+  @Override
+  default <T extends Catchable> @NonNull T addIfAbsent(@NonNull T catchable) {
+    return this.addIfAbsent(catchable, this.getTimeToRemove(catchable));
+  }
+
+  /**
+   * {@inheritDoc} Checking whether the object is inside the cache and adding it is atomic, only
+   * adds of objects with the same hash code wait for each other.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  default <T extends Catchable> @NonNull T addIfAbsent(@NonNull T catchable, long time) {
+    synchronized (HashLocks.of(catchable)) {
+      for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+        Catchable stored = reference.get();
+        // The same match as contains
+        if (stored != null
+            && (catchable.equals(stored) || catchable.hashCode() == stored.hashCode())
+            && catchable.getClass().isInstance(stored)) {
+          return (T) stored;
+        }
+      }
+      this.store(catchable, time);
+      return catchable;
+    }
+  }
+
+  /**
+   * {@inheritDoc} Instead of going through the cache for each object, the objects are grouped by
+   * the lock of their hash code and the cache is gone through once for each group, while holding
+   * its lock so that checking and adding stays atomic.
+   */
+  @Override
+  default int addAllIfAbsent(@NonNull Map<? extends Catchable, Long> catchables) {
+    List<List<Catchable>> groups = new ArrayList<>();
+    for (int i = 0; i < HashLocks.count(); i++) {
+      groups.add(new ArrayList<>());
+    }
+    for (Catchable catchable : catchables.keySet()) {
+      groups.get(HashLocks.indexOf(catchable)).add(catchable);
+    }
+    int added = 0;
+    for (int i = 0; i < groups.size(); i++) {
+      List<Catchable> group = groups.get(i);
+      if (group.isEmpty()) continue;
+      synchronized (HashLocks.get(i)) {
+        // The stored objects of this lock by their hash code, the same match as contains
+        Map<Integer, List<Catchable>> stored = new HashMap<>();
+        for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+          Catchable catchable = reference.get();
+          if (catchable != null && HashLocks.indexOf(catchable) == i) {
+            stored.computeIfAbsent(catchable.hashCode(), key -> new ArrayList<>()).add(catchable);
+          }
+        }
+        for (Catchable catchable : group) {
+          List<Catchable> matches =
+              stored.computeIfAbsent(catchable.hashCode(), key -> new ArrayList<>());
+          boolean present = false;
+          for (Catchable match : matches) {
+            present |= catchable.getClass().isInstance(match);
+          }
+          if (!present) {
+            this.store(catchable, catchables.get(catchable));
+            matches.add(catchable);
+            added++;
+          }
+        }
+      }
+    }
+    return added;
+  }
+
+  @Override
+  default void forEachEntry(@NonNull ObjLongConsumer<Catchable> action) {
+    for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+      Catchable catchable = reference.get();
+      Long time = this.getMap().get(reference);
+      if (catchable != null && time != null) action.accept(catchable, time);
     }
-    this.getMap().put(new SoftReference<>(catchable), this.getTimeToRemove(catchable));
   }
 
   @Override
   default long getTimeLeft(@NonNull Catchable catchable) {
-    return this.getMapCopy().entrySet().stream()
-        .filter(entry -> catchable.equals(entry.getKey().get()))
-        .map(
-            entry -> {
-              long millis = entry.getValue() - System.currentTimeMillis();
-              return millis < 0 ? 0 : millis;
-            })
-        .findFirst()
-        .orElse(0L);
+    for (SoftReference<Catchable> reference : this.getMap().keySet()) {
+      Long time;
+      if (catchable.equals(reference.get()) && (time = this.getMap().get(reference)) != null) {
+        long millis = time - System.currentTimeMillis();
+        return millis < 0 ? 0 : millis;
+      }
+    }
+    return 0;
   }
 
   @Override
   default boolean remove(@NonNull Catchable catchable) {
-    return this.getMap()
-        .keySet()
-        .removeIf(
-            reference -> {
-              Catchable stored = reference.get();
-              return catchable.equals(stored)
-                  || (stored != null && catchable.hashCode() == stored.hashCode());
-            });
+    boolean removed =
+        this.getMap()
+            .keySet()
+            .removeIf(
+                reference -> {
+                  Catchable stored = reference.get();
+                  return catchable.equals(stored)
+                      || (stored != null && catchable.hashCode() == stored.hashCode());
+                });
+    if (removed) this.getCounter().recordRemoval();
+    return removed;
   }
 
   @Override
@@ -124,20 +290,20 @@ public interface CacheMap extends Cache {
 
   @Override
   default void close() {
-    this.keySetCopy()
-        .forEach(
-            reference -> {
-              Catchable catchable = reference.get();
-              if (catchable != null) {
-                // If catchable has not expired yet
-                try {
-                  catchable.onRemove();
-                } catch (Throwable e) {
-                  this.getHandler().accept(e);
-                }
-                this.remove(catchable);
-              }
-            });
+    Consumer<Throwable> handler = this.getCounter().failures(this.getHandler());
+    Iterator<SoftReference<Catchable>> iterator = this.getMap().keySet().iterator();
+    while (iterator.hasNext()) {
+      Catchable catchable = iterator.next().get();
+      iterator.remove();
+      if (catchable != null) {
+        // If catchable has not expired yet
+        try {
+          catchable.onRemove();
+        } catch (Throwable e) {
+          handler.accept(e);
+        }
+      }
+    }
     this.getMap().clear();
   }
 
@@ -152,21 +318,32 @@ public interface CacheMap extends Cache {
 
   @Override
   default void run() {
-    // Get a copy of the map to avoid concurrent modification exception
-    this.getMapCopy()
-        .forEach(
-            (reference, time) -> {
-              if (reference == null) return;
-              Catchable catchable = reference.get();
-              if (catchable != null && (time == null || System.currentTimeMillis() >= time)) {
-                try {
-                  catchable.onRemove();
-                } catch (Throwable e) {
-                  this.getHandler().accept(e);
-                }
-                reference.clear();
-              }
-            });
-    this.getMap().keySet().removeIf(reference -> reference.get() == null);
+    long start = System.nanoTime();
+    long now = System.currentTimeMillis();
+    StatsCounter counter = this.getCounter();
+    Consumer<Throwable> handler = counter.failures(this.getHandler());
+    // Iterating the keys does not allocate an entry for each object
+    Iterator<SoftReference<Catchable>> iterator = this.getMap().keySet().iterator();
+    while (iterator.hasNext()) {
+      SoftReference<Catchable> reference = iterator.next();
+      Catchable catchable = reference.get();
+      Long time = this.getMap().get(reference);
+      // The object was removed after the iterator reached it
+      if (time == null) continue;
+      if (catchable == null) {
+        iterator.remove();
+        counter.recordCollection();
+      } else if (now >= time) {
+        iterator.remove();
+        counter.recordExpiration();
+        try {
+          catchable.onRemove();
+        } catch (Throwable e) {
+          handler.accept(e);
+        }
+        reference.clear();
+      }
+    }
+    counter.recordSweep(System.nanoTime() - start);
   }
 }
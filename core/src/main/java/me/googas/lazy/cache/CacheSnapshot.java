@@ -0,0 +1,280 @@
+package me.googas.lazy.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Saves the objects of a {@link Cache} into a file and restores them after a restart, so that the
+ * cache starts warm instead of sending every read to the database while it refills. Each object is
+ * saved with the time in millis for it to be removed and is restored with it, objects which time
+ * passed while the application was down are not restored.
+ *
+ * <p>Only the objects which class has a {@link CatchableSerializer} registered are saved. Caches
+ * save into their snapshot when they are closed, the snapshot is restored in the background so that
+ * starting is not delayed by it:
+ *
+ * <pre>
+ *     CacheSnapshot snapshot = new CacheSnapshot(Paths.get("cache.snapshot"))
+ *         .serializer(User.class, CatchableSerializer.serializable(User.class));
+ *     KeyedCache cache = new KeyedCache().snapshotTo(snapshot).register(service);
+ *     snapshot.restoreAsync(cache, ForkJoinPool.commonPool());
+ * </pre>
+ *
+ * <p>Objects that are added while the snapshot is being restored are kept over the restored ones.
+ * The restored objects are added at once using {@link Cache#addAllIfAbsent(Map)}, so caches that
+ * have to go through their objects to find one only go through them once.
+ */
+public class CacheSnapshot {
+
+  /** The first bytes of a snapshot file. */
+  private static final int MAGIC = 0x4C415A59;
+  /** The version of the format of the file. */
+  private static final int VERSION = 1;
+
+  @NonNull @Getter private final Path file;
+
+  /** The serializers by the class they were registered for. */
+  @NonNull private final TypeRegistry<CatchableSerializer<?>> serializers = new TypeRegistry<>();
+
+  @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+
+  /**
+   * Create the snapshot.
+   *
+   * @param file the file to save the objects into
+   */
+  public CacheSnapshot(@NonNull Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Register a serializer for the objects of a class. It will be used for every object assignable
+   * to the class, unless a serializer is registered for a more specific class of the object
+   *
+   * @param clazz the class of the objects
+   * @param serializer the serializer for the objects
+   * @param <T> the type of the objects
+   * @return this same instance
+   */
+  @NonNull
+  public <T extends Catchable> CacheSnapshot serializer(
+      @NonNull Class<T> clazz, @NonNull CatchableSerializer<T> serializer) {
+    this.serializers.put(clazz, serializer);
+    return this;
+  }
+
+  /**
+   * Set the consumer to be used in exceptions thrown while converting objects.
+   *
+   * @param handler the handler
+   * @return this same instance
+   */
+  @NonNull
+  public CacheSnapshot handle(@NonNull Consumer<Throwable> handler) {
+    this.handler = handler;
+    return this;
+  }
+
+  @SuppressWarnings("unchecked")
+  private CatchableSerializer<Catchable> serializerOf(@NonNull Class<?> type) {
+    return (CatchableSerializer<Catchable>) this.serializers.get(type);
+  }
+
+  /**
+   * Save the objects of a cache into the file, replacing the previous snapshot. The objects are
+   * written into a temporary file which then replaces the snapshot, so a failed save never leaves a
+   * partial snapshot behind. Objects that could not be serialized are given to the handler and
+   * skipped
+   *
+   * @param cache the cache to save
+   * @return the number of saved objects
+   * @throws IOException if the file could not be written
+   */
+  public int save(@NonNull Cache cache) throws IOException {
+    Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+    int[] count = new int[1];
+    IOException[] failure = new IOException[1];
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      output.writeInt(CacheSnapshot.MAGIC);
+      output.writeInt(CacheSnapshot.VERSION);
+      long now = System.currentTimeMillis();
+      cache.forEachEntry(
+          (catchable, time) -> {
+            if (failure[0] != null || time <= now) return;
+            CatchableSerializer<Catchable> serializer = this.serializerOf(catchable.getClass());
+            if (serializer == null) return;
+            byte[] bytes;
+            try {
+              bytes = serializer.serialize(catchable);
+            } catch (Throwable e) {
+              this.handler.accept(e);
+              return;
+            }
+            try {
+              byte[] name = catchable.getClass().getName().getBytes(StandardCharsets.UTF_8);
+              output.writeInt(name.length);
+              output.write(name);
+              output.writeLong(time);
+              output.writeInt(bytes.length);
+              output.write(bytes);
+              count[0]++;
+            } catch (IOException e) {
+              failure[0] = e;
+            }
+          });
+      if (failure[0] != null) throw failure[0];
+    } catch (IOException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+    try {
+      Files.move(
+          temporary,
+          this.file,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return count[0];
+  }
+
+  /**
+   * Save the objects of a cache giving any exception to the handler of the cache. This is used by
+   * caches when they are closed.
+   *
+   * @param cache the cache to save
+   */
+  void saveQuietly(@NonNull Cache cache) {
+    try {
+      this.save(cache);
+    } catch (Throwable e) {
+      cache.getHandler().accept(e);
+    }
+  }
+
+  /**
+   * Add the objects of the snapshot to a cache, each to be removed at the time it had when it was
+   * saved. Objects which time passed, which class can't be found or has no serializer are skipped,
+   * objects that could not be deserialized are given to the handler. If there's no snapshot nothing
+   * is added
+   *
+   * @param cache the cache to add the objects to
+   * @return the number of restored objects, which does not count the ones that were in cache
+   *     already
+   * @throws IOException if the file could not be read or is not a snapshot
+   */
+  public int restore(@NonNull Cache cache) throws IOException {
+    if (!Files.exists(this.file)) return 0;
+    long remaining = Files.size(this.file);
+    Map<Catchable, Long> restored = new LinkedHashMap<>();
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file)))) {
+      if (remaining < 8
+          || input.readInt() != CacheSnapshot.MAGIC
+          || input.readInt() != CacheSnapshot.VERSION) {
+        throw new IOException(this.file + " is not a snapshot");
+      }
+      remaining -= 8;
+      ClassLoader loader = Thread.currentThread().getContextClassLoader();
+      if (loader == null) loader = CacheSnapshot.class.getClassLoader();
+      while (remaining > 0) {
+        byte[] name = new byte[this.length(input.readInt(), remaining - 4)];
+        input.readFully(name);
+        long time = input.readLong();
+        remaining -= 4 + name.length + 8;
+        int length = this.length(input.readInt(), remaining - 4);
+        remaining -= 4 + length;
+        if (time <= System.currentTimeMillis()) {
+          this.skip(input, length);
+          continue;
+        }
+        CatchableSerializer<Catchable> serializer;
+        try {
+          serializer =
+              this.serializerOf(
+                  Class.forName(new String(name, StandardCharsets.UTF_8), false, loader));
+        } catch (ClassNotFoundException e) {
+          serializer = null;
+        }
+        if (serializer == null) {
+          this.skip(input, length);
+          continue;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        try {
+          restored.put(serializer.deserialize(bytes), time);
+        } catch (Throwable e) {
+          this.handler.accept(e);
+        }
+      }
+    } catch (EOFException e) {
+      throw new IOException(this.file + " is truncated", e);
+    }
+    // Objects added while restoring are kept
+    return cache.addAllIfAbsent(restored);
+  }
+
+  /**
+   * Check a length read from the file.
+   *
+   * @param length the read length
+   * @param remaining the number of bytes left in the file after the length
+   * @return the length
+   * @throws IOException if the length is negative or there are not that many bytes left
+   */
+  private int length(int length, long remaining) throws IOException {
+    if (length < 0 || length > remaining) {
+      throw new IOException(this.file + " is corrupt, it has a length of " + length);
+    }
+    return length;
+  }
+
+  private void skip(@NonNull DataInputStream input, int length) throws IOException {
+    while (length > 0) {
+      int skipped = input.skipBytes(length);
+      if (skipped <= 0) throw new EOFException();
+      length -= skipped;
+    }
+  }
+
+  /**
+   * Add the objects of the snapshot to a cache in the background.
+   *
+   * @see #restore(Cache)
+   * @param cache the cache to add the objects to
+   * @param executor the executor to restore in
+   * @return a future completed with the number of restored objects
+   */
+  @NonNull
+  public CompletableFuture<Integer> restoreAsync(@NonNull Cache cache, @NonNull Executor executor) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return this.restore(cache);
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        },
+        executor);
+  }
+}
@@ -0,0 +1,151 @@
+package me.googas.lazy.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A snapshot of the statistics of a {@link Cache}. Counts start when the cache is created and never
+ * reset, to get the statistics of a period subtract two snapshots using {@link #minus(CacheStats)}.
+ *
+ * @see Cache#getStats()
+ */
+public final class CacheStats {
+
+  /** The statistics of a cache that does not record them. */
+  @NonNull
+  public static final CacheStats EMPTY =
+      new CacheStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, Collections.emptyMap());
+
+  /** The number of lookups that found an object. */
+  @Getter private final long hits;
+  /** The number of lookups that did not find an object. */
+  @Getter private final long misses;
+  /** The number of added objects. */
+  @Getter private final long adds;
+  /** The number of objects removed using {@link Cache#remove(Catchable)}. */
+  @Getter private final long removals;
+  /** The number of objects removed because their time to be removed passed. */
+  @Getter private final long expirations;
+  /** The number of objects removed because their soft reference was cleared. */
+  @Getter private final long collections;
+  /** The number of objects removed to make room for other objects. */
+  @Getter private final long evictions;
+  /** The number of times {@link Catchable#onRemove()} threw an exception. */
+  @Getter private final long failures;
+  /** The number of runs of {@link Cache#run()}. */
+  @Getter private final long sweeps;
+  /** The nanoseconds spent in {@link Cache#run()}. */
+  @Getter private final long sweepTime;
+  /** The number of objects inside the cache by their concrete class. */
+  @NonNull @Getter private final Map<Class<?>, Long> sizes;
+
+  CacheStats(
+      long hits,
+      long misses,
+      long adds,
+      long removals,
+      long expirations,
+      long collections,
+      long evictions,
+      long failures,
+      long sweeps,
+      long sweepTime,
+      @NonNull Map<Class<?>, Long> sizes) {
+    this.hits = hits;
+    this.misses = misses;
+    this.adds = adds;
+    this.removals = removals;
+    this.expirations = expirations;
+    this.collections = collections;
+    this.evictions = evictions;
+    this.failures = failures;
+    this.sweeps = sweeps;
+    this.sweepTime = sweepTime;
+    this.sizes = Collections.unmodifiableMap(sizes);
+  }
+
+  /**
+   * Get the ratio of lookups that found an object.
+   *
+   * @return the ratio from 0 to 1, 1 if there has not been any lookup
+   */
+  public double getHitRate() {
+    long lookups = this.hits + this.misses;
+    return lookups == 0 ? 1 : (double) this.hits / lookups;
+  }
+
+  /**
+   * Get the number of objects inside the cache.
+   *
+   * @return the number of objects
+   */
+  public long getSize() {
+    long size = 0;
+    for (long count : this.sizes.values()) {
+      size += count;
+    }
+    return size;
+  }
+
+  /**
+   * Get the average nanoseconds spent in each run of {@link Cache#run()}.
+   *
+   * @return the average nanoseconds, 0 if the cache has not run
+   */
+  public double getAverageSweepTime() {
+    return this.sweeps == 0 ? 0 : (double) this.sweepTime / this.sweeps;
+  }
+
+  /**
+   * Get the statistics recorded since a previous snapshot. The sizes are the ones of this snapshot
+   *
+   * @param other the previous snapshot
+   * @return the difference between the snapshots
+   */
+  @NonNull
+  public CacheStats minus(@NonNull CacheStats other) {
+    return new CacheStats(
+        this.hits - other.hits,
+        this.misses - other.misses,
+        this.adds - other.adds,
+        this.removals - other.removals,
+        this.expirations - other.expirations,
+        this.collections - other.collections,
+        this.evictions - other.evictions,
+        this.failures - other.failures,
+        this.sweeps - other.sweeps,
+        this.sweepTime - other.sweepTime,
+        new HashMap<>(this.sizes));
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{"
+        + "hits="
+        + this.hits
+        + ", misses="
+        + this.misses
+        + ", adds="
+        + this.adds
+        + ", removals="
+        + this.removals
+        + ", expirations="
+        + this.expirations
+        + ", collections="
+        + this.collections
+        + ", evictions="
+        + this.evictions
+        + ", failures="
+        + this.failures
+        + ", sweeps="
+        + this.sweeps
+        + ", sweepTime="
+        + this.sweepTime
+        + ", sizes="
+        + this.sizes
+        + '}';
+  }
+}
@@ -0,0 +1,162 @@
+package me.googas.lazy.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.NonNull;
+
+/**
+ * Publishes the {@link CacheStats} of a {@link Cache} through JMX:
+ *
+ * <pre>
+ *     ObjectName name = CacheStatsBean.register(cache, "users");
+ * </pre>
+ *
+ * <p>Taking the statistics may go through every cached object to count them, so the attributes are
+ * read from a snapshot that is only taken again once it is older than an interval, a second by
+ * default. A tool that reads every attribute at once goes through the cache a single time.
+ */
+public class CacheStatsBean implements CacheStatsMXBean {
+
+  @NonNull private final Cache cache;
+  private final long interval;
+
+  private volatile CacheStats stats;
+  private volatile long takenAt;
+
+  /**
+   * Create the bean.
+   *
+   * @param cache the cache to publish the statistics of
+   * @param interval the time that a snapshot of the statistics is used before taking another
+   * @param unit the unit of the interval
+   */
+  public CacheStatsBean(@NonNull Cache cache, long interval, @NonNull TimeUnit unit) {
+    this.cache = cache;
+    this.interval = unit.toNanos(interval);
+  }
+
+  /**
+   * Create the bean taking a snapshot of the statistics at most once a second.
+   *
+   * @param cache the cache to publish the statistics of
+   */
+  public CacheStatsBean(@NonNull Cache cache) {
+    this(cache, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Register the statistics of a cache in the platform {@link MBeanServer} with the name {@code
+   * me.googas.lazy:type=Cache,name=<name>}.
+   *
+   * @param cache the cache to publish the statistics of
+   * @param name the name to identify the cache
+   * @return the name of the registered bean, to unregister it once the cache is closed
+   * @throws JMException if the bean could not be registered
+   */
+  @NonNull
+  public static ObjectName register(@NonNull Cache cache, @NonNull String name) throws JMException {
+    return CacheStatsBean.register(new CacheStatsBean(cache), name);
+  }
+
+  /**
+   * Register a bean in the platform {@link MBeanServer} with the name {@code
+   * me.googas.lazy:type=Cache,name=<name>}.
+   *
+   * @param bean the bean to register
+   * @param name the name to identify the cache
+   * @return the name of the registered bean, to unregister it once the cache is closed
+   * @throws JMException if the bean could not be registered
+   */
+  @NonNull
+  public static ObjectName register(@NonNull CacheStatsBean bean, @NonNull String name)
+      throws JMException {
+    ObjectName objectName =
+        new ObjectName("me.googas.lazy:type=Cache,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+    return objectName;
+  }
+
+  /**
+   * Get the snapshot of the statistics, taking a new one if it is older than the interval.
+   *
+   * @return the snapshot of the statistics
+   */
+  @NonNull
+  private CacheStats stats() {
+    CacheStats stats = this.stats;
+    long now = System.nanoTime();
+    if (stats == null || now - this.takenAt >= this.interval) {
+      stats = this.cache.getStats();
+      this.stats = stats;
+      this.takenAt = now;
+    }
+    return stats;
+  }
+
+  @Override
+  public long getHits() {
+    return this.stats().getHits();
+  }
+
+  @Override
+  public long getMisses() {
+    return this.stats().getMisses();
+  }
+
+  @Override
+  public double getHitRate() {
+    return this.stats().getHitRate();
+  }
+
+  @Override
+  public long getAdds() {
+    return this.stats().getAdds();
+  }
+
+  @Override
+  public long getRemovals() {
+    return this.stats().getRemovals();
+  }
+
+  @Override
+  public long getExpirations() {
+    return this.stats().getExpirations();
+  }
+
+  @Override
+  public long getCollections() {
+    return this.stats().getCollections();
+  }
+
+  @Override
+  public long getEvictions() {
+    return this.stats().getEvictions();
+  }
+
+  @Override
+  public long getFailures() {
+    return this.stats().getFailures();
+  }
+
+  @Override
+  public double getAverageSweepTime() {
+    return this.stats().getAverageSweepTime();
+  }
+
+  @Override
+  public long getSize() {
+    return this.stats().getSize();
+  }
+
+  @Override
+  public Map<String, Long> getSizes() {
+    Map<String, Long> sizes = new HashMap<>();
+    this.stats().getSizes().forEach((type, size) -> sizes.put(type.getName(), size));
+    return sizes;
+  }
+}
@@ -0,0 +1,95 @@
+package me.googas.lazy.cache;
+
+import java.util.Map;
+
+/**
+ * The statistics of a {@link Cache} published through JMX.
+ *
+ * @see CacheStatsBean#register(Cache, String)
+ */
+public interface CacheStatsMXBean {
+
+  /**
+   * Get the number of lookups that found an object.
+   *
+   * @return the number of hits
+   */
+  long getHits();
+
+  /**
+   * Get the number of lookups that did not find an object.
+   *
+   * @return the number of misses
+   */
+  long getMisses();
+
+  /**
+   * Get the ratio of lookups that found an object.
+   *
+   * @return the ratio from 0 to 1
+   */
+  double getHitRate();
+
+  /**
+   * Get the number of added objects.
+   *
+   * @return the number of adds
+   */
+  long getAdds();
+
+  /**
+   * Get the number of objects removed using {@link Cache#remove(Catchable)}.
+   *
+   * @return the number of removals
+   */
+  long getRemovals();
+
+  /**
+   * Get the number of objects removed because their time to be removed passed.
+   *
+   * @return the number of expirations
+   */
+  long getExpirations();
+
+  /**
+   * Get the number of objects removed because their soft reference was cleared.
+   *
+   * @return the number of collections
+   */
+  long getCollections();
+
+  /**
+   * Get the number of objects removed to make room for other objects.
+   *
+   * @return the number of evictions
+   */
+  long getEvictions();
+
+  /**
+   * Get the number of times {@link Catchable#onRemove()} threw an exception.
+   *
+   * @return the number of failures
+   */
+  long getFailures();
+
+  /**
+   * Get the average nanoseconds spent in each run of {@link Cache#run()}.
+   *
+   * @return the average nanoseconds
+   */
+  double getAverageSweepTime();
+
+  /**
+   * Get the number of objects inside the cache.
+   *
+   * @return the number of objects
+   */
+  long getSize();
+
+  /**
+   * Get the number of objects inside the cache by the name of their concrete class.
+   *
+   * @return the number of objects by class
+   */
+  Map<String, Long> getSizes();
+}
@@ -1,6 +1,8 @@
 package me.googas.lazy.cache;
 
+import java.util.Optional;
 import lombok.NonNull;
+import me.googas.lazy.ElementCouldNotBeLoadedException;
 import me.googas.lazy.Subloader;
 
 /** A {@link Subloader} used in {@link LazyCache}. */
@@ -16,4 +18,42 @@ public abstract class CacheSubloader implements Subloader {
   protected CacheSubloader(@NonNull LazyCache parent) {
     this.parent = parent;
   }
+
+  /**
+   * Get an element from the cache of the parent or load it if it is not found.
+   *
+   * @see LazyCache#getOrLoad(Class, Object)
+   * @param clazz the class of the element
+   * @param key the key of the element
+   * @param <T> the type of the element
+   * @return a {@link Optional} holding the element if it is in cache or it could be loaded
+   * @throws IllegalArgumentException if there's no load registered for the class or the loaded
+   *     element does not provide a key
+   * @throws ElementCouldNotBeLoadedException if the element could not be loaded
+   */
+  @NonNull
+  protected <T extends Catchable> Optional<T> getOrLoad(
+      @NonNull Class<T> clazz, @NonNull Object key) throws ElementCouldNotBeLoadedException {
+    return this.parent.getOrLoad(clazz, key);
+  }
+
+  /**
+   * Mark an element as changed so that it is written in batches instead of right away.
+   *
+   * @see LazyCache#markDirty(Catchable)
+   * @param catchable the changed element
+   */
+  protected void markDirty(@NonNull Catchable catchable) {
+    this.parent.markDirty(catchable);
+  }
+
+  /**
+   * Tell that an element was written to the database so that other nodes remove their copy of it.
+   *
+   * @see LazyCache#invalidate(Catchable)
+   * @param catchable the written element
+   */
+  protected void invalidate(@NonNull Catchable catchable) {
+    this.parent.invalidate(catchable);
+  }
 }
@@ -17,4 +17,26 @@ public interface Catchable {
    * @return the time to be removed
    */
   long getToRemove();
+
+  /**
+   * Get the key that identifies this object inside of cache. Caches such as {@link KeyedCache} use
+   * it to find the object with a hash lookup instead of going through every cached object. The key
+   * must implement {@link Object#equals(Object)} and {@link Object#hashCode()} and must not change
+   * while the object is cached
+   *
+   * @return the key of the object or null if it does not have one
+   */
+  default Object getCacheKey() {
+    return null;
+  }
+
+  /**
+   * Get the weight of this object. Caches bounded by weight, such as {@link BoundedCache}, use it
+   * to know how much of its capacity the object takes. It is read once when the object is added
+   *
+   * @return the weight of the object which must not be negative
+   */
+  default long getWeight() {
+    return 1;
+  }
 }
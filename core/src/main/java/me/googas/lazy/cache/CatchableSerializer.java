@@ -0,0 +1,68 @@
+package me.googas.lazy.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import lombok.NonNull;
+
+/**
+ * Converts {@link Catchable} to bytes and back, so that they can be stored outside the heap.
+ *
+ * @param <T> the type of the catchables
+ */
+public interface CatchableSerializer<T extends Catchable> {
+
+  /**
+   * Create a serializer that uses java serialization.
+   *
+   * @param clazz the class of the catchables
+   * @param <T> the type of the catchables
+   * @return the serializer
+   */
+  @NonNull
+  static <T extends Catchable & Serializable> CatchableSerializer<T> serializable(
+      @NonNull Class<T> clazz) {
+    return new CatchableSerializer<T>() {
+      @Override
+      public @NonNull byte[] serialize(@NonNull T catchable) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+          stream.writeObject(catchable);
+        }
+        return bytes.toByteArray();
+      }
+
+      @Override
+      public @NonNull T deserialize(@NonNull byte[] bytes) throws IOException {
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+          return clazz.cast(stream.readObject());
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        }
+      }
+    };
+  }
+
+  /**
+   * Convert a catchable to bytes.
+   *
+   * @param catchable the catchable to convert
+   * @return the bytes of the catchable
+   * @throws IOException if the catchable could not be converted
+   */
+  @NonNull
+  byte[] serialize(@NonNull T catchable) throws IOException;
+
+  /**
+   * Convert bytes back to a catchable.
+   *
+   * @param bytes the bytes given by {@link #serialize(Catchable)}
+   * @return the catchable
+   * @throws IOException if the bytes could not be converted
+   */
+  @NonNull
+  T deserialize(@NonNull byte[] bytes) throws IOException;
+}
@@ -0,0 +1,92 @@
+package me.googas.lazy.cache;
+
+/**
+ * A count-min sketch that estimates how often an element has been used. Each element is counted in
+ * four 4-bit counters and its frequency is the minimum of them. Once the number of increments
+ * reaches ten times the capacity every counter is halved, so the history of the elements ages and
+ * the sketch adapts to the current workload.
+ *
+ * <p>This is not thread safe, {@link BoundedCache} only uses it while holding its lock
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final long[] table;
+  private final int sampleSize;
+  private int size;
+
+  /**
+   * Create the sketch.
+   *
+   * @param capacity the number of elements that are expected to be counted
+   */
+  FrequencySketch(long capacity) {
+    int maximum = (int) Math.min(Math.max(capacity, 16), 1 << 24);
+    this.table = new long[Integer.highestOneBit(maximum - 1) << 1];
+    this.sampleSize = maximum * 10;
+  }
+
+  private int indexOf(int hash, int counter) {
+    long index = (hash + FrequencySketch.SEEDS[counter]) * FrequencySketch.SEEDS[counter];
+    index += index >>> 32;
+    return (int) index & (this.table.length - 1);
+  }
+
+  private static int offsetOf(int hash, int counter) {
+    // Each long holds sixteen counters, every counter of an element is in a different quarter
+    return (((hash >>> (counter << 3)) & 3) + (counter << 2)) << 2;
+  }
+
+  private static int spread(int hash) {
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+    return (hash >>> 16) ^ hash;
+  }
+
+  /**
+   * Get the estimated frequency of an element.
+   *
+   * @param hash the hash of the element
+   * @return the frequency from 0 to 15
+   */
+  int frequency(int hash) {
+    hash = FrequencySketch.spread(hash);
+    int frequency = Integer.MAX_VALUE;
+    for (int counter = 0; counter < 4; counter++) {
+      long value =
+          this.table[this.indexOf(hash, counter)] >>> FrequencySketch.offsetOf(hash, counter);
+      frequency = Math.min(frequency, (int) (value & 0xf));
+    }
+    return frequency;
+  }
+
+  /**
+   * Increment the frequency of an element.
+   *
+   * @param hash the hash of the element
+   */
+  void increment(int hash) {
+    hash = FrequencySketch.spread(hash);
+    boolean added = false;
+    for (int counter = 0; counter < 4; counter++) {
+      int index = this.indexOf(hash, counter);
+      int offset = FrequencySketch.offsetOf(hash, counter);
+      if (((this.table[index] >>> offset) & 0xf) != 0xf) {
+        this.table[index] += 1L << offset;
+        added = true;
+      }
+    }
+    if (added && ++this.size >= this.sampleSize) this.reset();
+  }
+
+  private void reset() {
+    for (int i = 0; i < this.table.length; i++) {
+      this.table[i] = (this.table[i] >>> 1) & FrequencySketch.RESET_MASK;
+    }
+    this.size /= 2;
+  }
+}
@@ -0,0 +1,63 @@
+package me.googas.lazy.cache;
+
+import lombok.NonNull;
+
+/**
+ * Locks that make checking whether an object is inside a {@link CacheMap} and adding it atomic.
+ * Objects that match in a cache have the same hash code, so only adds of the same hash code need to
+ * wait for each other and the rest may run concurrently.
+ */
+final class HashLocks {
+
+  private static final Object[] LOCKS = new Object[64];
+
+  static {
+    for (int i = 0; i < HashLocks.LOCKS.length; i++) {
+      HashLocks.LOCKS[i] = new Object();
+    }
+  }
+
+  private HashLocks() {}
+
+  /**
+   * Get the lock of the hash code of an object.
+   *
+   * @param catchable the object to get the lock for
+   * @return the lock
+   */
+  @NonNull
+  static Object of(@NonNull Catchable catchable) {
+    return HashLocks.LOCKS[HashLocks.indexOf(catchable)];
+  }
+
+  /**
+   * Get the index of the lock of the hash code of an object, to group objects by their lock.
+   *
+   * @param catchable the object to get the index for
+   * @return the index of the lock, from 0 to {@link #count()}
+   */
+  static int indexOf(@NonNull Catchable catchable) {
+    int hash = catchable.hashCode();
+    return (hash ^ (hash >>> 16)) & (HashLocks.LOCKS.length - 1);
+  }
+
+  /**
+   * Get a lock by its index.
+   *
+   * @param index the index of the lock
+   * @return the lock
+   */
+  @NonNull
+  static Object get(int index) {
+    return HashLocks.LOCKS[index];
+  }
+
+  /**
+   * Get the number of locks.
+   *
+   * @return the number of locks
+   */
+  static int count() {
+    return HashLocks.LOCKS.length;
+  }
+}
@@ -0,0 +1,162 @@
+package me.googas.lazy.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Tells the caches of other nodes that an object changed, so that they remove their copy of it. It
+ * is identified by the name of its class and its {@link Catchable#getCacheKey()}. Only keys that
+ * are strings, longs, integers or uuids can be sent to other processes, such as by {@link
+ * SocketInvalidationBus}, as other keys would have to be deserialized from whatever is received.
+ *
+ * @see InvalidationBus
+ */
+public final class Invalidation {
+
+  private static final byte STRING = 0;
+  private static final byte LONG = 1;
+  private static final byte INTEGER = 2;
+  private static final byte UUID = 3;
+
+  /** The name of the class of the object. */
+  @NonNull @Getter private final String type;
+  /** The key of the object. */
+  @NonNull @Getter private final Object key;
+
+  /**
+   * Create the invalidation.
+   *
+   * @param type the name of the class of the object
+   * @param key the key of the object
+   */
+  public Invalidation(@NonNull String type, @NonNull Object key) {
+    this.type = type;
+    this.key = key;
+  }
+
+  /**
+   * Create the invalidation of an object.
+   *
+   * @param catchable the object that changed
+   * @return the invalidation
+   * @throws IllegalArgumentException if the object does not provide a key
+   */
+  @NonNull
+  public static Invalidation of(@NonNull Catchable catchable) {
+    Object key = catchable.getCacheKey();
+    if (key == null) {
+      throw new IllegalArgumentException("Only objects with a key can be invalidated " + catchable);
+    }
+    return new Invalidation(catchable.getClass().getName(), key);
+  }
+
+  /**
+   * Remove the object from a cache using {@link Cache#remove(Class, Object)}, so removing it does
+   * not count as reading it. Nothing is removed if the class is not loaded in this node.
+   *
+   * @param cache the cache to remove the object from
+   * @return whether the object was removed
+   */
+  public boolean apply(@NonNull Cache cache) {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (loader == null) loader = Invalidation.class.getClassLoader();
+    Class<?> clazz;
+    try {
+      clazz = Class.forName(this.type, false, loader);
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+    if (!Catchable.class.isAssignableFrom(clazz)) return false;
+    return cache.remove(clazz.asSubclass(Catchable.class), this.key);
+  }
+
+  /**
+   * Convert the invalidation to bytes.
+   *
+   * @return the bytes of the invalidation
+   * @throws IOException if the key is not a string, long, integer or uuid
+   */
+  @NonNull
+  byte[] toBytes() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeUTF(this.type);
+      if (this.key instanceof String) {
+        output.writeByte(Invalidation.STRING);
+        output.writeUTF((String) this.key);
+      } else if (this.key instanceof Long) {
+        output.writeByte(Invalidation.LONG);
+        output.writeLong((Long) this.key);
+      } else if (this.key instanceof Integer) {
+        output.writeByte(Invalidation.INTEGER);
+        output.writeInt((Integer) this.key);
+      } else if (this.key instanceof UUID) {
+        output.writeByte(Invalidation.UUID);
+        output.writeLong(((UUID) this.key).getMostSignificantBits());
+        output.writeLong(((UUID) this.key).getLeastSignificantBits());
+      } else {
+        throw new IOException(
+            "Only string, long, integer and uuid keys can be sent, the key of "
+                + this.type
+                + " is "
+                + this.key.getClass().getName());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Convert bytes given by {@link #toBytes()} back to an invalidation.
+   *
+   * @param bytes the bytes of the invalidation
+   * @param offset the offset of the invalidation in the bytes
+   * @param length the length of the invalidation
+   * @return the invalidation
+   * @throws IOException if the bytes could not be converted
+   */
+  @NonNull
+  static Invalidation fromBytes(@NonNull byte[] bytes, int offset, int length) throws IOException {
+    try (DataInputStream input =
+        new DataInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+      String type = input.readUTF();
+      byte tag = input.readByte();
+      switch (tag) {
+        case Invalidation.STRING:
+          return new Invalidation(type, input.readUTF());
+        case Invalidation.LONG:
+          return new Invalidation(type, input.readLong());
+        case Invalidation.INTEGER:
+          return new Invalidation(type, input.readInt());
+        case Invalidation.UUID:
+          return new Invalidation(type, new UUID(input.readLong(), input.readLong()));
+        default:
+          throw new IOException("Unknown key type " + tag);
+      }
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || this.getClass() != o.getClass()) return false;
+    Invalidation that = (Invalidation) o;
+    return this.type.equals(that.type) && this.key.equals(that.key);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.type, this.key);
+  }
+
+  @Override
+  public String toString() {
+    return "Invalidation{" + "type='" + this.type + '\'' + ", key=" + this.key + '}';
+  }
+}
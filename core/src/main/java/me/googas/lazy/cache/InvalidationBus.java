@@ -0,0 +1,70 @@
+package me.googas.lazy.cache;
+
+import java.util.function.Consumer;
+import lombok.NonNull;
+
+/**
+ * Keeps the caches of many nodes that use the same database coherent. When a node writes an object
+ * it publishes its {@link Invalidation} and the rest of the nodes remove their copy of it, so the
+ * next read loads the written object instead of serving the stale one until it expires.
+ *
+ * <pre>
+ *     InvalidationBus bus = new SocketInvalidationBus(7001, 7002, 7003);
+ *     LazyCache loader = LazyCache.using(cache).setChild(sql).invalidateWith(bus).build();
+ *     user.setBalance(100);
+ *     sql.getSubloader(UserSubloader.class).save(user);
+ *     loader.invalidate(user);
+ * </pre>
+ *
+ * <p>Invalidations are not given back to the node that published them. Delivery depends on the
+ * implementation, an invalidation that is lost leaves the object stale until it expires.
+ *
+ * <p>Only {@link LazyCache} and the Jsongo subloaders publish and receive invalidations by
+ * themselves. The subloaders of LazySQL write through statements that the bus can't see, so to keep
+ * their cache coherent bind the bus to it with {@link #bind(Cache)} and publish the invalidation of
+ * each object after writing it.
+ *
+ * @see LocalInvalidationBus
+ * @see SocketInvalidationBus
+ */
+public interface InvalidationBus {
+
+  /**
+   * Send an invalidation to every other node.
+   *
+   * @param invalidation the invalidation to send
+   */
+  void publish(@NonNull Invalidation invalidation);
+
+  /**
+   * Add a listener for the invalidations sent by other nodes. Listeners may be called from the
+   * thread that receives the invalidations
+   *
+   * @param listener the listener to add
+   * @return this same instance
+   */
+  @NonNull
+  InvalidationBus subscribe(@NonNull Consumer<Invalidation> listener);
+
+  /**
+   * Remove the objects of the invalidations sent by other nodes from a cache. Exceptions thrown
+   * while removing are given to the handler of the cache
+   *
+   * @param cache the cache to remove the objects from
+   * @return this same instance
+   */
+  @NonNull
+  default InvalidationBus bind(@NonNull Cache cache) {
+    return this.subscribe(
+        invalidation -> {
+          try {
+            invalidation.apply(cache);
+          } catch (Throwable e) {
+            cache.getHandler().accept(e);
+          }
+        });
+  }
+
+  /** Stop sending and receiving invalidations. */
+  void close();
+}
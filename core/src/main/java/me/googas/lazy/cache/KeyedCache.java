@@ -0,0 +1,1170 @@
+package me.googas.lazy.cache;
+
+import java.lang.ref.SoftReference;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A {@link Cache} that stores objects by their {@link Catchable#getCacheKey()}. While {@link
+ * MemoryCache} has to go through every cached object to check whether it contains, refreshes or
+ * removes one, this cache does it with a single hash lookup, so those operations cost the same no
+ * matter how many objects are cached.
+ *
+ * <p>Objects are partitioned by their concrete class, so keys must only be unique among objects of
+ * the same class and lookups such as {@link #filter(Class, Predicate)} only go through the objects
+ * of the classes that are assignable to the requested one. Objects that do not provide a key are
+ * identified by themselves, using their {@link Object#equals(Object)} and {@link
+ * Object#hashCode()}, which means that they are strongly referenced until they are removed.
+ *
+ * <p>Expiration is scheduled in a {@link TimingWheel}, so {@link #run()} only goes through the
+ * objects that are due instead of the whole cache.
+ *
+ * <p>Objects may also be found by an attribute with a hash lookup by registering an index using
+ * {@link #index(Class, String, Function)}:
+ *
+ * <pre>
+ *     cache.index(User.class, "username", User::getUsername);
+ *     Optional&lt;User&gt; user = cache.getByIndex(User.class, "username", "Googas");
+ * </pre>
+ *
+ * <p>Objects evicted before they expire, such as by a {@link BoundedCache}, may be demoted into an
+ * {@link OffHeapTier} using {@link #demoteTo(OffHeapTier)} and are promoted back when they are
+ * requested using {@link #getByKey(Class, Object)}.
+ *
+ * <p>Objects that keep being read may be reloaded before they expire using {@link
+ * #refreshAhead(Class, double, Reload)}, so that readers do not miss them once their time passes.
+ */
+public class KeyedCache extends TimerTask implements Cache {
+
+  /** The partitions of entries by the concrete class of their objects. */
+  @NonNull private final Map<Class<?>, Partition> partitions = new ConcurrentHashMap<>();
+
+  /** The partitions that are assignable to a class. */
+  @NonNull
+  private final ClassValue<Assignable> assignable =
+      new ClassValue<Assignable>() {
+        @Override
+        protected Assignable computeValue(Class<?> type) {
+          return new Assignable();
+        }
+      };
+
+  /** The registered indexes by the class they were registered for and their name. */
+  @NonNull private final Map<Class<?>, Map<String, Index<?>>> indexes = new ConcurrentHashMap<>();
+
+  /** The registered refreshes by the class they were registered for. */
+  @NonNull private final Map<Class<?>, Refresh<?>> refreshes = new ConcurrentHashMap<>();
+
+  /** Changes each time a partition is created, so that {@link Assignable} can be recomputed. */
+  private volatile int version;
+
+  /** Schedules the expiration of entries. */
+  @NonNull private final TimingWheel<Entry> wheel;
+
+  /** Tells the current time to schedule and expire entries. */
+  @NonNull private final Clock clock;
+
+  @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+
+  /** The pipeline to call the removals, if null they are called in the thread that removes. */
+  private RemovalPipeline pipeline;
+
+  /** The tier to which evicted objects are demoted, if null they are removed. */
+  private OffHeapTier tier;
+
+  /** The snapshot to save the objects into when closing, if null they are not saved. */
+  private CacheSnapshot snapshot;
+
+  @NonNull private final StatsCounter counter = new StatsCounter();
+
+  @NonNull
+  private final List<Consumer<Collection<Catchable>>> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Create the cache.
+   *
+   * @param resolution the resolution of the expiration ticks. Objects may be removed up to this
+   *     much time after their removal time
+   * @param unit the unit of the resolution
+   * @param clock the clock that tells the current time
+   */
+  public KeyedCache(long resolution, @NonNull TimeUnit unit, @NonNull Clock clock) {
+    this.clock = clock;
+    this.wheel = new TimingWheel<>(unit.toMillis(resolution), clock.millis());
+  }
+
+  /**
+   * Create the cache.
+   *
+   * @param resolution the resolution of the expiration ticks. Objects may be removed up to this
+   *     much time after their removal time
+   * @param unit the unit of the resolution
+   */
+  public KeyedCache(long resolution, @NonNull TimeUnit unit) {
+    this(resolution, unit, Clock.systemUTC());
+  }
+
+  /** Create the cache with a resolution of a second. */
+  public KeyedCache() {
+    this(1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Get the key that is used to store a catchable.
+   *
+   * @param catchable the catchable to get the key from
+   * @return the key of the catchable or the catchable itself if it does not provide one
+   */
+  @NonNull
+  static Object keyOf(@NonNull Catchable catchable) {
+    Object key = catchable.getCacheKey();
+    return key == null ? catchable : key;
+  }
+
+  /**
+   * Get the partition of the objects of a concrete class.
+   *
+   * @param type the concrete class of the objects
+   * @return the partition or null if no object of the class has been added
+   */
+  private Partition partitionOf(@NonNull Class<?> type) {
+    return this.partitions.get(type);
+  }
+
+  /**
+   * Get or create the partition of the objects of a concrete class.
+   *
+   * @param type the concrete class of the objects
+   * @return the partition
+   */
+  @NonNull
+  private Partition computePartition(@NonNull Class<?> type) {
+    Partition partition = this.partitions.get(type);
+    if (partition != null) return partition;
+    synchronized (this.partitions) {
+      partition = this.partitions.get(type);
+      if (partition == null) {
+        partition = new Partition(type);
+        for (Map<String, Index<?>> indexes : this.indexes.values()) {
+          for (Index<?> index : indexes.values()) {
+            if (index.type.isAssignableFrom(type)) partition.indexes.add(index);
+          }
+        }
+        for (Refresh<?> refresh : this.refreshes.values()) {
+          if (refresh.type.isAssignableFrom(type)) partition.refresh = refresh;
+        }
+        this.partitions.put(type, partition);
+        this.version++;
+      }
+      return partition;
+    }
+  }
+
+  /**
+   * Get the partitions which objects are assignable to a class.
+   *
+   * @param type the class to which objects must be assignable
+   * @return the array of partitions
+   */
+  @NonNull
+  private Partition[] partitionsOf(@NonNull Class<?> type) {
+    Assignable assignable = this.assignable.get(type);
+    Resolved resolved = assignable.resolved;
+    int version = this.version;
+    if (resolved == null || resolved.version != version) {
+      resolved =
+          new Resolved(
+              version,
+              this.partitions.values().stream()
+                  .filter(partition -> type.isAssignableFrom(partition.type))
+                  .toArray(Partition[]::new));
+      assignable.resolved = resolved;
+    }
+    return resolved.partitions;
+  }
+
+  /**
+   * Get the entry of a catchable.
+   *
+   * @param catchable the catchable to get the entry from
+   * @return the entry or null if the catchable is not in cache
+   */
+  private Entry entryOf(@NonNull Catchable catchable) {
+    Partition partition = this.partitionOf(catchable.getClass());
+    return partition == null ? null : partition.entries.get(KeyedCache.keyOf(catchable));
+  }
+
+  /**
+   * Register an index for the objects of a class. The attribute of every object assignable to the
+   * class is extracted when it is added, so it can be found using {@link #getByIndex(Class, String,
+   * Object)}. Objects that are already inside the cache are indexed as well. If the attribute of an
+   * object changes while it is cached {@link #reindex(Catchable)} must be called
+   *
+   * @param clazz the class of the objects to index
+   * @param name the name of the index
+   * @param extractor the function to extract the attribute, objects for which it returns null are
+   *     not indexed
+   * @param <T> the type of the objects to index
+   * @return this same instance
+   * @throws IllegalStateException if there's an index with the same name for the class already
+   */
+  @NonNull
+  public <T extends Catchable> KeyedCache index(
+      @NonNull Class<T> clazz, @NonNull String name, @NonNull Function<T, ?> extractor) {
+    Index<T> index = new Index<>(clazz, extractor);
+    synchronized (this.partitions) {
+      Map<String, Index<?>> indexes =
+          this.indexes.computeIfAbsent(clazz, key -> new ConcurrentHashMap<>());
+      if (indexes.putIfAbsent(name, index) != null) {
+        throw new IllegalStateException("There's already an index named " + name + " for " + clazz);
+      }
+      for (Partition partition : this.partitions.values()) {
+        if (!clazz.isAssignableFrom(partition.type)) continue;
+        partition.indexes.add(index);
+        for (Entry entry : partition.entries.values()) {
+          Catchable catchable = entry.reference.get();
+          if (catchable != null) index.put(entry, catchable);
+        }
+      }
+    }
+    return this;
+  }
+
+  @NonNull
+  private Index<?> indexOf(@NonNull Class<?> clazz, @NonNull String name) {
+    Map<String, Index<?>> indexes = this.indexes.get(clazz);
+    Index<?> index = indexes == null ? null : indexes.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("There's no index named " + name + " for " + clazz);
+    }
+    return index;
+  }
+
+  /**
+   * Get an object from cache using an index. This will not refresh the object use {@link
+   * #refresh(Catchable)} to refresh it
+   *
+   * @see #index(Class, String, Function)
+   * @param clazz the class for which the index was registered
+   * @param name the name of the index
+   * @param value the value of the attribute of the object
+   * @param <T> the type of the catchable
+   * @return a {@link Optional} instance containing the catchable if found else null
+   * @throws IllegalArgumentException if there's no index with the name for the class
+   */
+  @NonNull
+  public <T extends Catchable> Optional<T> getByIndex(
+      @NonNull Class<T> clazz, @NonNull String name, @NonNull Object value) {
+    Set<Entry> entries = this.indexOf(clazz, name).entries.get(value);
+    if (entries != null) {
+      for (Entry entry : entries) {
+        Catchable catchable = entry.reference.get();
+        if (catchable != null) {
+          this.hit(entry, catchable);
+          this.counter.recordHit();
+          return Optional.of(clazz.cast(catchable));
+        }
+      }
+    }
+    this.counter.recordMiss();
+    return Optional.empty();
+  }
+
+  /**
+   * Get the objects from cache that have a value in an index. This will not refresh the objects use
+   * {@link #refresh(Catchable)} to refresh them
+   *
+   * @see #index(Class, String, Function)
+   * @param clazz the class for which the index was registered
+   * @param name the name of the index
+   * @param value the value of the attribute of the objects
+   * @param <T> the type of the catchables
+   * @return the list of catchables this will not be null, but it could be empty
+   * @throws IllegalArgumentException if there's no index with the name for the class
+   */
+  @NonNull
+  public <T extends Catchable> Collection<T> getManyByIndex(
+      @NonNull Class<T> clazz, @NonNull String name, @NonNull Object value) {
+    List<T> list = new ArrayList<>();
+    Set<Entry> entries = this.indexOf(clazz, name).entries.get(value);
+    if (entries != null) {
+      for (Entry entry : entries) {
+        Catchable catchable = entry.reference.get();
+        if (catchable != null) {
+          this.hit(entry, catchable);
+          list.add(clazz.cast(catchable));
+        }
+      }
+    }
+    return list;
+  }
+
+  /**
+   * Extract again the attributes of an object for every index. This must be called when an
+   * attribute of a cached object changes
+   *
+   * @param catchable the object to index again
+   */
+  public void reindex(@NonNull Catchable catchable) {
+    Entry entry = this.entryOf(catchable);
+    if (entry == null) return;
+    Catchable stored = entry.reference.get();
+    if (stored != null) this.index(entry, stored);
+  }
+
+  private void index(@NonNull Entry entry, @NonNull Catchable catchable) {
+    for (Index<?> index : entry.partition.indexes) {
+      index.put(entry, catchable);
+    }
+  }
+
+  private void unindex(@NonNull Entry entry) {
+    for (Index<?> index : entry.partition.indexes) {
+      index.remove(entry);
+    }
+  }
+
+  /**
+   * Register this cache in a {@link ScheduledExecutorService}. This will be run every tick of the
+   * resolution of the cache, any exception thrown while running is given to the {@link
+   * #getHandler()} so the task is never cancelled
+   *
+   * @param service the service to register this cache
+   * @return this same instance
+   */
+  @NonNull
+  public KeyedCache register(@NonNull ScheduledExecutorService service) {
+    long resolution = this.wheel.getResolution();
+    service.scheduleAtFixedRate(this::tick, resolution, resolution, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  /**
+   * Register this cache in a {@link Timer}. This will register the timer to be run every second
+   *
+   * @deprecated a {@link Timer} is cancelled by any uncaught exception, use {@link
+   *     #register(ScheduledExecutorService)}
+   * @param timer the timer to register this cache
+   * @return this same instance
+   */
+  @NonNull
+  @Deprecated
+  public KeyedCache register(@NonNull Timer timer) {
+    timer.schedule(this, 1000, 1000);
+    return this;
+  }
+
+  /**
+   * Set the pipeline to call {@link Catchable#onRemove()} of expired or evicted objects outside the
+   * thread that removes them. When the cache closes the removals are called in the closing thread
+   *
+   * @param pipeline the pipeline to use
+   * @return this same instance
+   */
+  @NonNull
+  public KeyedCache removeWith(@NonNull RemovalPipeline pipeline) {
+    this.pipeline = pipeline;
+    return this;
+  }
+
+  /**
+   * Set the tier to which objects evicted before they expire are demoted. Objects which class is
+   * not supported by the tier are removed as usual. Objects that are collected because of memory
+   * pressure cannot be demoted as they no longer exist by the time the cache knows about it
+   *
+   * @param tier the tier to demote objects to
+   * @return this same instance
+   */
+  @NonNull
+  public KeyedCache demoteTo(@NonNull OffHeapTier tier) {
+    this.tier = tier;
+    return this;
+  }
+
+  /**
+   * Reload the objects of a class before they expire, using the common {@link ForkJoinPool}.
+   *
+   * @see #refreshAhead(Class, double, Executor, Reload)
+   * @param clazz the class of the objects
+   * @param fraction the fraction of the time that objects stay in cache after which they are
+   *     reloaded when read, from 0 to 1
+   * @param reload the reload of the objects
+   * @param <T> the type of the objects
+   * @return this same instance
+   */
+  @NonNull
+  public <T extends Catchable> KeyedCache refreshAhead(
+      @NonNull Class<T> clazz, double fraction, @NonNull Reload<T> reload) {
+    return this.refreshAhead(clazz, fraction, ForkJoinPool.commonPool(), reload);
+  }
+
+  /**
+   * Reload the objects of a class before they expire. Once an object assignable to the class has
+   * been in cache for the given fraction of its time to be removed, the next read of it gives it to
+   * the reload in the executor while the read returns the current object. The reloaded object then
+   * replaces it and stays in cache for its whole time to be removed, so an object that keeps being
+   * read never leaves the cache. Objects that are not read after the fraction expire as usual.
+   *
+   * <p>The replaced object is not given to {@link Catchable#onRemove()} as it has not left the
+   * cache. If the reload fails the exception is given to the {@link #getHandler()}. When it fails
+   * or returns null the object stays until it expires and is reloaded again once it has been in
+   * cache for the same fraction of the time it had left. Refreshing an object with {@link
+   * #refresh(Catchable)} also delays its reload. Objects that are already inside the cache are
+   * reloaded after they are added again
+   *
+   * @param clazz the class of the objects
+   * @param fraction the fraction of the time that objects stay in cache after which they are
+   *     reloaded when read, from 0 to 1
+   * @param executor the executor to run the reloads in. Reloads that block, such as the ones that
+   *     query a database, should not use the common {@link ForkJoinPool}
+   * @param reload the reload of the objects
+   * @param <T> the type of the objects
+   * @return this same instance
+   * @throws IllegalArgumentException if the fraction is not between 0 and 1
+   */
+  @NonNull
+  public <T extends Catchable> KeyedCache refreshAhead(
+      @NonNull Class<T> clazz,
+      double fraction,
+      @NonNull Executor executor,
+      @NonNull Reload<T> reload) {
+    if (!(fraction >= 0 && fraction <= 1)) {
+      throw new IllegalArgumentException("Fraction must be between 0 and 1");
+    }
+    Refresh<T> refresh = new Refresh<>(clazz, fraction, executor, reload);
+    synchronized (this.partitions) {
+      this.refreshes.put(clazz, refresh);
+      for (Partition partition : this.partitions.values()) {
+        if (clazz.isAssignableFrom(partition.type)) partition.refresh = refresh;
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Set the snapshot to save the objects into when the cache is closed. Objects demoted into the
+   * {@link OffHeapTier} are not saved
+   *
+   * @see CacheSnapshot#restore(Cache)
+   * @param snapshot the snapshot to save into
+   * @return this same instance
+   */
+  @NonNull
+  public KeyedCache snapshotTo(@NonNull CacheSnapshot snapshot) {
+    this.snapshot = snapshot;
+    return this;
+  }
+
+  @Override
+  public @NonNull KeyedCache listen(@NonNull Consumer<Collection<Catchable>> listener) {
+    this.listeners.add(listener);
+    return this;
+  }
+
+  /**
+   * Set the consumer to be used in exceptions.
+   *
+   * @see #getHandler()
+   * @param handler the handler
+   * @return this same instance
+   */
+  @NonNull
+  public KeyedCache handle(@NonNull Consumer<Throwable> handler) {
+    this.handler = handler;
+    return this;
+  }
+
+  @Override
+  public <T extends Catchable> @NonNull Stream<T> filter(
+      @NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    return Stream.of(this.partitionsOf(clazz))
+        .flatMap(partition -> partition.entries.values().stream())
+        .map(entry -> this.read(entry, clazz, predicate))
+        .filter(Objects::nonNull);
+  }
+
+  @Override
+  public <T extends Catchable> T find(@NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    for (Partition partition : this.partitionsOf(clazz)) {
+      for (Entry entry : partition.entries.values()) {
+        T catchable = this.read(entry, clazz, predicate);
+        if (catchable != null) {
+          this.counter.recordHit();
+          return catchable;
+        }
+      }
+    }
+    this.counter.recordMiss();
+    return null;
+  }
+
+  /**
+   * Read the object of an entry and record the access if it matches.
+   *
+   * @param entry the entry to read
+   * @param clazz the clazz of the catchable for casting
+   * @param predicate the predicate to match the catchable
+   * @param <T> the type of the catchable
+   * @return the object if it matches else null
+   */
+  private <T extends Catchable> T read(
+      @NonNull Entry entry, @NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    Catchable catchable = entry.reference.get();
+    if (!clazz.isInstance(catchable)) return null;
+    T cast = clazz.cast(catchable);
+    if (!predicate.test(cast)) return null;
+    this.hit(entry, cast);
+    return cast;
+  }
+
+  @Override
+  public @NonNull <T extends Catchable> Optional<T> getByKey(
+      @NonNull Class<T> clazz, @NonNull Object key) {
+    for (Partition partition : this.partitionsOf(clazz)) {
+      Entry entry = partition.entries.get(key);
+      Catchable catchable = entry == null ? null : entry.reference.get();
+      if (catchable != null) {
+        this.hit(entry, catchable);
+        this.counter.recordHit();
+        return Optional.of(clazz.cast(catchable));
+      }
+    }
+    if (this.tier != null) {
+      Optional<T> promoted = this.promote(clazz, key);
+      if (promoted.isPresent()) {
+        this.counter.recordHit();
+        return promoted;
+      }
+    }
+    this.counter.recordMiss();
+    return Optional.empty();
+  }
+
+  /**
+   * Take an object out of the {@link OffHeapTier} and add it back into the cache.
+   *
+   * @param clazz the class to which the object must be assignable
+   * @param key the key of the object
+   * @param <T> the type of the object
+   * @return a {@link Optional} instance containing the object if it was demoted else null
+   */
+  @NonNull
+  private <T extends Catchable> Optional<T> promote(@NonNull Class<T> clazz, @NonNull Object key) {
+    Catchable catchable = this.promote(this.tier.take(clazz, key));
+    return catchable == null ? Optional.empty() : Optional.of(clazz.cast(catchable));
+  }
+
+  /**
+   * Add an object taken out of the {@link OffHeapTier} back into the cache.
+   *
+   * @param promoted the object taken out of the tier or null if there was none
+   * @return the object that is inside the cache with the same key or null if there was no object or
+   *     it expired
+   */
+  private Catchable promote(OffHeapTier.Promoted promoted) {
+    if (promoted == null) return null;
+    Catchable catchable = promoted.catchable;
+    if (promoted.time <= this.clock.millis()) {
+      this.counter.recordExpiration();
+      this.onRemove(Collections.singletonList(catchable));
+      return null;
+    }
+    // The object may have been added again while it was being promoted
+    Catchable cached = this.put(catchable, promoted.time);
+    return cached == null ? catchable : cached;
+  }
+
+  @Override
+  public boolean contains(@NonNull Catchable catchable) {
+    Entry entry = this.entryOf(catchable);
+    if (entry != null && entry.reference.get() != null) return true;
+    return this.tier != null
+        && this.tier.contains(catchable.getClass(), KeyedCache.keyOf(catchable));
+  }
+
+  @Override
+  public void add(@NonNull Catchable catchable) {
+    if (this.put(catchable, this.getTimeToRemove(catchable)) != null) {
+      throw new IllegalStateException(
+          "There's already an instance of " + catchable + " inside of the cache");
+    }
+  }
+
+  @Override
+  public <T extends Catchable> @NonNull T addIfAbsent(@NonNull T catchable) {
+    return this.addIfAbsent(catchable, this.getTimeToRemove(catchable));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T extends Catchable> @NonNull T addIfAbsent(@NonNull T catchable, long time) {
+    Catchable cached = this.put(catchable, time);
+    // Objects with the same key are in the same partition so they have the same class
+    return cached == null ? catchable : (T) cached;
+  }
+
+  @Override
+  public void forEachEntry(@NonNull ObjLongConsumer<Catchable> action) {
+    for (Partition partition : this.partitions.values()) {
+      for (Entry entry : partition.entries.values()) {
+        Catchable catchable = entry.reference.get();
+        if (catchable != null) action.accept(catchable, entry.time);
+      }
+    }
+  }
+
+  /**
+   * Add an object unless there's already an object with the same key. An object with the same key
+   * that was demoted is promoted and is the one that stays in the cache, as it would be if it had
+   * not been evicted.
+   *
+   * @param catchable the object to add
+   * @param time the time in millis for the object to be removed
+   * @return the object that is already inside the cache or null if the object was added
+   */
+  private Catchable put(@NonNull Catchable catchable, long time) {
+    Partition partition = this.computePartition(catchable.getClass());
+    Map<Object, Entry> entries = partition.entries;
+    Object key = KeyedCache.keyOf(catchable);
+    if (this.tier != null) {
+      Catchable demoted = this.promote(this.tier.takeExact(catchable.getClass(), key));
+      if (demoted != null) return demoted;
+    }
+    Entry entry = new Entry(partition, key, catchable, time, this.clock.millis());
+    Entry previous = entries.putIfAbsent(key, entry);
+    // An entry which object was collected may be replaced
+    while (previous != null) {
+      Catchable cached = previous.reference.get();
+      if (cached != null) return cached;
+      if (entries.replace(key, previous, entry)) {
+        this.unindex(previous);
+        this.removed(previous);
+        this.counter.recordCollection();
+        previous = null;
+      } else {
+        previous = entries.putIfAbsent(key, entry);
+      }
+    }
+    this.index(entry, catchable);
+    this.wheel.schedule(entry, entry.time);
+    this.counter.recordAdd();
+    this.added(entry);
+    return null;
+  }
+
+  @Override
+  public long getTimeLeft(@NonNull Catchable catchable) {
+    Entry entry = this.entryOf(catchable);
+    if (entry == null) return 0;
+    long millis = entry.time - this.clock.millis();
+    return millis < 0 ? 0 : millis;
+  }
+
+  @Override
+  public long getTimeToRemove(@NonNull Catchable catchable) {
+    return this.clock.millis() + catchable.getToRemove();
+  }
+
+  @Override
+  public boolean remove(@NonNull Catchable catchable) {
+    Partition partition = this.partitionOf(catchable.getClass());
+    Object key = KeyedCache.keyOf(catchable);
+    boolean demoted = this.tier != null && this.tier.remove(catchable.getClass(), key);
+    Entry entry = partition == null ? null : partition.entries.remove(key);
+    if (entry == null) {
+      if (demoted) this.counter.recordRemoval();
+      return demoted;
+    }
+    this.unindex(entry);
+    this.removed(entry);
+    this.counter.recordRemoval();
+    return true;
+  }
+
+  /**
+   * {@inheritDoc} The object is removed from the partitions of the classes assignable to the class
+   * and from the {@link OffHeapTier}, each with a single hash lookup.
+   */
+  @Override
+  public boolean remove(@NonNull Class<? extends Catchable> clazz, @NonNull Object key) {
+    boolean removed = false;
+    for (Partition partition : this.partitionsOf(clazz)) {
+      boolean demoted = this.tier != null && this.tier.remove(partition.type, key);
+      Entry entry = partition.entries.remove(key);
+      if (entry != null) {
+        this.unindex(entry);
+        this.removed(entry);
+      }
+      if (entry != null || demoted) {
+        this.counter.recordRemoval();
+        removed = true;
+      }
+    }
+    return removed;
+  }
+
+  @Override
+  public void refresh(@NonNull Catchable catchable) {
+    Entry entry = this.entryOf(catchable);
+    if (entry == null) return;
+    long now = this.clock.millis();
+    long time = now + catchable.getToRemove();
+    entry.time = time;
+    long refreshAt = entry.refreshAt;
+    // Unless it never reloads or a reload of it is running
+    if (refreshAt != Long.MAX_VALUE) {
+      Entry.REFRESH_AT.compareAndSet(entry, refreshAt, entry.partition.refresh.due(now, time));
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.snapshot != null) this.snapshot.saveQuietly(this);
+    List<Catchable> removed = new ArrayList<>();
+    for (Partition partition : this.partitions.values()) {
+      Iterator<Entry> iterator = partition.entries.values().iterator();
+      while (iterator.hasNext()) {
+        Entry entry = iterator.next();
+        Catchable catchable = entry.reference.get();
+        iterator.remove();
+        this.unindex(entry);
+        this.removed(entry);
+        if (catchable != null) removed.add(catchable);
+      }
+    }
+    this.wheel.clear();
+    if (this.tier != null) this.tier.clear(removed);
+    this.notify(removed);
+    if (this.pipeline == null) {
+      removed.forEach(catchable -> RemovalPipeline.remove(catchable, this::failed));
+    } else {
+      this.pipeline.execute(removed, this::failed);
+    }
+  }
+
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    long now = this.clock.millis();
+    List<Catchable> removed = new ArrayList<>();
+    for (Entry entry : this.wheel.advance(now)) {
+      // The entry was removed or replaced
+      if (entry.partition.entries.get(entry.key) != entry) continue;
+      Catchable catchable = entry.reference.get();
+      if (catchable != null && now < entry.time) {
+        // The entry was refreshed
+        this.wheel.schedule(entry, entry.time);
+      } else if (this.evict(entry, removed)) {
+        if (catchable == null) {
+          this.counter.recordCollection();
+        } else {
+          this.counter.recordExpiration();
+        }
+      }
+    }
+    if (this.tier != null) {
+      int size = removed.size();
+      this.tier.expire(now, removed);
+      for (int i = size; i < removed.size(); i++) {
+        this.counter.recordExpiration();
+      }
+    }
+    this.onRemove(removed);
+    this.counter.recordSweep(System.nanoTime() - start);
+  }
+
+  @Override
+  public @NonNull CacheStats getStats() {
+    Map<Class<?>, Long> sizes = new HashMap<>();
+    for (Partition partition : this.partitions.values()) {
+      long size = partition.entries.size();
+      if (size > 0) sizes.put(partition.type, size);
+    }
+    return this.counter.snapshot(sizes);
+  }
+
+  /**
+   * Remove an entry from the cache without calling {@link #removed(Entry)}. If the object of the
+   * entry has not been collected it is added to the removed objects, which must be given to {@link
+   * #onRemove(Collection)}
+   *
+   * @param entry the entry to remove
+   * @param removed the removed objects
+   * @return whether the entry was removed, it may have been removed already
+   */
+  boolean expel(@NonNull Entry entry, @NonNull Collection<Catchable> removed) {
+    if (!entry.partition.entries.remove(entry.key, entry)) return false;
+    this.unindex(entry);
+    Catchable catchable = entry.reference.get();
+    if (catchable != null) removed.add(catchable);
+    return true;
+  }
+
+  /**
+   * Remove an entry from the cache to make room for other objects. Its object is demoted into the
+   * {@link OffHeapTier} if possible, else it is added to the removed objects as in {@link
+   * #expel(Entry, Collection)}. Objects displaced from the tier are added to the removed objects
+   * too
+   *
+   * @param entry the entry to remove
+   * @param removed the removed objects
+   */
+  void demote(@NonNull Entry entry, @NonNull Collection<Catchable> removed) {
+    Catchable catchable = entry.reference.get();
+    if (this.tier == null || catchable == null || !this.tier.supports(catchable.getClass())) {
+      if (this.expel(entry, removed)) this.counter.recordEviction();
+      return;
+    }
+    if (!entry.partition.entries.remove(entry.key, entry)) return;
+    this.unindex(entry);
+    this.counter.recordEviction();
+    if (!this.tier.put(entry.key, catchable, entry.time, removed)) removed.add(catchable);
+  }
+
+  /**
+   * Remove an entry from the cache because it expired or its object was collected.
+   *
+   * @param entry the entry to remove
+   * @param removed the removed objects
+   * @return whether the entry was removed, it may have been removed already
+   */
+  boolean evict(@NonNull Entry entry, @NonNull Collection<Catchable> removed) {
+    if (!this.expel(entry, removed)) return false;
+    this.removed(entry);
+    return true;
+  }
+
+  /**
+   * Call {@link Catchable#onRemove()} for the objects that were expired or evicted, using the
+   * {@link RemovalPipeline} if there's one.
+   *
+   * @param removed the removed objects
+   */
+  void onRemove(@NonNull Collection<Catchable> removed) {
+    if (removed.isEmpty()) return;
+    this.notify(removed);
+    if (this.pipeline == null) {
+      removed.forEach(catchable -> RemovalPipeline.remove(catchable, this::failed));
+    } else {
+      this.pipeline.submit(removed, this::failed);
+    }
+  }
+
+  private void notify(@NonNull Collection<Catchable> removed) {
+    for (Consumer<Collection<Catchable>> listener : this.listeners) {
+      try {
+        listener.accept(removed);
+      } catch (Throwable e) {
+        this.handler.accept(e);
+      }
+    }
+  }
+
+  private void failed(@NonNull Throwable e) {
+    this.counter.recordFailure();
+    this.handler.accept(e);
+  }
+
+  /**
+   * Record the read of an entry and reload its object if it is due to be refreshed.
+   *
+   * @param entry the read entry
+   * @param catchable the object of the entry
+   */
+  private void hit(@NonNull Entry entry, @NonNull Catchable catchable) {
+    this.accessed(entry);
+    long refreshAt = entry.refreshAt;
+    if (refreshAt == Long.MAX_VALUE || refreshAt > this.clock.millis()) return;
+    // Only the reader that claims the entry reloads it
+    if (!Entry.REFRESH_AT.compareAndSet(entry, refreshAt, Long.MAX_VALUE)) return;
+    Refresh<?> refresh = entry.partition.refresh;
+    try {
+      refresh.executor.execute(() -> this.reload(entry, catchable, refresh));
+    } catch (Throwable e) {
+      this.handler.accept(e);
+      entry.refreshAt = refresh.due(this.clock.millis(), entry.time);
+    }
+  }
+
+  /**
+   * Reload the object of an entry and replace the entry with one of the reloaded object. Readers
+   * find either entry while it is being replaced. If the reload fails or does not give a valid
+   * object the entry is reloaded again once the fraction of the time it has left passes.
+   *
+   * @param entry the entry to reload
+   * @param stale the object of the entry
+   * @param refresh the refresh of the class of the object
+   */
+  @SuppressWarnings("unchecked")
+  private void reload(@NonNull Entry entry, @NonNull Catchable stale, @NonNull Refresh<?> refresh) {
+    Catchable fresh;
+    try {
+      fresh = ((Reload<Catchable>) refresh.reload).reload(stale);
+    } catch (Throwable e) {
+      this.handler.accept(e);
+      fresh = null;
+    }
+    long now = this.clock.millis();
+    if (fresh == null) {
+      entry.refreshAt = refresh.due(now, entry.time);
+      return;
+    }
+    long time = now + fresh.getToRemove();
+    if (fresh == stale) {
+      entry.time = time;
+      entry.refreshAt = refresh.due(now, time);
+      return;
+    }
+    if (fresh.getClass() != entry.partition.type || !KeyedCache.keyOf(fresh).equals(entry.key)) {
+      this.handler.accept(
+          new IllegalStateException(
+              "The reload of " + stale + " returned an object with another key: " + fresh));
+      entry.refreshAt = refresh.due(now, entry.time);
+      return;
+    }
+    Entry replacement = new Entry(entry.partition, entry.key, fresh, time, now);
+    if (!entry.partition.entries.replace(entry.key, entry, replacement)) return;
+    // Index the replacement before removing the entry so that index lookups never miss
+    this.index(replacement, fresh);
+    this.unindex(entry);
+    this.wheel.schedule(replacement, time);
+    this.removed(entry);
+    this.added(replacement);
+  }
+
+  /**
+   * Called after an entry has been added.
+   *
+   * @param entry the added entry
+   */
+  void added(@NonNull Entry entry) {}
+
+  /**
+   * Called when the object of an entry is read.
+   *
+   * @param entry the read entry
+   */
+  void accessed(@NonNull Entry entry) {}
+
+  /**
+   * Called after an entry has been removed.
+   *
+   * @param entry the removed entry
+   */
+  void removed(@NonNull Entry entry) {}
+
+  private void tick() {
+    try {
+      this.run();
+    } catch (Throwable e) {
+      this.handler.accept(e);
+    }
+  }
+
+  /** The entries of the objects of a concrete class. */
+  private static final class Partition {
+
+    @NonNull private final Class<?> type;
+    @NonNull private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+    @NonNull private final List<Index<?>> indexes = new CopyOnWriteArrayList<>();
+    private volatile Refresh<?> refresh;
+
+    private Partition(@NonNull Class<?> type) {
+      this.type = type;
+    }
+  }
+
+  /**
+   * An index of the entries by an attribute of their objects.
+   *
+   * @param <T> the type of the indexed objects
+   */
+  private static final class Index<T extends Catchable> {
+
+    @NonNull private final Class<T> type;
+    @NonNull private final Function<T, ?> extractor;
+    @NonNull private final Map<Object, Set<Entry>> entries = new ConcurrentHashMap<>();
+    /** The value each entry was indexed with, as the object may be collected before removal. */
+    @NonNull private final Map<Entry, Object> values = new ConcurrentHashMap<>();
+
+    private Index(@NonNull Class<T> type, @NonNull Function<T, ?> extractor) {
+      this.type = type;
+      this.extractor = extractor;
+    }
+
+    private void put(@NonNull Entry entry, @NonNull Catchable catchable) {
+      Object value = this.extractor.apply(this.type.cast(catchable));
+      Object previous = value == null ? this.values.remove(entry) : this.values.put(entry, value);
+      if (previous != null && !previous.equals(value)) this.remove(previous, entry);
+      if (value != null) {
+        this.entries.compute(
+            value,
+            (key, set) -> {
+              if (set == null) set = ConcurrentHashMap.newKeySet();
+              set.add(entry);
+              return set;
+            });
+      }
+    }
+
+    private void remove(@NonNull Entry entry) {
+      Object value = this.values.remove(entry);
+      if (value != null) this.remove(value, entry);
+    }
+
+    private void remove(@NonNull Object value, @NonNull Entry entry) {
+      this.entries.computeIfPresent(
+          value,
+          (key, set) -> {
+            set.remove(entry);
+            return set.isEmpty() ? null : set;
+          });
+    }
+  }
+
+  /**
+   * A registered refresh ahead of the objects of a class.
+   *
+   * @param <T> the type of the objects
+   */
+  private static final class Refresh<T extends Catchable> {
+
+    @NonNull private final Class<T> type;
+    private final double fraction;
+    @NonNull private final Executor executor;
+    @NonNull private final Reload<T> reload;
+
+    private Refresh(
+        @NonNull Class<T> type,
+        double fraction,
+        @NonNull Executor executor,
+        @NonNull Reload<T> reload) {
+      this.type = type;
+      this.fraction = fraction;
+      this.executor = executor;
+      this.reload = reload;
+    }
+
+    /**
+     * Get the time after which an object is reloaded.
+     *
+     * @param now the current time in millis
+     * @param time the time in millis for the object to be removed
+     * @return the time in millis for the object to be reloaded
+     */
+    private long due(long now, long time) {
+      return now + (long) ((time - now) * this.fraction);
+    }
+  }
+
+  /** Holds the partitions that are assignable to a class. */
+  private static final class Assignable {
+
+    private volatile Resolved resolved;
+  }
+
+  /** The partitions assignable to a class at a {@link #version} of the cache. */
+  private static final class Resolved {
+
+    private final int version;
+    @NonNull private final Partition[] partitions;
+
+    private Resolved(int version, @NonNull Partition[] partitions) {
+      this.version = version;
+      this.partitions = partitions;
+    }
+  }
+
+  /** An object inside the cache and the time in millis for it to be removed. */
+  static final class Entry {
+
+    private static final AtomicLongFieldUpdater<Entry> REFRESH_AT =
+        AtomicLongFieldUpdater.newUpdater(Entry.class, "refreshAt");
+
+    @NonNull private final Partition partition;
+    @NonNull private final Object key;
+    @NonNull private final SoftReference<Catchable> reference;
+    private final long weight;
+    private volatile long time;
+    /** The time in millis for the object to be reloaded, {@link Long#MAX_VALUE} if never. */
+    private volatile long refreshAt;
+
+    private Entry(
+        @NonNull Partition partition,
+        @NonNull Object key,
+        @NonNull Catchable catchable,
+        long time,
+        long now) {
+      this.partition = partition;
+      this.key = key;
+      this.reference = new SoftReference<>(catchable);
+      this.weight = catchable.getWeight();
+      this.time = time;
+      Refresh<?> refresh = partition.refresh;
+      this.refreshAt = refresh == null ? Long.MAX_VALUE : refresh.due(now, time);
+    }
+
+    /**
+     * Get the hash of the entry using its key and the class of its object.
+     *
+     * @return the hash
+     */
+    int hash() {
+      return 31 * this.partition.type.hashCode() + this.key.hashCode();
+    }
+
+    /**
+     * Get the weight of the object of the entry.
+     *
+     * @see Catchable#getWeight()
+     * @return the weight
+     */
+    long weight() {
+      return this.weight;
+    }
+  }
+
+  /**
+   * Reloads an object that is about to expire.
+   *
+   * @param <T> the type of the object
+   */
+  public interface Reload<T extends Catchable> {
+
+    /**
+     * Reload an object. The returned object replaces the given one, it must be of the same class
+     * and have the same key. It may also be the same object, after updating it, so that it just
+     * stays in cache for longer
+     *
+     * @param stale the object to reload
+     * @return the reloaded object or null to keep the stale object until it expires
+     * @throws Exception in case the object could not be reloaded
+     */
+    T reload(@NonNull T stale) throws Exception;
+  }
+}
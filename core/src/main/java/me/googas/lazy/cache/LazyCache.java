@@ -2,19 +2,55 @@ package me.googas.lazy.cache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import lombok.experimental.Delegate;
+import me.googas.lazy.ElementCouldNotBeLoadedException;
 import me.googas.lazy.LazyEmpty;
 import me.googas.lazy.Loader;
+import me.googas.lazy.LoaderCouldNotBeClosedException;
 import me.googas.lazy.Subloader;
+import me.googas.lazy.SubloaderRegistry;
 import me.googas.lazy.builders.Builder;
+import me.googas.lazy.util.SingleFlight;
 
 /**
  * A loader that finds elements inside {@link Cache}. If no elements are found the {@link #child}
- * can be used to load them
+ * can be used to load them: registering a {@link Load} for a type using {@link #loadWith(Class,
+ * Load)} makes {@link #getOrLoad(Class, Object)} load the elements that are missing and add them to
+ * the cache. Elements are looked up by their key, so only types that provide a key through {@link
+ * Catchable#getCacheKey()} can be loaded.
+ *
+ * <pre>
+ *     LazyCache loader = LazyCache.using(cache)
+ *         .setChild(sql)
+ *         .loadWith(User.class, (child, id) -&gt; child.getSubloader(UserSubloader.class).load(id))
+ *         .build();
+ *     Optional&lt;User&gt; user = loader.getOrLoad(User.class, id);
+ * </pre>
+ *
+ * <p>When many threads miss the same key at once only one of them loads it, the rest wait for its
+ * result instead of querying the database again.
+ *
+ * <p>Changes may be written to the database in batches by building the loader with a {@link
+ * WriteBehind} and using {@link #markDirty(Catchable)} instead of writing each change.
+ *
+ * <p>Keys that could not be loaded may be remembered by building the loader with a {@link
+ * NegativeCache}, so that {@link #getOrLoad(Class, Object)} does not load them again until their
+ * marker expires. Adding an element to the cache through this loader or marking it as dirty
+ * invalidates its marker.
+ *
+ * <p>When many nodes cache the same database the loader may be built with an {@link
+ * InvalidationBus}: the objects that other nodes invalidate are removed from the cache, and {@link
+ * #invalidate(Catchable)} tells the other nodes about the objects this node writes. Objects written
+ * by the {@link WriteBehind} are invalidated once their batch is written.
  */
 public class LazyCache implements Loader {
 
@@ -23,14 +59,39 @@ public class LazyCache implements Loader {
   @Delegate(excludes = IgnoredMethods.class)
   private final Cache cache;
 
-  @NonNull @Getter private final List<Subloader> subloaders;
+  @NonNull private final SubloaderRegistry<Subloader> subloaders;
   @NonNull @Getter @Setter private Loader child;
 
+  /** The loads by the type of the elements they load. */
+  @NonNull private final Map<Class<?>, Load<?>> loads;
+
+  /** Writes the changes of the elements in batches, if null changes are written by subloaders. */
+  private final WriteBehind writeBehind;
+
+  /** Remembers the keys that could not be loaded, if null they are loaded each time. */
+  private final NegativeCache negatives;
+
+  /** Tells the other nodes about the written elements, if null they are not told. */
+  private final InvalidationBus bus;
+
+  /** The loads that are running by the type and key of the element. */
+  @NonNull private final SingleFlight<List<Object>, Catchable> flights = new SingleFlight<>();
+
   private LazyCache(
-      @NonNull Cache cache, @NonNull Loader child, @NonNull List<Subloader> subloaders) {
+      @NonNull Cache cache,
+      @NonNull Loader child,
+      @NonNull SubloaderRegistry<Subloader> subloaders,
+      @NonNull Map<Class<?>, Load<?>> loads,
+      WriteBehind writeBehind,
+      NegativeCache negatives,
+      InvalidationBus bus) {
     this.cache = cache;
     this.child = child;
     this.subloaders = subloaders;
+    this.loads = loads;
+    this.writeBehind = writeBehind;
+    this.negatives = negatives;
+    this.bus = bus;
   }
 
   /**
@@ -41,25 +102,214 @@ public class LazyCache implements Loader {
    */
   @NonNull
   public static CacheLoaderBuilder using(@NonNull Cache cache) {
-    return new CacheLoaderBuilder(cache, new ArrayList<>(), new LazyEmpty());
+    return new CacheLoaderBuilder(cache, new ArrayList<>(), new LazyEmpty(), new HashMap<>());
+  }
+
+  /**
+   * Mark an element as changed so that the {@link WriteBehind} writes it in its next flush.
+   *
+   * @param catchable the changed element
+   * @throws IllegalStateException if the loader was not built with a {@link WriteBehind}
+   * @throws IllegalArgumentException if there's no write for the class of the element
+   */
+  public void markDirty(@NonNull Catchable catchable) {
+    if (this.writeBehind == null) throw new IllegalStateException("There's no write behind");
+    this.writeBehind.markDirty(catchable);
+    if (this.negatives != null) this.negatives.invalidate(catchable);
+  }
+
+  /**
+   * Tell that an element was written to the database: its marker in the {@link NegativeCache} is
+   * invalidated and, if the loader was built with an {@link InvalidationBus}, the other nodes
+   * remove their copy of it. Elements that do not provide a key are not published
+   *
+   * @param catchable the written element
+   */
+  public void invalidate(@NonNull Catchable catchable) {
+    if (this.negatives != null) this.negatives.invalidate(catchable);
+    if (this.bus != null && catchable.getCacheKey() != null) {
+      this.bus.publish(Invalidation.of(catchable));
+    }
+  }
+
+  /**
+   * Add an element to the cache, invalidating its marker in the {@link NegativeCache}.
+   *
+   * @see Cache#add(Catchable)
+   * @param catchable the element to add
+   * @throws IllegalStateException if there's already an instance of the element inside the cache
+   */
+  public void add(@NonNull Catchable catchable) {
+    if (this.negatives != null) this.negatives.invalidate(catchable);
+    this.cache.add(catchable);
+  }
+
+  /**
+   * Add an element to the cache unless there's already an instance of it, invalidating its marker
+   * in the {@link NegativeCache}.
+   *
+   * @see Cache#addIfAbsent(Catchable)
+   * @param catchable the element to add
+   * @param <T> the type of the element
+   * @return the element inside the cache
+   */
+  @NonNull
+  public <T extends Catchable> T addIfAbsent(@NonNull T catchable) {
+    if (this.negatives != null) this.negatives.invalidate(catchable);
+    return this.cache.addIfAbsent(catchable);
+  }
+
+  /**
+   * Add an element to the cache unless there's already an instance of it, to be removed at the
+   * given time, invalidating its marker in the {@link NegativeCache}.
+   *
+   * @see Cache#addIfAbsent(Catchable, long)
+   * @param catchable the element to add
+   * @param time the time in millis for the element to be removed
+   * @param <T> the type of the element
+   * @return the element inside the cache
+   */
+  @NonNull
+  public <T extends Catchable> T addIfAbsent(@NonNull T catchable, long time) {
+    if (this.negatives != null) this.negatives.invalidate(catchable);
+    return this.cache.addIfAbsent(catchable, time);
+  }
+
+  /**
+   * Register the way to load the elements of a type when they are not found inside the cache. The
+   * elements are looked up by their key, so the type must provide one through {@link
+   * Catchable#getCacheKey()}, otherwise they would never be found and always loaded again.
+   *
+   * @param clazz the class of the elements
+   * @param load the way to load the elements
+   * @param <T> the type of the elements
+   * @return this same instance
+   */
+  @NonNull
+  public <T extends Catchable> LazyCache loadWith(@NonNull Class<T> clazz, @NonNull Load<T> load) {
+    this.loads.put(clazz, load);
+    return this;
+  }
+
+  /**
+   * Get an element from cache by its key or load it using the {@link Load} registered for its
+   * class. The loaded element is added to the cache. If another thread is loading the same element
+   * this waits for it instead of loading it again. If the loader has a {@link NegativeCache} keys
+   * that could not be loaded are not loaded again until their marker expires
+   *
+   * @see #loadWith(Class, Load)
+   * @param clazz the class of the element
+   * @param key the key of the element
+   * @param <T> the type of the element
+   * @return a {@link Optional} holding the element if it is in cache or it could be loaded
+   * @throws IllegalArgumentException if there's no {@link Load} registered for the class or the
+   *     loaded element does not provide a key
+   * @throws ElementCouldNotBeLoadedException if the element could not be loaded
+   */
+  @NonNull
+  public <T extends Catchable> Optional<T> getOrLoad(@NonNull Class<T> clazz, @NonNull Object key)
+      throws ElementCouldNotBeLoadedException {
+    Optional<T> cached = this.cache.getByKey(clazz, key);
+    if (cached.isPresent()) return cached;
+    Load<?> load = this.loads.get(clazz);
+    if (load == null) throw new IllegalArgumentException("There's no load for " + clazz);
+    if (this.negatives != null && this.negatives.isAbsent(clazz, key)) return Optional.empty();
+    try {
+      return Optional.ofNullable(
+          clazz.cast(this.flights.execute(Arrays.asList(clazz, key), () -> this.load(clazz, key))));
+    } catch (IllegalArgumentException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ElementCouldNotBeLoadedException(e);
+    } catch (Exception e) {
+      throw new ElementCouldNotBeLoadedException(e);
+    }
+  }
+
+  private <T extends Catchable> T load(@NonNull Class<T> clazz, @NonNull Object key)
+      throws Exception {
+    // It may have been added while waiting to load it
+    Optional<T> cached = this.cache.getByKey(clazz, key);
+    if (cached.isPresent()) return cached.get();
+    T element = clazz.cast(this.loads.get(clazz).load(this.child, key));
+    if (element == null) {
+      if (this.negatives != null) this.negatives.markAbsent(clazz, key);
+      return null;
+    }
+    if (element.getCacheKey() == null) {
+      throw new IllegalArgumentException("Only elements with a key can be loaded " + element);
+    }
+    // It may have been added by someone else while loading it
+    return this.cache.addIfAbsent(element);
+  }
+
+  /**
+   * Get the subloaders of this loader.
+   *
+   * @return the subloaders
+   */
+  @NonNull
+  public List<Subloader> getSubloaders() {
+    return this.subloaders;
+  }
+
+  /**
+   * Get the registry that keeps the subloaders of this loader and resolves them by class.
+   *
+   * @return the registry of subloaders
+   */
+  @NonNull
+  public SubloaderRegistry<Subloader> getSubloaderRegistry() {
+    return this.subloaders;
   }
 
   @Override
   public <S extends Subloader> @NonNull S getSubloader(@NonNull Class<S> clazz) {
-    return this.subloaders.stream()
-        .filter(subloader -> clazz.isAssignableFrom(subloader.getClass()))
-        .map(clazz::cast)
-        .findFirst()
-        .orElseThrow(() -> new NullPointerException("Could not find subloader for " + clazz));
+    return this.subloaders.get(clazz);
   }
 
   @Override
-  public void close() {
-    this.cache.close();
+  public void close() throws LoaderCouldNotBeClosedException {
+    if (this.writeBehind != null) {
+      try {
+        this.writeBehind.close(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new LoaderCouldNotBeClosedException(e);
+      } finally {
+        this.cache.close();
+      }
+    } else {
+      this.cache.close();
+    }
   }
 
   private interface IgnoredMethods {
     void close();
+
+    void add(@NonNull Catchable catchable);
+
+    <T extends Catchable> T addIfAbsent(@NonNull T catchable);
+
+    <T extends Catchable> T addIfAbsent(@NonNull T catchable, long time);
+  }
+
+  /**
+   * Loads an element that is not found inside the cache.
+   *
+   * @param <T> the type of the element
+   */
+  public interface Load<T extends Catchable> {
+    /**
+     * Load an element.
+     *
+     * @param child the child loader of the {@link LazyCache}
+     * @param key the key of the element
+     * @return the element or null if it does not exist
+     * @throws Exception in case the element could not be loaded
+     */
+    T load(@NonNull Loader child, @NonNull Object key) throws Exception;
   }
 
   /** This class is used to build a {@link LazyCache}. */
@@ -68,14 +318,77 @@ public class LazyCache implements Loader {
     @NonNull private final Cache cache;
     @NonNull private final List<CacheSubloaderBuilder> subloaders;
     @NonNull private Loader child;
+    @NonNull private final Map<Class<?>, Load<?>> loads;
+    private WriteBehind writeBehind;
+    private NegativeCache negatives;
+    private InvalidationBus bus;
 
     private CacheLoaderBuilder(
         @NonNull Cache cache,
         @NonNull List<CacheSubloaderBuilder> subloaders,
-        @NonNull Loader child) {
+        @NonNull Loader child,
+        @NonNull Map<Class<?>, Load<?>> loads) {
       this.cache = cache;
       this.subloaders = subloaders;
       this.child = child;
+      this.loads = loads;
+    }
+
+    /**
+     * Register the way to load the elements of a type when they are not found inside the cache. The
+     * type must provide a key through {@link Catchable#getCacheKey()}.
+     *
+     * @see LazyCache#loadWith(Class, Load)
+     * @param clazz the class of the elements
+     * @param load the way to load the elements
+     * @param <T> the type of the elements
+     * @return this same instance
+     */
+    @NonNull
+    public <T extends Catchable> CacheLoaderBuilder loadWith(
+        @NonNull Class<T> clazz, @NonNull Load<T> load) {
+      this.loads.put(clazz, load);
+      return this;
+    }
+
+    /**
+     * Set the write behind to write the changes of the elements in batches.
+     *
+     * @see LazyCache#markDirty(Catchable)
+     * @param writeBehind the write behind to use
+     * @return this same instance
+     */
+    @NonNull
+    public CacheLoaderBuilder writeBehind(@NonNull WriteBehind writeBehind) {
+      this.writeBehind = writeBehind;
+      return this;
+    }
+
+    /**
+     * Set the negative cache to remember the keys that could not be loaded.
+     *
+     * @see LazyCache#getOrLoad(Class, Object)
+     * @param negatives the negative cache to use
+     * @return this same instance
+     */
+    @NonNull
+    public CacheLoaderBuilder negativeCache(@NonNull NegativeCache negatives) {
+      this.negatives = negatives;
+      return this;
+    }
+
+    /**
+     * Set the bus to tell other nodes about the written elements and to remove the elements that
+     * they write from the cache.
+     *
+     * @see LazyCache#invalidate(Catchable)
+     * @param bus the bus to use
+     * @return this same instance
+     */
+    @NonNull
+    public CacheLoaderBuilder invalidateWith(@NonNull InvalidationBus bus) {
+      this.bus = bus;
+      return this;
     }
 
     /**
@@ -104,7 +417,17 @@ public class LazyCache implements Loader {
 
     @Override
     public @NonNull LazyCache build() {
-      LazyCache loader = new LazyCache(this.cache, this.child, new ArrayList<>());
+      LazyCache loader =
+          new LazyCache(
+              this.cache,
+              this.child,
+              new SubloaderRegistry<>(),
+              new ConcurrentHashMap<>(this.loads),
+              this.writeBehind,
+              this.negatives,
+              this.bus);
+      if (this.writeBehind != null) this.writeBehind.bind(loader);
+      if (this.bus != null) this.bus.bind(this.cache);
       this.subloaders.forEach(
           builder -> {
             CacheSubloader subloader = builder.build(loader);
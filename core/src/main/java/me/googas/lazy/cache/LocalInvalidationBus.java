@@ -0,0 +1,68 @@
+package me.googas.lazy.cache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.NonNull;
+
+/**
+ * An {@link InvalidationBus} between nodes of the same process, such as many loaders of the same
+ * database that keep their own cache. Each node joins the bus using {@link #join()} and
+ * invalidations are given to the listeners of the other nodes in the thread that publishes them.
+ */
+public class LocalInvalidationBus implements InvalidationBus {
+
+  /** The nodes that joined the bus. */
+  @NonNull private final List<LocalInvalidationBus> nodes;
+
+  @NonNull private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+
+  private LocalInvalidationBus(@NonNull List<LocalInvalidationBus> nodes) {
+    this.nodes = nodes;
+    nodes.add(this);
+  }
+
+  /** Create the bus with this as its first node. */
+  public LocalInvalidationBus() {
+    this(new CopyOnWriteArrayList<>());
+  }
+
+  /**
+   * Add a node to the bus.
+   *
+   * @return the new node
+   */
+  @NonNull
+  public LocalInvalidationBus join() {
+    return new LocalInvalidationBus(this.nodes);
+  }
+
+  @Override
+  public void publish(@NonNull Invalidation invalidation) {
+    for (LocalInvalidationBus node : this.nodes) {
+      if (node == this) continue;
+      for (Consumer<Invalidation> listener : node.listeners) {
+        listener.accept(invalidation);
+      }
+    }
+  }
+
+  @Override
+  public @NonNull LocalInvalidationBus subscribe(@NonNull Consumer<Invalidation> listener) {
+    this.listeners.add(listener);
+    return this;
+  }
+
+  @Override
+  public @NonNull LocalInvalidationBus bind(@NonNull Cache cache) {
+    InvalidationBus.super.bind(cache);
+    return this;
+  }
+
+  /** Leave the bus, this node no longer sends or receives invalidations. */
+  @Override
+  public void close() {
+    this.nodes.remove(this);
+    this.listeners.clear();
+  }
+}
@@ -1,38 +1,279 @@
 package me.googas.lazy.cache;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.experimental.Delegate;
 
+/**
+ * A {@link CacheMap} stored in memory. The expiration of objects is scheduled in a {@link
+ * TimingWheel}, so {@link #run()} only goes through the objects that are due. Objects put directly
+ * into the {@link #getMap()} instead of using {@link #add(Catchable)} are not scheduled and will
+ * only be removed by {@link #close()}
+ *
+ * <p>Objects are referenced using a {@link ReferenceStrength}, which may be set for the whole cache
+ * or for the objects of a class:
+ *
+ * <pre>
+ *     MemoryCache cache = new MemoryCache()
+ *         .referenceStrength(Session.class, ReferenceStrength.STRONG)
+ *         .referenceStrength(Preview.class, ReferenceStrength.WEAK);
+ * </pre>
+ *
+ * <p>The references of collected objects are drained from a {@link ReferenceQueue}, so they leave
+ * the map when they are added or the cache runs without going through every object.
+ */
 public class MemoryCache extends TimerTask implements CacheMap {
 
   /** The map required for the cache. */
   @NonNull @Delegate
   private final Map<SoftReference<Catchable>, Long> map = new ConcurrentHashMap<>();
 
+  /** Schedules the expiration of the references in the map. */
+  @NonNull private final TimingWheel<SoftReference<Catchable>> wheel;
+
   @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
 
+  /** Receives the references of the objects collected by the garbage collector. */
+  @NonNull private final ReferenceQueue<Catchable> queue = new ReferenceQueue<>();
+
+  /** The strength of the objects which class has no strength registered. */
+  @NonNull @Getter private ReferenceStrength referenceStrength = ReferenceStrength.SOFT;
+
+  /** The strengths by the class they were registered for. */
+  @NonNull private final TypeRegistry<ReferenceStrength> strengths = new TypeRegistry<>();
+
+  /** The pipeline to call the removals, if null they are called in the thread that removes. */
+  private RemovalPipeline pipeline;
+
+  @NonNull @Getter private final StatsCounter counter = new StatsCounter();
+
+  /** The snapshot to save the objects into when closing, if null they are not saved. */
+  private CacheSnapshot snapshot;
+
+  @NonNull
+  private final List<Consumer<Collection<Catchable>>> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Create the cache.
+   *
+   * @param resolution the resolution of the expiration ticks. Objects may be removed up to this
+   *     much time after their removal time
+   * @param unit the unit of the resolution
+   */
+  public MemoryCache(long resolution, @NonNull TimeUnit unit) {
+    this.wheel = new TimingWheel<>(unit.toMillis(resolution), System.currentTimeMillis());
+  }
+
+  /** Create the cache with a resolution of a second. */
+  public MemoryCache() {
+    this(1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Set the pipeline to call {@link Catchable#onRemove()} of expired objects outside the thread
+   * that runs this cache. When the cache closes the removals are called in the closing thread
+   *
+   * @param pipeline the pipeline to use
+   * @return this same instance
+   */
+  @NonNull
+  public MemoryCache removeWith(@NonNull RemovalPipeline pipeline) {
+    this.pipeline = pipeline;
+    return this;
+  }
+
+  /**
+   * Set the strength to reference the objects which class has no strength registered. It applies to
+   * the objects added after setting it
+   *
+   * @param strength the strength to use
+   * @return this same instance
+   */
+  @NonNull
+  public MemoryCache referenceStrength(@NonNull ReferenceStrength strength) {
+    this.referenceStrength = strength;
+    return this;
+  }
+
+  /**
+   * Set the strength to reference the objects of a class. It will be used for every object
+   * assignable to the class added after setting it. If an object is assignable to many registered
+   * classes the closest superclass is used, then the closest interface
+   *
+   * @param clazz the class of the objects
+   * @param strength the strength to use
+   * @return this same instance
+   */
+  @NonNull
+  public MemoryCache referenceStrength(
+      @NonNull Class<? extends Catchable> clazz, @NonNull ReferenceStrength strength) {
+    this.strengths.put(clazz, strength);
+    return this;
+  }
+
+  @NonNull
+  private ReferenceStrength strengthOf(@NonNull Class<?> type) {
+    ReferenceStrength strength = this.strengths.get(type);
+    return strength == null ? this.referenceStrength : strength;
+  }
+
+  /**
+   * Set the snapshot to save the objects into when the cache is closed.
+   *
+   * @see CacheSnapshot#restore(Cache)
+   * @param snapshot the snapshot to save into
+   * @return this same instance
+   */
+  @NonNull
+  public MemoryCache snapshotTo(@NonNull CacheSnapshot snapshot) {
+    this.snapshot = snapshot;
+    return this;
+  }
+
+  /**
+   * Register this cache in a {@link ScheduledExecutorService}. This will be run every tick of the
+   * resolution of the cache, any exception thrown while running is given to the {@link
+   * #getHandler()} so the task is never cancelled
+   *
+   * @param service the service to register this cache
+   * @return this same instance
+   */
+  @NonNull
+  public MemoryCache register(@NonNull ScheduledExecutorService service) {
+    long resolution = this.wheel.getResolution();
+    service.scheduleAtFixedRate(this::tick, resolution, resolution, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
   /**
    * Register this cache in a {@link Timer}. This will register the timer to be run every second
    *
+   * @deprecated a {@link Timer} is cancelled by any uncaught exception, use {@link
+   *     #register(ScheduledExecutorService)}
    * @param timer the timer to register this cache
    * @return this same instance
    */
   @NonNull
+  @Deprecated
   public MemoryCache register(@NonNull Timer timer) {
     timer.schedule(this, 1000, 1000);
     return this;
   }
 
+  @Override
+  public void store(@NonNull Catchable catchable, long time) {
+    this.drain();
+    SoftReference<Catchable> reference =
+        this.strengthOf(catchable.getClass()).reference(catchable, this.queue);
+    this.map.put(reference, time);
+    this.wheel.schedule(reference, time);
+    this.counter.recordAdd();
+  }
+
+  /** Remove the references of the objects collected by the garbage collector from the map. */
+  private void drain() {
+    Reference<? extends Catchable> enqueued;
+    while ((enqueued = this.queue.poll()) != null) {
+      // Removing the reference leaves it in the wheel, which skips references not in the map
+      if (this.map.remove(ReferenceStrength.owner(enqueued)) != null) {
+        this.counter.recordCollection();
+      }
+    }
+  }
+
   @Override
   public void run() {
-    CacheMap.super.run();
+    long start = System.nanoTime();
+    long now = System.currentTimeMillis();
+    this.drain();
+    List<Catchable> removed = new ArrayList<>();
+    for (SoftReference<Catchable> reference : this.wheel.advance(now)) {
+      Long time = this.map.get(reference);
+      // The reference was removed
+      if (time == null) continue;
+      Catchable catchable = reference.get();
+      if (catchable != null && now < time) {
+        // The reference was refreshed
+        this.wheel.schedule(reference, time);
+      } else if (this.map.remove(reference, time)) {
+        if (catchable == null) {
+          this.counter.recordCollection();
+        } else {
+          this.counter.recordExpiration();
+          removed.add(catchable);
+          reference.clear();
+        }
+      }
+    }
+    if (!removed.isEmpty()) {
+      this.notify(removed);
+      Consumer<Throwable> handler = this.counter.failures(this.handler);
+      if (this.pipeline == null) {
+        removed.forEach(catchable -> RemovalPipeline.remove(catchable, handler));
+      } else {
+        this.pipeline.submit(removed, handler);
+      }
+    }
+    this.counter.recordSweep(System.nanoTime() - start);
+  }
+
+  private void notify(@NonNull Collection<Catchable> removed) {
+    for (Consumer<Collection<Catchable>> listener : this.listeners) {
+      try {
+        listener.accept(removed);
+      } catch (Throwable e) {
+        this.handler.accept(e);
+      }
+    }
+  }
+
+  private void tick() {
+    try {
+      this.run();
+    } catch (Throwable e) {
+      this.handler.accept(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.snapshot != null) this.snapshot.saveQuietly(this);
+    List<Catchable> removed = new ArrayList<>();
+    Iterator<SoftReference<Catchable>> iterator = this.map.keySet().iterator();
+    while (iterator.hasNext()) {
+      Catchable catchable = iterator.next().get();
+      iterator.remove();
+      if (catchable != null) removed.add(catchable);
+    }
+    this.wheel.clear();
+    this.notify(removed);
+    Consumer<Throwable> handler = this.counter.failures(this.handler);
+    if (this.pipeline == null) {
+      removed.forEach(catchable -> RemovalPipeline.remove(catchable, handler));
+    } else {
+      this.pipeline.execute(removed, handler);
+    }
+  }
+
+  @Override
+  public @NonNull MemoryCache listen(@NonNull Consumer<Collection<Catchable>> listener) {
+    this.listeners.add(listener);
+    return this;
   }
 
   @Override
@@ -0,0 +1,225 @@
+package me.googas.lazy.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import lombok.NonNull;
+
+/**
+ * Remembers the keys that were not found in the database, so that looking them up again does not
+ * query it until their marker expires. Markers are stored by the class that was requested and the
+ * key, they stay for a short time and only up to a maximum number of them are kept, the oldest
+ * being dropped first.
+ *
+ * <p>Adding or saving an object must invalidate the marker of its key using {@link
+ * #invalidate(Catchable)}, which {@link LazyCache} does in {@link LazyCache#add(Catchable)}, {@link
+ * LazyCache#addIfAbsent(Catchable)} and {@link LazyCache#markDirty(Catchable)}:
+ *
+ * <pre>
+ *     LazyCache loader = LazyCache.using(cache)
+ *         .setChild(sql)
+ *         .loadWith(User.class, (child, id) -&gt; child.getSubloader(UserSubloader.class).load(id))
+ *         .negativeCache(new NegativeCache(10000, 30, TimeUnit.SECONDS))
+ *         .build();
+ * </pre>
+ */
+public class NegativeCache {
+
+  /** The classes and interfaces a class is assignable to. */
+  @NonNull
+  static final ClassValue<Class<?>[]> SUPERTYPES =
+      new ClassValue<Class<?>[]>() {
+        @Override
+        protected Class<?>[] computeValue(Class<?> type) {
+          Set<Class<?>> supertypes = new LinkedHashSet<>();
+          NegativeCache.collect(type, supertypes);
+          return supertypes.toArray(new Class<?>[0]);
+        }
+      };
+
+  private final int maximum;
+  private final long ttl;
+
+  /** The time in millis for each marker to expire by its class and key, oldest first. */
+  @NonNull private final LinkedHashMap<List<Object>, Long> markers;
+
+  /** The markers by their class, to invalidate the ones of a class without scanning the rest. */
+  @NonNull private final Map<Class<?>, Set<List<Object>>> byClass = new HashMap<>();
+
+  /**
+   * Create the negative cache.
+   *
+   * @param maximum the maximum number of markers to keep
+   * @param ttl the time that a marker stays
+   * @param unit the unit of the time
+   */
+  public NegativeCache(int maximum, long ttl, @NonNull TimeUnit unit) {
+    if (maximum < 1) throw new IllegalArgumentException("Maximum must be positive");
+    this.maximum = maximum;
+    this.ttl = unit.toMillis(ttl);
+    this.markers =
+        new LinkedHashMap<List<Object>, Long>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<List<Object>, Long> eldest) {
+            if (this.size() <= NegativeCache.this.maximum) return false;
+            NegativeCache.this.unindex(eldest.getKey());
+            return true;
+          }
+        };
+  }
+
+  private static void collect(Class<?> type, @NonNull Set<Class<?>> supertypes) {
+    if (type == null || !supertypes.add(type)) return;
+    NegativeCache.collect(type.getSuperclass(), supertypes);
+    for (Class<?> implemented : type.getInterfaces()) {
+      NegativeCache.collect(implemented, supertypes);
+    }
+  }
+
+  /**
+   * Remove a marker from the markers of its class. This must be called while synchronized on the
+   * markers
+   *
+   * @param marker the marker that was removed
+   */
+  private void unindex(@NonNull List<Object> marker) {
+    Set<List<Object>> markers = this.byClass.get((Class<?>) marker.get(0));
+    if (markers != null && markers.remove(marker) && markers.isEmpty()) {
+      this.byClass.remove((Class<?>) marker.get(0));
+    }
+  }
+
+  private void remove(@NonNull List<Object> marker) {
+    if (this.markers.remove(marker) != null) this.unindex(marker);
+  }
+
+  /**
+   * Check whether a key is known to be absent from the database.
+   *
+   * @param clazz the class that was requested
+   * @param key the key that was requested
+   * @return true if there's a marker for the key that has not expired
+   */
+  public boolean isAbsent(@NonNull Class<?> clazz, @NonNull Object key) {
+    List<Object> marker = Arrays.asList(clazz, key);
+    synchronized (this.markers) {
+      Long time = this.markers.get(marker);
+      if (time == null) return false;
+      if (time > System.currentTimeMillis()) return true;
+      this.remove(marker);
+      return false;
+    }
+  }
+
+  /**
+   * Remember that a key was not found in the database. If there's a marker for the key already its
+   * time is reset.
+   *
+   * @param clazz the class that was requested
+   * @param key the key that was requested
+   */
+  public void markAbsent(@NonNull Class<?> clazz, @NonNull Object key) {
+    List<Object> marker = Arrays.asList(clazz, key);
+    long time = System.currentTimeMillis() + this.ttl;
+    synchronized (this.markers) {
+      // Removing first moves the marker to the end of the order
+      this.markers.remove(marker);
+      this.byClass.computeIfAbsent(clazz, type -> new HashSet<>()).add(marker);
+      this.markers.put(marker, time);
+    }
+  }
+
+  /**
+   * Remove the marker of a key.
+   *
+   * @param clazz the class that was requested
+   * @param key the key that was requested
+   */
+  public void invalidate(@NonNull Class<?> clazz, @NonNull Object key) {
+    synchronized (this.markers) {
+      this.remove(Arrays.asList(clazz, key));
+    }
+  }
+
+  /**
+   * Remove the markers of the key of an object for its class and every class it is assignable to,
+   * as it may have been requested as any of them. This must be called when the object is added or
+   * saved
+   *
+   * @param catchable the object that now exists
+   */
+  public void invalidate(@NonNull Catchable catchable) {
+    Object key = KeyedCache.keyOf(catchable);
+    synchronized (this.markers) {
+      for (Class<?> type : NegativeCache.SUPERTYPES.get(catchable.getClass())) {
+        this.remove(Arrays.asList(type, key));
+      }
+    }
+  }
+
+  /**
+   * Remove every marker of the classes that are assignable to a class or that it is assignable to.
+   * This is for when the keys of the objects can't be told, prefer {@link #invalidateIf(Class,
+   * Predicate)} if the keys that an object could match can be told
+   *
+   * @param clazz the class of the markers to remove
+   */
+  public void invalidateAll(@NonNull Class<?> clazz) {
+    this.invalidateIf(clazz, key -> true);
+  }
+
+  /**
+   * Remove the markers of the classes that are assignable to a class or that it is assignable to
+   * which key matches a predicate, such as the queries that could match an object that was saved.
+   * Only the markers of those classes are checked
+   *
+   * @param clazz the class of the markers to remove
+   * @param predicate the predicate that the keys to remove match
+   */
+  public void invalidateIf(@NonNull Class<?> clazz, @NonNull Predicate<Object> predicate) {
+    synchronized (this.markers) {
+      Iterator<Map.Entry<Class<?>, Set<List<Object>>>> classes = this.byClass.entrySet().iterator();
+      while (classes.hasNext()) {
+        Map.Entry<Class<?>, Set<List<Object>>> entry = classes.next();
+        Class<?> type = entry.getKey();
+        if (!clazz.isAssignableFrom(type) && !type.isAssignableFrom(clazz)) continue;
+        Iterator<List<Object>> iterator = entry.getValue().iterator();
+        while (iterator.hasNext()) {
+          List<Object> marker = iterator.next();
+          if (predicate.test(marker.get(1))) {
+            iterator.remove();
+            this.markers.remove(marker);
+          }
+        }
+        if (entry.getValue().isEmpty()) classes.remove();
+      }
+    }
+  }
+
+  /** Remove every marker. */
+  public void clear() {
+    synchronized (this.markers) {
+      this.markers.clear();
+      this.byClass.clear();
+    }
+  }
+
+  /**
+   * Get the number of markers, including the expired ones that have not been dropped yet.
+   *
+   * @return the number of markers
+   */
+  public int getSize() {
+    synchronized (this.markers) {
+      return this.markers.size();
+    }
+  }
+}
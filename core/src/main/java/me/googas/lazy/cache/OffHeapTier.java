@@ -0,0 +1,421 @@
+package me.googas.lazy.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A second tier for a {@link KeyedCache} that keeps objects serialized in direct {@link
+ * ByteBuffer}, outside the heap. Objects evicted from the cache are demoted into this tier instead
+ * of being removed and are promoted back into the cache when they are requested by their key using
+ * {@link KeyedCache#getByKey(Class, Object)}, so a small heap may be backed by many gigabytes of
+ * warm objects without the collector having to go through them.
+ *
+ * <p>Only the objects which class has a {@link CatchableSerializer} registered are demoted:
+ *
+ * <pre>
+ *     OffHeapTier tier = new OffHeapTier(4L &lt;&lt; 30)
+ *         .serializer(User.class, CatchableSerializer.serializable(User.class));
+ *     BoundedCache cache = new BoundedCache(10000).demoteTo(tier);
+ * </pre>
+ *
+ * <p>The memory is split into segments which are written one after the other. When the last segment
+ * is full the first one is reused and the objects that were stored in it are removed from the tier,
+ * calling {@link Catchable#onRemove()} of their deserialized copy, so the tier never takes more
+ * than its capacity. Objects also expire from the tier at the time they would have expired from the
+ * cache.
+ *
+ * <p>A tier must only be used by a single cache.
+ */
+public class OffHeapTier {
+
+  /** The default size of each segment. */
+  private static final int SEGMENT = 16 << 20;
+  /** The millis that each tick of the expiration wheel represents. */
+  private static final long RESOLUTION = 1000;
+
+  private final int segmentSize;
+  @NonNull private final ByteBuffer[] segments;
+  @NonNull private final List<List<Slot>> contents;
+
+  /** The serializers by the class they were registered for. */
+  @NonNull private final TypeRegistry<CatchableSerializer<?>> serializers = new TypeRegistry<>();
+
+  /** The stored objects by their concrete class and key. */
+  @NonNull private final Map<Class<?>, Map<Object, Slot>> slots = new HashMap<>();
+
+  @NonNull private final TimingWheel<Slot> wheel;
+  @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+
+  /** The segment that is being written. */
+  private int segment;
+  /** The position to write in the current segment. */
+  private int position;
+  /** The number of stored objects. */
+  private int size;
+
+  /**
+   * Create the tier.
+   *
+   * @param capacity the maximum bytes to use
+   * @param segmentSize the bytes of each segment, objects larger than a segment are not stored
+   */
+  public OffHeapTier(long capacity, int segmentSize) {
+    if (segmentSize <= 0) throw new IllegalArgumentException("Segment size must be positive");
+    if (capacity < segmentSize) {
+      throw new IllegalArgumentException("Capacity must hold at least a segment");
+    }
+    this.segmentSize = segmentSize;
+    this.segments = new ByteBuffer[(int) (capacity / segmentSize)];
+    this.contents = new ArrayList<>(this.segments.length);
+    for (int i = 0; i < this.segments.length; i++) {
+      this.contents.add(new ArrayList<>());
+    }
+    this.wheel = new TimingWheel<>(OffHeapTier.RESOLUTION, System.currentTimeMillis());
+  }
+
+  /**
+   * Create the tier with segments of 16 megabytes or a single segment if the capacity is smaller.
+   *
+   * @param capacity the maximum bytes to use
+   */
+  public OffHeapTier(long capacity) {
+    this(capacity, (int) Math.min(capacity, OffHeapTier.SEGMENT));
+  }
+
+  /**
+   * Register a serializer for the objects of a class. It will be used for every object assignable
+   * to the class, unless a serializer is registered for a more specific class of the object
+   *
+   * @param clazz the class of the objects
+   * @param serializer the serializer for the objects
+   * @param <T> the type of the objects
+   * @return this same instance
+   */
+  @NonNull
+  public <T extends Catchable> OffHeapTier serializer(
+      @NonNull Class<T> clazz, @NonNull CatchableSerializer<T> serializer) {
+    this.serializers.put(clazz, serializer);
+    return this;
+  }
+
+  /**
+   * Set the consumer to be used in exceptions thrown while converting objects.
+   *
+   * @param handler the handler
+   * @return this same instance
+   */
+  @NonNull
+  public OffHeapTier handle(@NonNull Consumer<Throwable> handler) {
+    this.handler = handler;
+    return this;
+  }
+
+  @SuppressWarnings("unchecked")
+  private CatchableSerializer<Catchable> serializerOf(@NonNull Class<?> type) {
+    return (CatchableSerializer<Catchable>) this.serializers.get(type);
+  }
+
+  /**
+   * Check whether objects of a class can be stored in this tier.
+   *
+   * @param type the concrete class of the objects
+   * @return true if there's a serializer for the class
+   */
+  public boolean supports(@NonNull Class<?> type) {
+    return this.serializerOf(type) != null;
+  }
+
+  /**
+   * Get the number of objects stored in this tier.
+   *
+   * @return the number of objects
+   */
+  public synchronized int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Store an object. Objects stored in the segment that is reused to make room for it are added to
+   * the displaced objects, which must be removed calling {@link Catchable#onRemove()}
+   *
+   * @param key the key of the object
+   * @param catchable the object to store
+   * @param time the time in millis for the object to be removed
+   * @param displaced the objects that are no longer stored
+   * @return whether the object was stored, it is not if there's no serializer for it, it is larger
+   *     than a segment or it could not be serialized
+   */
+  boolean put(
+      @NonNull Object key,
+      @NonNull Catchable catchable,
+      long time,
+      @NonNull Collection<Catchable> displaced) {
+    CatchableSerializer<Catchable> serializer = this.serializerOf(catchable.getClass());
+    if (serializer == null) return false;
+    byte[] bytes;
+    try {
+      bytes = serializer.serialize(catchable);
+    } catch (Throwable e) {
+      this.handler.accept(e);
+      return false;
+    }
+    if (bytes.length > this.segmentSize) return false;
+    List<Slot> recycled = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    synchronized (this) {
+      if (this.position + bytes.length > this.segmentSize) {
+        this.segment = (this.segment + 1) % this.segments.length;
+        this.position = 0;
+        for (Slot slot : this.contents.get(this.segment)) {
+          if (this.release(slot)) {
+            recycled.add(slot);
+            contents.add(this.read(slot));
+          }
+        }
+        this.contents.get(this.segment).clear();
+      }
+      ByteBuffer buffer = this.segments[this.segment];
+      if (buffer == null) {
+        buffer = ByteBuffer.allocateDirect(this.segmentSize);
+        this.segments[this.segment] = buffer;
+      }
+      ByteBuffer view = buffer.duplicate();
+      view.position(this.position);
+      view.put(bytes);
+      Slot slot =
+          new Slot(catchable.getClass(), key, this.segment, this.position, bytes.length, time);
+      this.position += bytes.length;
+      this.contents.get(this.segment).add(slot);
+      Slot previous = this.slots.computeIfAbsent(slot.type, type -> new HashMap<>()).put(key, slot);
+      if (previous != null) {
+        previous.live = false;
+        this.size--;
+      }
+      this.size++;
+      this.wheel.schedule(slot, time);
+    }
+    for (int i = 0; i < recycled.size(); i++) {
+      Catchable deserialized = this.deserialize(recycled.get(i), contents.get(i));
+      if (deserialized != null) displaced.add(deserialized);
+    }
+    return true;
+  }
+
+  /**
+   * Take an object out of this tier.
+   *
+   * @param clazz the class to which the object must be assignable
+   * @param key the key of the object
+   * @return the object and the time for it to be removed or null if it is not stored
+   */
+  Promoted take(@NonNull Class<?> clazz, @NonNull Object key) {
+    Slot slot = null;
+    byte[] bytes = null;
+    synchronized (this) {
+      for (Map.Entry<Class<?>, Map<Object, Slot>> entry : this.slots.entrySet()) {
+        if (!clazz.isAssignableFrom(entry.getKey())) continue;
+        slot = entry.getValue().get(key);
+        if (slot != null) {
+          this.release(slot);
+          bytes = this.read(slot);
+          break;
+        }
+      }
+    }
+    return slot == null ? null : this.promoted(slot, bytes);
+  }
+
+  /**
+   * Take an object of a concrete class out of this tier.
+   *
+   * @param type the concrete class of the object
+   * @param key the key of the object
+   * @return the object and the time for it to be removed or null if it is not stored
+   */
+  Promoted takeExact(@NonNull Class<?> type, @NonNull Object key) {
+    Slot slot;
+    byte[] bytes;
+    synchronized (this) {
+      Map<Object, Slot> slots = this.slots.get(type);
+      slot = slots == null ? null : slots.get(key);
+      if (slot == null) return null;
+      this.release(slot);
+      bytes = this.read(slot);
+    }
+    return this.promoted(slot, bytes);
+  }
+
+  private Promoted promoted(@NonNull Slot slot, byte[] bytes) {
+    Catchable catchable = this.deserialize(slot, bytes);
+    return catchable == null ? null : new Promoted(catchable, slot.time);
+  }
+
+  /**
+   * Check whether an object is stored in this tier.
+   *
+   * @param type the concrete class of the object
+   * @param key the key of the object
+   * @return true if the object is stored
+   */
+  synchronized boolean contains(@NonNull Class<?> type, @NonNull Object key) {
+    Map<Object, Slot> slots = this.slots.get(type);
+    return slots != null && slots.containsKey(key);
+  }
+
+  /**
+   * Remove an object from this tier without deserializing it.
+   *
+   * @param type the concrete class of the object
+   * @param key the key of the object
+   * @return whether the object was stored
+   */
+  synchronized boolean remove(@NonNull Class<?> type, @NonNull Object key) {
+    Map<Object, Slot> slots = this.slots.get(type);
+    Slot slot = slots == null ? null : slots.get(key);
+    return slot != null && this.release(slot);
+  }
+
+  /**
+   * Remove the objects which time to be removed has passed.
+   *
+   * @param now the current time in millis
+   * @param removed the collection to add the deserialized objects to
+   */
+  void expire(long now, @NonNull Collection<Catchable> removed) {
+    List<Slot> expired = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    synchronized (this) {
+      for (Slot slot : this.wheel.advance(now)) {
+        if (!slot.live) continue;
+        if (now < slot.time) {
+          // The wheel may give slots up to a tick before their time
+          this.wheel.schedule(slot, slot.time);
+        } else if (this.release(slot)) {
+          expired.add(slot);
+          contents.add(this.read(slot));
+        }
+      }
+    }
+    for (int i = 0; i < expired.size(); i++) {
+      Catchable catchable = this.deserialize(expired.get(i), contents.get(i));
+      if (catchable != null) removed.add(catchable);
+    }
+  }
+
+  /**
+   * Remove every object from this tier.
+   *
+   * @param removed the collection to add the deserialized objects to
+   */
+  void clear(@NonNull Collection<Catchable> removed) {
+    List<Slot> cleared = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    synchronized (this) {
+      for (Map<Object, Slot> slots : this.slots.values()) {
+        for (Slot slot : slots.values()) {
+          slot.live = false;
+          cleared.add(slot);
+          contents.add(this.read(slot));
+        }
+      }
+      this.slots.clear();
+      this.contents.forEach(List::clear);
+      this.wheel.clear();
+      this.size = 0;
+      this.segment = 0;
+      this.position = 0;
+    }
+    for (int i = 0; i < cleared.size(); i++) {
+      Catchable catchable = this.deserialize(cleared.get(i), contents.get(i));
+      if (catchable != null) removed.add(catchable);
+    }
+  }
+
+  /**
+   * Remove a slot from the stored objects. Must be called while holding the lock
+   *
+   * @param slot the slot to remove
+   * @return whether the slot was stored
+   */
+  private boolean release(@NonNull Slot slot) {
+    if (!slot.live) return false;
+    slot.live = false;
+    Map<Object, Slot> slots = this.slots.get(slot.type);
+    slots.remove(slot.key, slot);
+    if (slots.isEmpty()) this.slots.remove(slot.type);
+    this.size--;
+    return true;
+  }
+
+  /**
+   * Copy the bytes of a slot into the heap. Must be called while holding the lock
+   *
+   * @param slot the slot to read
+   * @return the bytes of the slot
+   */
+  @NonNull
+  private byte[] read(@NonNull Slot slot) {
+    byte[] bytes = new byte[slot.length];
+    ByteBuffer view = this.segments[slot.segment].duplicate();
+    view.position(slot.offset);
+    view.get(bytes);
+    return bytes;
+  }
+
+  private Catchable deserialize(@NonNull Slot slot, @NonNull byte[] bytes) {
+    CatchableSerializer<Catchable> serializer = this.serializerOf(slot.type);
+    try {
+      return serializer == null ? null : serializer.deserialize(bytes);
+    } catch (Throwable e) {
+      this.handler.accept(e);
+      return null;
+    }
+  }
+
+  /** An object taken out of the tier. */
+  static final class Promoted {
+
+    @NonNull final Catchable catchable;
+    /** The time in millis for the object to be removed. */
+    final long time;
+
+    private Promoted(@NonNull Catchable catchable, long time) {
+      this.catchable = catchable;
+      this.time = time;
+    }
+  }
+
+  /** The position of a stored object. */
+  private static final class Slot {
+
+    @NonNull private final Class<?> type;
+    @NonNull private final Object key;
+    private final int segment;
+    private final int offset;
+    private final int length;
+    private final long time;
+    private boolean live = true;
+
+    private Slot(
+        @NonNull Class<?> type,
+        @NonNull Object key,
+        int segment,
+        int offset,
+        int length,
+        long time) {
+      this.type = type;
+      this.key = key;
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.time = time;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package me.googas.lazy.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import lombok.NonNull;
+
+/**
+ * How strongly a {@link MemoryCache} references its objects, which decides whether the garbage
+ * collector may remove them before they expire.
+ *
+ * <p>Every strength is kept in the {@link CacheMap#getMap()} as a {@link SoftReference}, so that
+ * the map keeps its type, but {@link SoftReference#get()} follows the chosen strength.
+ */
+public enum ReferenceStrength {
+  /** Objects are never removed by the garbage collector, only when they expire. */
+  STRONG,
+  /** Objects are removed by the garbage collector when the memory is running out. */
+  SOFT,
+  /** Objects are removed by the garbage collector once nothing else references them. */
+  WEAK;
+
+  /**
+   * Create the reference to an object.
+   *
+   * @param catchable the object to reference
+   * @param queue the queue in which the reference is enqueued once the object is collected
+   * @return the reference to put in the map of the cache
+   */
+  @NonNull
+  SoftReference<Catchable> reference(
+      @NonNull Catchable catchable, @NonNull ReferenceQueue<Catchable> queue) {
+    switch (this) {
+      case STRONG:
+        return new Strong(catchable);
+      case WEAK:
+        return new Weak(catchable, queue);
+      default:
+        return new SoftReference<>(catchable, queue);
+    }
+  }
+
+  /**
+   * Get the reference in the map of the cache of a reference that was enqueued.
+   *
+   * @param enqueued the reference polled from the queue
+   * @return the reference in the map
+   */
+  @NonNull
+  static Reference<?> owner(@NonNull Reference<?> enqueued) {
+    return enqueued instanceof Tracker ? ((Tracker) enqueued).owner : enqueued;
+  }
+
+  /** Holds the object strongly, so it is never enqueued. */
+  private static class Strong extends SoftReference<Catchable> {
+
+    private Catchable catchable;
+
+    private Strong(@NonNull Catchable catchable) {
+      super(null);
+      this.catchable = catchable;
+    }
+
+    @Override
+    public Catchable get() {
+      return this.catchable;
+    }
+
+    @Override
+    public void clear() {
+      this.catchable = null;
+      super.clear();
+    }
+  }
+
+  /** Holds the object through a {@link Tracker}, which is the one that gets enqueued. */
+  private static class Weak extends SoftReference<Catchable> {
+
+    @NonNull private final Tracker tracker;
+
+    private Weak(@NonNull Catchable catchable, @NonNull ReferenceQueue<Catchable> queue) {
+      super(null);
+      this.tracker = new Tracker(catchable, queue, this);
+    }
+
+    @Override
+    public Catchable get() {
+      return this.tracker.get();
+    }
+
+    @Override
+    public void clear() {
+      this.tracker.clear();
+    }
+  }
+
+  /** The weak reference of a {@link Weak}, which knows the reference that is in the map. */
+  private static class Tracker extends WeakReference<Catchable> {
+
+    @NonNull private final Weak owner;
+
+    private Tracker(
+        @NonNull Catchable catchable,
+        @NonNull ReferenceQueue<Catchable> queue,
+        @NonNull Weak owner) {
+      super(catchable, queue);
+      this.owner = owner;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package me.googas.lazy.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.NonNull;
+
+/**
+ * Calls {@link Catchable#onRemove()} outside the thread that removes the objects from cache. The
+ * calls are queued into a bounded executor, when the queue is full the thread that removes the
+ * objects calls them itself, slowing down the removals until the executor catches up. Once the
+ * pipeline is closed every removal is called by the thread that removes the objects.
+ *
+ * <p>A {@link Batch} may be registered for a type of objects, in that case instead of calling
+ * {@link Catchable#onRemove()} for each object the batch receives the removed objects together. For
+ * instance a subloader may save all of them in a single request:
+ *
+ * <pre>
+ *     RemovalPipeline pipeline = new RemovalPipeline(2, 1024, 100)
+ *         .batch(User.class, users -&gt; subloader.saveAll(users));
+ *     KeyedCache cache = new KeyedCache().removeWith(pipeline);
+ * </pre>
+ */
+public class RemovalPipeline {
+
+  @NonNull private final ThreadPoolExecutor executor;
+  private final int batchSize;
+
+  /** The batches by the class they were registered for. */
+  @NonNull private final TypeRegistry<Registration> batches = new TypeRegistry<>();
+
+  /**
+   * Create the pipeline.
+   *
+   * @param threads the number of threads that call the removals
+   * @param capacity the number of tasks that may wait in the queue
+   * @param batchSize the maximum number of objects that a {@link Batch} receives at once
+   */
+  public RemovalPipeline(int threads, int capacity, int batchSize) {
+    if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive");
+    AtomicInteger count = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(capacity),
+            runnable -> {
+              Thread thread = new Thread(runnable, "lazy-removal-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            // Unlike CallerRunsPolicy this also runs the removals rejected after closing
+            (runnable, executor) -> runnable.run());
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Register a batch for the objects of a class. It will receive every object assignable to the
+   * class instead of calling {@link Catchable#onRemove()} for each of them, unless a batch is
+   * registered for a more specific class of the object
+   *
+   * @param clazz the class of the objects
+   * @param batch the batch to receive the objects
+   * @param <T> the type of the objects
+   * @return this same instance
+   */
+  @NonNull
+  public <T extends Catchable> RemovalPipeline batch(
+      @NonNull Class<T> clazz, @NonNull Batch<T> batch) {
+    this.batches.put(clazz, new Registration(batch));
+    return this;
+  }
+
+  /**
+   * Queue the removal of objects.
+   *
+   * @param catchables the removed objects
+   * @param handler the handler for exceptions thrown while removing the objects
+   */
+  public void submit(
+      @NonNull Collection<? extends Catchable> catchables, @NonNull Consumer<Throwable> handler) {
+    for (Runnable task : this.tasks(catchables, handler)) {
+      this.executor.execute(task);
+    }
+  }
+
+  /**
+   * Remove objects in the current thread, this is used when objects must be removed before
+   * continuing, such as when the cache closes.
+   *
+   * @param catchables the removed objects
+   * @param handler the handler for exceptions thrown while removing the objects
+   */
+  public void execute(
+      @NonNull Collection<? extends Catchable> catchables, @NonNull Consumer<Throwable> handler) {
+    this.tasks(catchables, handler).forEach(Runnable::run);
+  }
+
+  @NonNull
+  private List<Runnable> tasks(
+      @NonNull Collection<? extends Catchable> catchables, @NonNull Consumer<Throwable> handler) {
+    List<Runnable> tasks = new ArrayList<>();
+    Map<Registration, List<Catchable>> grouped = new LinkedHashMap<>();
+    for (Catchable catchable : catchables) {
+      Registration registration = this.batches.get(catchable.getClass());
+      if (registration == null) {
+        tasks.add(() -> RemovalPipeline.remove(catchable, handler));
+      } else {
+        List<Catchable> group = grouped.computeIfAbsent(registration, key -> new ArrayList<>());
+        group.add(catchable);
+        if (group.size() >= this.batchSize) {
+          tasks.add(registration.task(grouped.remove(registration), handler));
+        }
+      }
+    }
+    grouped.forEach((registration, group) -> tasks.add(registration.task(group, handler)));
+    return tasks;
+  }
+
+  /**
+   * Call {@link Catchable#onRemove()} giving any exception to the handler.
+   *
+   * @param catchable the removed object
+   * @param handler the handler for the exception
+   */
+  static void remove(@NonNull Catchable catchable, @NonNull Consumer<Throwable> handler) {
+    try {
+      catchable.onRemove();
+    } catch (Throwable e) {
+      handler.accept(e);
+    }
+  }
+
+  /**
+   * Stop queuing removals and wait for the queued ones to finish. Removals submitted after are
+   * called by the thread that submits them.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return true if every removal finished, false if the timeout elapsed before
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean close(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+    this.executor.shutdown();
+    return this.executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Receives many removed objects of a type at once.
+   *
+   * @param <T> the type of the objects
+   */
+  public interface Batch<T extends Catchable> {
+    /**
+     * Called when the objects are removed from cache.
+     *
+     * @param catchables the removed objects
+     * @throws Throwable in case something goes wrong while unloading the objects
+     */
+    void onRemove(@NonNull List<T> catchables) throws Throwable;
+  }
+
+  /** A registered batch, objects are grouped by the registration that applies to them. */
+  private static final class Registration {
+
+    @NonNull private final Batch<?> batch;
+
+    private Registration(@NonNull Batch<?> batch) {
+      this.batch = batch;
+    }
+
+    @NonNull
+    @SuppressWarnings("unchecked")
+    private Runnable task(@NonNull List<Catchable> group, @NonNull Consumer<Throwable> handler) {
+      return () -> {
+        try {
+          ((Batch<Catchable>) this.batch).onRemove(group);
+        } catch (Throwable e) {
+          handler.accept(e);
+        }
+      };
+    }
+  }
+}
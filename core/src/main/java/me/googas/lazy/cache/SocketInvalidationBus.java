@@ -0,0 +1,184 @@
+package me.googas.lazy.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * An {@link InvalidationBus} between processes that sends each invalidation as a datagram to the
+ * address of every peer. A daemon thread receives the invalidations of the peers and gives them to
+ * the listeners.
+ *
+ * <pre>
+ *     // In each of three processes on the same host, with its own port first
+ *     SocketInvalidationBus bus = new SocketInvalidationBus(7001, 7002, 7003);
+ * </pre>
+ *
+ * <p>Datagrams are not acknowledged, so an invalidation may be lost and the object stays stale
+ * until it expires. Keys that are not strings, numbers or uuids are sent using java serialization,
+ * so the address of the bus must only be reachable by trusted peers, which is why {@link
+ * #SocketInvalidationBus(int, int...)} binds to the loopback address.
+ */
+public class SocketInvalidationBus implements InvalidationBus {
+
+  /** The maximum size of the data of a datagram. */
+  private static final int MAXIMUM_SIZE = 65507;
+
+  @NonNull private final DatagramSocket socket;
+  @NonNull private final List<InetSocketAddress> peers;
+  @NonNull private final List<Consumer<Invalidation>> listeners = new CopyOnWriteArrayList<>();
+  @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+
+  /**
+   * Create the bus and start receiving invalidations.
+   *
+   * @param address the address to receive the invalidations in
+   * @param peers the addresses of the peers
+   * @throws SocketException if the address could not be bound
+   */
+  public SocketInvalidationBus(
+      @NonNull InetSocketAddress address, @NonNull Collection<InetSocketAddress> peers)
+      throws SocketException {
+    this.socket = new DatagramSocket(address);
+    this.peers = new CopyOnWriteArrayList<>(peers);
+    Thread thread = new Thread(this::receive, "lazy-invalidation-bus");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Create the bus on the loopback address. The own port is skipped in the peers, so every process
+   * may use the same list of ports
+   *
+   * @param port the port to receive the invalidations in, 0 to use any free port
+   * @param peers the ports of the peers
+   * @throws SocketException if the port could not be bound
+   */
+  public SocketInvalidationBus(int port, int... peers) throws SocketException {
+    this(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+        SocketInvalidationBus.loopback(port, peers));
+  }
+
+  @NonNull
+  private static List<InetSocketAddress> loopback(int port, @NonNull int... peers) {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    for (int peer : peers) {
+      if (peer == port) continue;
+      addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), peer));
+    }
+    return addresses;
+  }
+
+  /**
+   * Get the address in which invalidations are received.
+   *
+   * @return the address of the bus
+   */
+  @NonNull
+  public InetSocketAddress getAddress() {
+    return (InetSocketAddress) this.socket.getLocalSocketAddress();
+  }
+
+  /**
+   * Add a peer to send the invalidations to.
+   *
+   * @param peer the address of the peer
+   * @return this same instance
+   */
+  @NonNull
+  public SocketInvalidationBus addPeer(@NonNull InetSocketAddress peer) {
+    this.peers.add(peer);
+    return this;
+  }
+
+  /**
+   * Set the consumer to be used in exceptions thrown while sending or receiving invalidations.
+   *
+   * @param handler the handler
+   * @return this same instance
+   */
+  @NonNull
+  public SocketInvalidationBus handle(@NonNull Consumer<Throwable> handler) {
+    this.handler = handler;
+    return this;
+  }
+
+  private void receive() {
+    byte[] buffer = new byte[SocketInvalidationBus.MAXIMUM_SIZE];
+    while (!this.socket.isClosed()) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        this.socket.receive(packet);
+      } catch (IOException e) {
+        if (!this.socket.isClosed()) this.handler.accept(e);
+        continue;
+      }
+      try {
+        Invalidation invalidation =
+            Invalidation.fromBytes(packet.getData(), packet.getOffset(), packet.getLength());
+        for (Consumer<Invalidation> listener : this.listeners) {
+          listener.accept(invalidation);
+        }
+      } catch (Throwable e) {
+        this.handler.accept(e);
+      }
+    }
+  }
+
+  /**
+   * Send an invalidation to every peer. Exceptions are given to the handler instead of being
+   * thrown, as a lost invalidation only delays the removal of the object until it expires
+   *
+   * @param invalidation the invalidation to send
+   */
+  @Override
+  public void publish(@NonNull Invalidation invalidation) {
+    byte[] bytes;
+    try {
+      bytes = invalidation.toBytes();
+    } catch (IOException e) {
+      this.handler.accept(e);
+      return;
+    }
+    if (bytes.length > SocketInvalidationBus.MAXIMUM_SIZE) {
+      this.handler.accept(new IllegalArgumentException(invalidation + " is too large"));
+      return;
+    }
+    for (InetSocketAddress peer : this.peers) {
+      try {
+        this.socket.send(new DatagramPacket(bytes, bytes.length, peer));
+      } catch (IOException e) {
+        this.handler.accept(e);
+      }
+    }
+  }
+
+  @Override
+  public @NonNull SocketInvalidationBus subscribe(@NonNull Consumer<Invalidation> listener) {
+    this.listeners.add(listener);
+    return this;
+  }
+
+  @Override
+  public @NonNull SocketInvalidationBus bind(@NonNull Cache cache) {
+    InvalidationBus.super.bind(cache);
+    return this;
+  }
+
+  /** Close the socket, which stops the thread receiving invalidations. */
+  @Override
+  public void close() {
+    this.socket.close();
+  }
+}
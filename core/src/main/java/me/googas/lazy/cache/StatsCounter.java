@@ -0,0 +1,143 @@
+package me.googas.lazy.cache;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import lombok.NonNull;
+
+/**
+ * Records the statistics of a {@link Cache}. Counters are {@link LongAdder}, which are striped
+ * between the threads that update them, so recording does not make threads contend with each other
+ * in the hot path of the cache.
+ */
+public class StatsCounter {
+
+  /** A counter that records nothing, for caches which statistics are disabled. */
+  @NonNull
+  public static final StatsCounter DISABLED =
+      new StatsCounter() {
+        @Override
+        public void recordHit() {}
+
+        @Override
+        public void recordMiss() {}
+
+        @Override
+        public void recordAdd() {}
+
+        @Override
+        public void recordRemoval() {}
+
+        @Override
+        public void recordExpiration() {}
+
+        @Override
+        public void recordCollection() {}
+
+        @Override
+        public void recordEviction() {}
+
+        @Override
+        public void recordFailure() {}
+
+        @Override
+        public void recordSweep(long nanos) {}
+      };
+
+  @NonNull private final LongAdder hits = new LongAdder();
+  @NonNull private final LongAdder misses = new LongAdder();
+  @NonNull private final LongAdder adds = new LongAdder();
+  @NonNull private final LongAdder removals = new LongAdder();
+  @NonNull private final LongAdder expirations = new LongAdder();
+  @NonNull private final LongAdder collections = new LongAdder();
+  @NonNull private final LongAdder evictions = new LongAdder();
+  @NonNull private final LongAdder failures = new LongAdder();
+  @NonNull private final LongAdder sweeps = new LongAdder();
+  @NonNull private final LongAdder sweepTime = new LongAdder();
+
+  /** Record that a lookup found an object. */
+  public void recordHit() {
+    this.hits.increment();
+  }
+
+  /** Record that a lookup did not find an object. */
+  public void recordMiss() {
+    this.misses.increment();
+  }
+
+  /** Record that an object was added. */
+  public void recordAdd() {
+    this.adds.increment();
+  }
+
+  /** Record that an object was removed using {@link Cache#remove(Catchable)}. */
+  public void recordRemoval() {
+    this.removals.increment();
+  }
+
+  /** Record that an object was removed because its time to be removed passed. */
+  public void recordExpiration() {
+    this.expirations.increment();
+  }
+
+  /** Record that an object was removed because its soft reference was cleared. */
+  public void recordCollection() {
+    this.collections.increment();
+  }
+
+  /** Record that an object was removed to make room for other objects. */
+  public void recordEviction() {
+    this.evictions.increment();
+  }
+
+  /** Record that {@link Catchable#onRemove()} threw an exception. */
+  public void recordFailure() {
+    this.failures.increment();
+  }
+
+  /**
+   * Record a run of {@link Cache#run()}.
+   *
+   * @param nanos the nanoseconds that the run took
+   */
+  public void recordSweep(long nanos) {
+    this.sweeps.increment();
+    this.sweepTime.add(nanos);
+  }
+
+  /**
+   * Wrap a handler of exceptions thrown by {@link Catchable#onRemove()} so that they are recorded.
+   *
+   * @param handler the handler to wrap
+   * @return the handler that records the exceptions
+   */
+  @NonNull
+  public Consumer<Throwable> failures(@NonNull Consumer<Throwable> handler) {
+    return e -> {
+      this.recordFailure();
+      handler.accept(e);
+    };
+  }
+
+  /**
+   * Get a snapshot of the recorded statistics.
+   *
+   * @param sizes the number of objects inside the cache by their concrete class
+   * @return the snapshot
+   */
+  @NonNull
+  public CacheStats snapshot(@NonNull Map<Class<?>, Long> sizes) {
+    return new CacheStats(
+        this.hits.sum(),
+        this.misses.sum(),
+        this.adds.sum(),
+        this.removals.sum(),
+        this.expirations.sum(),
+        this.collections.sum(),
+        this.evictions.sum(),
+        this.failures.sum(),
+        this.sweeps.sum(),
+        this.sweepTime.sum(),
+        sizes);
+  }
+}
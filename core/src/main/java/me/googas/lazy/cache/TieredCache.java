@@ -0,0 +1,327 @@
+package me.googas.lazy.cache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import lombok.NonNull;
+
+/**
+ * A {@link Cache} that keeps a small near tier in front of a larger shared cache, so that many
+ * loaders may share one cache while each of them reads its hottest objects from a structure of its
+ * own:
+ *
+ * <pre>
+ *     KeyedCache shared = new KeyedCache().register(service);
+ *     Jsongo users = Jsongo.join(uri, "users").setCache(new TieredCache(shared, 256)).build();
+ *     Jsongo guilds = Jsongo.join(uri, "guilds").setCache(new TieredCache(shared, 256)).build();
+ * </pre>
+ *
+ * <p>The shared cache owns the objects: they are added to it, expire in it and it calls their
+ * {@link Catchable#onRemove()}. The near tier only holds references to up to a maximum number of
+ * them by the class they were requested as and their {@link Catchable#getCacheKey()}, objects found
+ * in the shared cache are promoted to it and {@link #getByKey(Class, Object)} looks for them there
+ * first. Lookups by predicate go through the shared cache as the near tier only has some of the
+ * objects.
+ *
+ * <p>Objects that leave the shared cache are dropped from the near tier if the shared cache
+ * supports {@link Cache#listen(Consumer)}. Objects stay in the near tier for a limited time, which
+ * also bounds how long it may hold an object that was removed from the shared cache through another
+ * tier. Closing this cache only clears the near tier, the shared cache must be closed by its owner.
+ *
+ * <p>{@link #getStats()} returns the statistics of the near tier, the ones of the shared cache are
+ * returned by {@link #getSharedStats()}.
+ */
+public class TieredCache implements Cache {
+
+  @NonNull private final Cache shared;
+  private final int capacity;
+  private final long ttl;
+
+  /** The near tier by the class that the objects were requested as and their key. */
+  @NonNull private final Map<List<Object>, Near> near = new ConcurrentHashMap<>();
+
+  /** The position of the clock hand, kept between evictions so that each resumes the last scan. */
+  private Iterator<Map.Entry<List<Object>, Near>> hand;
+
+  @NonNull private final StatsCounter counter = new StatsCounter();
+
+  /**
+   * Create the cache.
+   *
+   * @param shared the cache that owns the objects
+   * @param capacity the maximum number of objects in the near tier
+   * @param ttl the maximum time that an object stays in the near tier
+   * @param unit the unit of the time
+   */
+  public TieredCache(@NonNull Cache shared, int capacity, long ttl, @NonNull TimeUnit unit) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+    this.shared = shared;
+    this.capacity = capacity;
+    this.ttl = unit.toMillis(ttl);
+    // If the shared cache ignores listeners objects are dropped once their time in the near tier
+    // passes
+    shared.listen(this::invalidate);
+  }
+
+  /**
+   * Create the cache with objects staying up to a minute in the near tier.
+   *
+   * @param shared the cache that owns the objects
+   * @param capacity the maximum number of objects in the near tier
+   */
+  public TieredCache(@NonNull Cache shared, int capacity) {
+    this(shared, capacity, 1, TimeUnit.MINUTES);
+  }
+
+  private void invalidate(@NonNull Collection<Catchable> removed) {
+    for (Catchable catchable : removed) {
+      this.drop(catchable);
+    }
+  }
+
+  /**
+   * Drop an object from the near tier.
+   *
+   * @param catchable the object to drop
+   * @return whether the object was in the near tier
+   */
+  private boolean drop(@NonNull Catchable catchable) {
+    Object key = KeyedCache.keyOf(catchable);
+    boolean dropped = false;
+    // The object may have been requested as any of its supertypes
+    for (Class<?> type : NegativeCache.SUPERTYPES.get(catchable.getClass())) {
+      List<Object> nearKey = Arrays.asList(type, key);
+      Near near = this.near.get(nearKey);
+      if (near != null
+          && near.catchable.getClass() == catchable.getClass()
+          && this.near.remove(nearKey, near)) {
+        dropped = true;
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * Put an object found in the shared cache into the near tier.
+   *
+   * @param clazz the class that the object was requested as
+   * @param catchable the object to promote
+   */
+  private void promote(@NonNull Class<?> clazz, @NonNull Catchable catchable) {
+    List<Object> key = Arrays.asList(clazz, KeyedCache.keyOf(catchable));
+    Near near = new Near(catchable, System.currentTimeMillis() + this.ttl);
+    if (this.near.put(key, near) != null) return;
+    this.counter.recordAdd();
+    if (this.near.size() > this.capacity) this.evict(key);
+  }
+
+  /**
+   * Remove an object from the near tier to make room. The clock hand continues from where the last
+   * eviction stopped, objects that have been read since the hand last went past them get a second
+   * chance.
+   *
+   * @param added the key of the object that was just added, which is not evicted
+   */
+  private synchronized void evict(@NonNull List<Object> added) {
+    // Two turns clear every second chance so an object is always found
+    int steps = 2 * this.near.size() + 1;
+    while (this.near.size() > this.capacity && steps-- > 0) {
+      if (this.hand == null || !this.hand.hasNext()) {
+        this.hand = this.near.entrySet().iterator();
+        if (!this.hand.hasNext()) return;
+      }
+      Map.Entry<List<Object>, Near> entry = this.hand.next();
+      if (entry.getKey().equals(added)) continue;
+      Near near = entry.getValue();
+      if (near.referenced) {
+        near.referenced = false;
+      } else if (this.near.remove(entry.getKey(), near)) {
+        this.counter.recordEviction();
+      }
+    }
+  }
+
+  /**
+   * Get the cache that owns the objects.
+   *
+   * @return the shared cache
+   */
+  @NonNull
+  public Cache getShared() {
+    return this.shared;
+  }
+
+  /**
+   * Get a snapshot of the statistics of the shared cache.
+   *
+   * @return the statistics of the shared cache
+   */
+  @NonNull
+  public CacheStats getSharedStats() {
+    return this.shared.getStats();
+  }
+
+  @Override
+  public <T extends Catchable> @NonNull Stream<T> filter(
+      @NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    return this.shared.filter(clazz, predicate);
+  }
+
+  @Override
+  public <T extends Catchable> T find(@NonNull Class<T> clazz, @NonNull Predicate<T> predicate) {
+    T catchable = this.shared.find(clazz, predicate);
+    if (catchable != null) this.promote(clazz, catchable);
+    return catchable;
+  }
+
+  @Override
+  public @NonNull <T extends Catchable> Optional<T> getByKey(
+      @NonNull Class<T> clazz, @NonNull Object key) {
+    List<Object> nearKey = Arrays.asList(clazz, key);
+    Near near = this.near.get(nearKey);
+    if (near != null) {
+      if (near.time > System.currentTimeMillis()) {
+        if (clazz.isInstance(near.catchable)) {
+          near.referenced = true;
+          this.counter.recordHit();
+          return Optional.of(clazz.cast(near.catchable));
+        }
+      } else if (this.near.remove(nearKey, near)) {
+        this.counter.recordExpiration();
+      }
+    }
+    this.counter.recordMiss();
+    Optional<T> catchable = this.shared.getByKey(clazz, key);
+    catchable.ifPresent(found -> this.promote(clazz, found));
+    return catchable;
+  }
+
+  @Override
+  public boolean contains(@NonNull Catchable catchable) {
+    Near near = this.near.get(Arrays.asList(catchable.getClass(), KeyedCache.keyOf(catchable)));
+    // Objects with the same key and class are the same object
+    if (near != null && near.catchable.getClass() == catchable.getClass()) return true;
+    return this.shared.contains(catchable);
+  }
+
+  @Override
+  public void add(@NonNull Catchable catchable) {
+    this.shared.add(catchable);
+  }
+
+  @Override
+  public <T extends Catchable> @NonNull T addIfAbsent(@NonNull T catchable) {
+    return this.shared.addIfAbsent(catchable);
+  }
+
+  @Override
+  public <T extends Catchable> @NonNull T addIfAbsent(@NonNull T catchable, long time) {
+    return this.shared.addIfAbsent(catchable, time);
+  }
+
+  @Override
+  public int addAllIfAbsent(@NonNull Map<? extends Catchable, Long> catchables) {
+    return this.shared.addAllIfAbsent(catchables);
+  }
+
+  @Override
+  public void forEachEntry(@NonNull ObjLongConsumer<Catchable> action) {
+    this.shared.forEachEntry(action);
+  }
+
+  @Override
+  public long getTimeLeft(@NonNull Catchable catchable) {
+    return this.shared.getTimeLeft(catchable);
+  }
+
+  @Override
+  public boolean remove(@NonNull Catchable catchable) {
+    if (this.drop(catchable)) this.counter.recordRemoval();
+    return this.shared.remove(catchable);
+  }
+
+  /**
+   * {@inheritDoc} The object is dropped from the near tier if it was requested as the class or any
+   * of its supertypes, then it is removed from the shared cache.
+   */
+  @Override
+  public boolean remove(@NonNull Class<? extends Catchable> clazz, @NonNull Object key) {
+    for (Class<?> type : NegativeCache.SUPERTYPES.get(clazz)) {
+      Near near = this.near.get(Arrays.asList(type, key));
+      if (near != null && clazz.isInstance(near.catchable) && this.drop(near.catchable)) {
+        this.counter.recordRemoval();
+        break;
+      }
+    }
+    return this.shared.remove(clazz, key);
+  }
+
+  @Override
+  public void refresh(@NonNull Catchable catchable) {
+    this.shared.refresh(catchable);
+  }
+
+  /** Clear the near tier. The shared cache is not closed as other caches may be using it. */
+  @Override
+  public void close() {
+    this.near.clear();
+  }
+
+  /** Drop the objects which time in the near tier passed. The shared cache is not run. */
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    long now = System.currentTimeMillis();
+    for (Map.Entry<List<Object>, Near> entry : this.near.entrySet()) {
+      Near near = entry.getValue();
+      if (near.time <= now && this.near.remove(entry.getKey(), near)) {
+        this.counter.recordExpiration();
+      }
+    }
+    this.counter.recordSweep(System.nanoTime() - start);
+  }
+
+  @Override
+  public @NonNull TieredCache listen(@NonNull Consumer<Collection<Catchable>> listener) {
+    this.shared.listen(listener);
+    return this;
+  }
+
+  @Override
+  public @NonNull Consumer<Throwable> getHandler() {
+    return this.shared.getHandler();
+  }
+
+  @Override
+  public @NonNull CacheStats getStats() {
+    Map<Class<?>, Long> sizes = new HashMap<>();
+    for (Near near : this.near.values()) {
+      sizes.merge(near.catchable.getClass(), 1L, Long::sum);
+    }
+    return this.counter.snapshot(sizes);
+  }
+
+  /** An object inside the near tier and the time in millis for it to be dropped. */
+  private static final class Near {
+
+    @NonNull private final Catchable catchable;
+    private final long time;
+    /** Whether the object was read since the last eviction went past it. */
+    private volatile boolean referenced;
+
+    private Near(@NonNull Catchable catchable, long time) {
+      this.catchable = catchable;
+      this.time = time;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package me.googas.lazy.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A hierarchical timing wheel used to schedule the expiration of cached objects. Elements are
+ * placed in a slot depending on how far their deadline is: the first wheel has a slot per tick, the
+ * next one a slot per revolution of the previous wheel and so on. When a wheel completes a
+ * revolution the slot of the next wheel is cascaded into the previous ones, so each {@link
+ * #advance(long)} only touches the elements that are due instead of every scheduled element.
+ *
+ * <p>Elements cannot be cancelled: whoever receives them from {@link #advance(long)} must check
+ * whether they are still due and {@link #schedule(Object, long)} them again if their deadline was
+ * extended.
+ *
+ * @param <E> the type of the scheduled elements
+ */
+final class TimingWheel<E> {
+
+  private static final int BITS = 6;
+  private static final int SLOTS = 1 << TimingWheel.BITS;
+  private static final int MASK = TimingWheel.SLOTS - 1;
+  private static final int LEVELS = 6;
+
+  /** The millis that each tick represents. */
+  @Getter private final long resolution;
+
+  @NonNull private final List<ArrayDeque<Scheduled<E>>> slots;
+  /** The tick to which the wheel has been advanced. */
+  private long current;
+
+  private int size;
+
+  /**
+   * Create the wheel.
+   *
+   * @param resolution the millis that each tick represents
+   * @param now the current time in millis
+   */
+  TimingWheel(long resolution, long now) {
+    if (resolution <= 0) throw new IllegalArgumentException("Resolution must be positive");
+    this.resolution = resolution;
+    this.current = now / resolution;
+    this.slots = new ArrayList<>(TimingWheel.LEVELS * TimingWheel.SLOTS);
+    for (int i = 0; i < TimingWheel.LEVELS * TimingWheel.SLOTS; i++) {
+      this.slots.add(new ArrayDeque<>());
+    }
+  }
+
+  /**
+   * Schedule an element.
+   *
+   * @param element the element to schedule
+   * @param deadline the time in millis in which the element is due
+   */
+  synchronized void schedule(@NonNull E element, long deadline) {
+    this.place(new Scheduled<>(element, Math.max(deadline / this.resolution, this.current + 1)));
+    this.size++;
+  }
+
+  private void place(@NonNull Scheduled<E> scheduled) {
+    long delta = scheduled.tick - this.current;
+    int level = 0;
+    while (level < TimingWheel.LEVELS - 1 && delta >= 1L << (TimingWheel.BITS * (level + 1))) {
+      level++;
+    }
+    int slot = (int) ((scheduled.tick >>> (TimingWheel.BITS * level)) & TimingWheel.MASK);
+    this.slots.get(level * TimingWheel.SLOTS + slot).add(scheduled);
+  }
+
+  /**
+   * Advance the wheel up to a time and get the elements that are due.
+   *
+   * @param now the current time in millis
+   * @return the elements which deadline has passed
+   */
+  @NonNull
+  synchronized List<E> advance(long now) {
+    List<E> due = new ArrayList<>();
+    long target = now / this.resolution;
+    while (this.current < target && this.size > 0) {
+      this.current++;
+      this.cascade(1);
+      ArrayDeque<Scheduled<E>> slot = this.slots.get((int) (this.current & TimingWheel.MASK));
+      Scheduled<E> scheduled;
+      while ((scheduled = slot.poll()) != null) {
+        due.add(scheduled.element);
+        this.size--;
+      }
+    }
+    // Nothing else to fire, skip directly to the target
+    if (this.current < target) this.current = target;
+    return due;
+  }
+
+  private void cascade(int level) {
+    if (level >= TimingWheel.LEVELS) return;
+    int shift = TimingWheel.BITS * level;
+    if ((this.current & ((1L << shift) - 1)) != 0) return;
+    this.cascade(level + 1);
+    ArrayDeque<Scheduled<E>> slot =
+        this.slots.get(
+            level * TimingWheel.SLOTS + (int) ((this.current >>> shift) & TimingWheel.MASK));
+    int count = slot.size();
+    for (int i = 0; i < count; i++) {
+      this.place(slot.poll());
+    }
+  }
+
+  /** Remove every scheduled element. */
+  synchronized void clear() {
+    this.slots.forEach(ArrayDeque::clear);
+    this.size = 0;
+  }
+
+  /**
+   * Get the number of scheduled elements.
+   *
+   * @return the number of elements
+   */
+  synchronized int size() {
+    return this.size;
+  }
+
+  private static final class Scheduled<E> {
+
+    @NonNull private final E element;
+    private final long tick;
+
+    private Scheduled(@NonNull E element, long tick) {
+      this.element = element;
+      this.tick = tick;
+    }
+  }
+}
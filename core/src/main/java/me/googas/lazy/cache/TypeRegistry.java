@@ -0,0 +1,66 @@
+package me.googas.lazy.cache;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.NonNull;
+
+/**
+ * Values registered for classes, such as the batches of a {@link RemovalPipeline}. The value that
+ * applies to a class is the one of the most specific class it is assignable to: its superclasses
+ * are checked first, starting with the class itself, and then its interfaces breadth-first. The
+ * value that applies to each class is cached until another value is registered.
+ *
+ * @param <V> the type of the values
+ */
+final class TypeRegistry<V> {
+
+  /** The values by the class they were registered for. */
+  @NonNull private final Map<Class<?>, V> registered = new ConcurrentHashMap<>();
+
+  /** The value that applies to each class, empty if none does. */
+  @NonNull private final Map<Class<?>, Optional<V>> resolved = new ConcurrentHashMap<>();
+
+  /**
+   * Register the value for a class, replacing the one that was registered for it.
+   *
+   * @param clazz the class to register the value for
+   * @param value the value to register
+   */
+  void put(@NonNull Class<?> clazz, @NonNull V value) {
+    this.registered.put(clazz, value);
+    this.resolved.clear();
+  }
+
+  /**
+   * Get the value that applies to a class.
+   *
+   * @param type the class to get the value for
+   * @return the value of the most specific class that the class is assignable to or null if no
+   *     value applies to it
+   */
+  V get(@NonNull Class<?> type) {
+    if (this.registered.isEmpty()) return null;
+    return this.resolved.computeIfAbsent(type, this::resolve).orElse(null);
+  }
+
+  @NonNull
+  private Optional<V> resolve(@NonNull Class<?> type) {
+    Deque<Class<?>> interfaces = new ArrayDeque<>();
+    for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+      V value = this.registered.get(clazz);
+      if (value != null) return Optional.of(value);
+      interfaces.addAll(Arrays.asList(clazz.getInterfaces()));
+    }
+    while (!interfaces.isEmpty()) {
+      Class<?> implemented = interfaces.poll();
+      V value = this.registered.get(implemented);
+      if (value != null) return Optional.of(value);
+      interfaces.addAll(Arrays.asList(implemented.getInterfaces()));
+    }
+    return Optional.empty();
+  }
+}
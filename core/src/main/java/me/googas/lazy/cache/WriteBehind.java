@@ -0,0 +1,359 @@
+package me.googas.lazy.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.Getter;
+import lombok.NonNull;
+import me.googas.lazy.Loader;
+
+/**
+ * Writes the changes of cached objects to the database in batches instead of writing them each time
+ * they change. Changed objects are marked as dirty using {@link #markDirty(Catchable)} and a
+ * background thread gives them to the {@link Write} registered for their class once there's a batch
+ * of them or the interval passes. Dirty objects are also written by the background thread when they
+ * leave the cache, if the cache supports {@link Cache#listen(Consumer)}, and when the {@link
+ * LazyCache} closes:
+ *
+ * <pre>
+ *     LazyCache loader = LazyCache.using(cache)
+ *         .setChild(sql)
+ *         .writeBehind(
+ *             new WriteBehind(500, 5, TimeUnit.SECONDS)
+ *                 .writeWith(
+ *                     User.class,
+ *                     (child, users) -&gt; child.getSubloader(UserSubloader.class).saveAll(users)))
+ *         .build();
+ *     user.setBalance(100);
+ *     loader.markDirty(user);
+ * </pre>
+ *
+ * <p>If a write fails the exception is given to the handler and its objects are marked as dirty
+ * again, so they are written in the next flush. Objects that failed to be written the maximum
+ * number of attempts are dropped, so that a write that always fails does not retry forever.
+ */
+public class WriteBehind {
+
+  private final int batchSize;
+  private final long interval;
+  @NonNull private final ScheduledExecutorService executor;
+
+  /** The writes by the class they were registered for. */
+  @NonNull private final TypeRegistry<Write<?>> writes = new TypeRegistry<>();
+
+  /** The dirty objects and the number of times that writing them failed. */
+  @NonNull private final Map<Catchable, Integer> dirty = new ConcurrentHashMap<>();
+
+  /** Whether a flush has been requested because there's a batch of dirty objects. */
+  @NonNull private final AtomicBoolean requested = new AtomicBoolean();
+
+  @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+  @Getter private int maxAttempts = 3;
+  private volatile boolean closed;
+
+  /** Supplies the child loader to write to once bound to a {@link LazyCache}. */
+  private Supplier<Loader> child;
+
+  /**
+   * Receives the objects once they are written, such as {@link LazyCache#invalidate(Catchable)}.
+   */
+  private Consumer<Catchable> written;
+
+  /**
+   * Create the write behind.
+   *
+   * @param batchSize the number of dirty objects that triggers a flush and the maximum number of
+   *     objects that a {@link Write} receives at once
+   * @param interval the maximum time that an object stays dirty
+   * @param unit the unit of the interval
+   */
+  public WriteBehind(int batchSize, long interval, @NonNull TimeUnit unit) {
+    if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive");
+    this.batchSize = batchSize;
+    this.interval = unit.toMillis(interval);
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            runnable -> {
+              Thread thread = new Thread(runnable, "lazy-write-behind");
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.executor = executor;
+  }
+
+  /**
+   * Register the write for the objects of a class. It will receive every dirty object assignable to
+   * the class, unless a write is registered for a more specific class of the object
+   *
+   * @param clazz the class of the objects
+   * @param write the write for the objects
+   * @param <T> the type of the objects
+   * @return this same instance
+   */
+  @NonNull
+  public <T extends Catchable> WriteBehind writeWith(
+      @NonNull Class<T> clazz, @NonNull Write<T> write) {
+    this.writes.put(clazz, write);
+    return this;
+  }
+
+  /**
+   * Set the consumer to be used in exceptions thrown while writing.
+   *
+   * @param handler the handler
+   * @return this same instance
+   */
+  @NonNull
+  public WriteBehind handle(@NonNull Consumer<Throwable> handler) {
+    this.handler = handler;
+    return this;
+  }
+
+  /**
+   * Set the number of times that writing an object may fail before it is dropped.
+   *
+   * @param maxAttempts the maximum attempts
+   * @return this same instance
+   */
+  @NonNull
+  public WriteBehind maxAttempts(int maxAttempts) {
+    if (maxAttempts < 1) throw new IllegalArgumentException("Max attempts must be positive");
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  /**
+   * Start writing to the child of a loader and listen for the objects that leave its cache.
+   *
+   * @param loader the loader to bind to
+   */
+  void bind(@NonNull LazyCache loader) {
+    if (this.child != null) throw new IllegalStateException("Write behind is already bound");
+    this.child = loader::getChild;
+    this.written = loader::invalidate;
+    loader.getCache().listen(this::flushLater);
+    this.executor.scheduleWithFixedDelay(
+        this::flushQuietly, this.interval, this.interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Mark an object as changed so that it is written in the next flush.
+   *
+   * @param catchable the changed object
+   * @throws IllegalArgumentException if there's no {@link Write} for the class of the object
+   * @throws IllegalStateException if the write behind is closed
+   */
+  public void markDirty(@NonNull Catchable catchable) {
+    if (this.writes.get(catchable.getClass()) == null) {
+      throw new IllegalArgumentException("There's no write for " + catchable.getClass());
+    }
+    if (this.closed) throw new IllegalStateException("Write behind is closed");
+    this.dirty.put(catchable, 0);
+    if (this.closed) {
+      // Closed while marking it, the last flush may have run before the object was marked
+      this.flush(Collections.singletonList(catchable));
+      return;
+    }
+    if (this.dirty.size() >= this.batchSize && this.requested.compareAndSet(false, true)) {
+      try {
+        this.executor.execute(
+            () -> {
+              this.requested.set(false);
+              this.flushQuietly();
+            });
+      } catch (RejectedExecutionException e) {
+        // Closed meanwhile, the object may have been added after the last flush
+        this.flushQuietly();
+      }
+    }
+  }
+
+  /**
+   * Check whether an object has changes that have not been written.
+   *
+   * @param catchable the object to check
+   * @return true if the object is dirty
+   */
+  public boolean isDirty(@NonNull Catchable catchable) {
+    return this.dirty.containsKey(catchable);
+  }
+
+  private void flushQuietly() {
+    try {
+      this.flush();
+    } catch (Throwable e) {
+      this.handler.accept(e);
+    }
+  }
+
+  /**
+   * Write the dirty objects among the given ones in the background thread. This receives the
+   * objects that leave the cache, so that the thread that removes them does not wait for the
+   * writes.
+   *
+   * @param catchables the objects to write if they are dirty
+   */
+  private void flushLater(@NonNull Collection<Catchable> catchables) {
+    List<Catchable> leaving = new ArrayList<>();
+    for (Catchable catchable : catchables) {
+      if (this.dirty.containsKey(catchable)) leaving.add(catchable);
+    }
+    if (leaving.isEmpty()) return;
+    try {
+      this.executor.execute(
+          () -> {
+            try {
+              this.flush(leaving);
+            } catch (Throwable e) {
+              this.handler.accept(e);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // Closed meanwhile, the objects may have been marked after the last flush
+      this.flush(leaving);
+    }
+  }
+
+  /**
+   * Write every dirty object now, in the current thread. Each object is taken by a single flush, so
+   * flushes may run concurrently.
+   */
+  public void flush() {
+    Map<Catchable, Integer> flushing = new LinkedHashMap<>();
+    for (Catchable catchable : this.dirty.keySet()) {
+      Integer failures = this.dirty.remove(catchable);
+      if (failures != null) flushing.put(catchable, failures);
+    }
+    this.write(flushing);
+  }
+
+  /**
+   * Write the dirty objects among the given ones, in the current thread.
+   *
+   * @param catchables the objects to write if they are dirty
+   */
+  public void flush(@NonNull Collection<Catchable> catchables) {
+    Map<Catchable, Integer> flushing = new LinkedHashMap<>();
+    for (Catchable catchable : catchables) {
+      Integer failures = this.dirty.remove(catchable);
+      if (failures != null) flushing.put(catchable, failures);
+    }
+    this.write(flushing);
+  }
+
+  /**
+   * Write objects grouped by their write.
+   *
+   * @param flushing the objects taken out of the dirty ones and the number of times that writing
+   *     them failed
+   */
+  @SuppressWarnings("unchecked")
+  private void write(@NonNull Map<Catchable, Integer> flushing) {
+    if (flushing.isEmpty()) return;
+    if (this.child == null) throw new IllegalStateException("Write behind is not bound");
+    Loader child = this.child.get();
+    Map<Write<?>, List<Catchable>> grouped = new LinkedHashMap<>();
+    for (Catchable catchable : flushing.keySet()) {
+      grouped
+          .computeIfAbsent(this.writes.get(catchable.getClass()), key -> new ArrayList<>())
+          .add(catchable);
+    }
+    grouped.forEach(
+        (write, group) -> {
+          for (int i = 0; i < group.size(); i += this.batchSize) {
+            List<Catchable> batch = group.subList(i, Math.min(group.size(), i + this.batchSize));
+            try {
+              ((Write<Catchable>) write).write(child, batch);
+            } catch (Throwable e) {
+              this.handler.accept(e);
+              this.retry(batch, flushing);
+              continue;
+            }
+            try {
+              batch.forEach(this.written);
+            } catch (Throwable e) {
+              this.handler.accept(e);
+            }
+          }
+        });
+  }
+
+  /**
+   * Mark the objects of a failed write as dirty again unless they reached the maximum attempts.
+   * Objects that were marked as dirty meanwhile have new changes, so they keep their new mark.
+   *
+   * @param batch the objects that could not be written
+   * @param flushing the number of times that writing each object failed before
+   */
+  private void retry(@NonNull List<Catchable> batch, @NonNull Map<Catchable, Integer> flushing) {
+    int dropped = 0;
+    for (Catchable catchable : batch) {
+      int failures = flushing.get(catchable) + 1;
+      if (failures < this.maxAttempts) {
+        this.dirty.putIfAbsent(catchable, failures);
+      } else {
+        dropped++;
+      }
+    }
+    if (dropped > 0) {
+      this.handler.accept(
+          new IllegalStateException(
+              "Dropped "
+                  + dropped
+                  + " dirty objects after "
+                  + this.maxAttempts
+                  + " failed attempts to write them"));
+    }
+  }
+
+  /**
+   * Stop the background thread and write every dirty object. Objects can no longer be marked as
+   * dirty, the ones that are being marked while closing are written by the thread that marks them.
+   * If a flush is still running after the timeout it is reported to the handler, it keeps running
+   * and the dirty objects that it did not take are written in the current thread.
+   *
+   * @param timeout the maximum time to wait for a running flush
+   * @param unit the unit of the timeout
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void close(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+    this.closed = true;
+    this.executor.shutdown();
+    if (!this.executor.awaitTermination(timeout, unit)) {
+      this.handler.accept(
+          new TimeoutException("A flush did not finish in " + unit.toMillis(timeout) + "ms"));
+    }
+    this.flush();
+  }
+
+  /**
+   * Writes many dirty objects of a type at once.
+   *
+   * @param <T> the type of the objects
+   */
+  public interface Write<T extends Catchable> {
+
+    /**
+     * Write the changes of objects.
+     *
+     * @param child the child loader of the {@link LazyCache}
+     * @param catchables the dirty objects
+     * @throws Exception in case the objects could not be written
+     */
+    void write(@NonNull Loader child, @NonNull List<T> catchables) throws Exception;
+  }
+}
@@ -0,0 +1,91 @@
+package me.googas.lazy.util;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import lombok.NonNull;
+
+/**
+ * Makes concurrent calls for the same key share a single execution. The first thread that asks for
+ * a key runs the task while the rest wait for its result, once it finishes the next call for the
+ * key runs the task again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public final class SingleFlight<K, V> {
+
+  @NonNull private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+  /**
+   * Run a task or wait for the one that is running for the same key.
+   *
+   * @param key the key of the task
+   * @param task the task to run if there's none running for the key
+   * @return the result of the task
+   * @throws Exception the exception thrown by the task or {@link InterruptedException} if the
+   *     thread is interrupted while waiting
+   */
+  public V execute(@NonNull K key, @NonNull Callable<V> task) throws Exception {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> running = this.flights.putIfAbsent(key, flight);
+    if (running != null) return SingleFlight.await(running);
+    try {
+      V result = task.call();
+      flight.complete(result);
+      return result;
+    } catch (Throwable e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.flights.remove(key, flight);
+    }
+  }
+
+  /**
+   * Run a task or wait for the one that is running for the same key. Unlike {@link #execute(Object,
+   * Callable)} this does not throw checked exceptions
+   *
+   * @param key the key of the task
+   * @param task the task to run if there's none running for the key
+   * @return the result of the task
+   * @throws CompletionException if the thread is interrupted while waiting, its interrupted status
+   *     is restored
+   */
+  public V get(@NonNull K key, @NonNull Supplier<V> task) {
+    try {
+      return this.execute(key, task::get);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CompletionException(e);
+    } catch (Exception e) {
+      // A supplier cannot throw checked exceptions
+      throw new CompletionException(e);
+    }
+  }
+
+  private static <V> V await(@NonNull CompletableFuture<V> flight) throws Exception {
+    try {
+      return flight.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) throw (Error) cause;
+      throw (Exception) cause;
+    }
+  }
+
+  /**
+   * Get the number of tasks that are running.
+   *
+   * @return the number of tasks
+   */
+  public int size() {
+    return this.flights.size();
+  }
+}
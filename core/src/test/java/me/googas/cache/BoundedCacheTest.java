@@ -0,0 +1,206 @@
+package me.googas.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.cache.KeyedCacheTest.Other;
+import me.googas.lazy.cache.BoundedCache;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.CatchableSerializer;
+import me.googas.lazy.cache.OffHeapTier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BoundedCacheTest {
+
+  @Test
+  public void maximumSize() {
+    BoundedCache cache = new BoundedCache(100);
+    for (int i = 0; i < 1000; i++) {
+      cache.add(new Model(String.valueOf(i), 60000));
+    }
+    Assertions.assertEquals(100, cache.getWeightedSize());
+    Assertions.assertEquals(100, cache.getMany(Catchable.class, catchable -> true).size());
+  }
+
+  @Test
+  public void maximumWeight() {
+    BoundedCache cache = new BoundedCache(100);
+    for (int i = 0; i < 100; i++) {
+      cache.add(new Heavy(String.valueOf(i)));
+    }
+    Assertions.assertTrue(cache.getWeightedSize() <= 100);
+    Assertions.assertEquals(
+        cache.getWeightedSize(), cache.getMany(Heavy.class, heavy -> true).size() * 10L);
+  }
+
+  @Test
+  public void scanResistance() {
+    BoundedCache cache = new BoundedCache(100);
+    for (int i = 0; i < 50; i++) {
+      cache.add(new Model("hot-" + i, 60000));
+    }
+    // Push the last hot model out of the window so that it is promoted like the rest
+    cache.add(new Model("cold", 60000));
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        cache.getByKey(Model.class, "hot-" + i);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      cache.add(new Model("scan-" + i, 60000));
+    }
+    int hot = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cache.getByKey(Model.class, "hot-" + i).isPresent()) hot++;
+    }
+    Assertions.assertEquals(50, hot);
+  }
+
+  @Test
+  public void concurrentReads() throws InterruptedException {
+    BoundedCache cache = new BoundedCache(100);
+    for (int i = 0; i < 50; i++) {
+      cache.add(new Model("hot-" + i, 60000));
+    }
+    cache.add(new Model("cold", 60000));
+    // Readers contend for the policy, their reads must be buffered instead of dropped
+    Thread[] readers = new Thread[8];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] =
+          new Thread(
+              () -> {
+                for (int round = 0; round < 5; round++) {
+                  for (int i = 0; i < 50; i++) {
+                    cache.getByKey(Model.class, "hot-" + i);
+                  }
+                }
+              });
+      readers[t].start();
+    }
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    for (int i = 0; i < 1000; i++) {
+      cache.add(new Model("scan-" + i, 60000));
+    }
+    int hot = 0;
+    for (int i = 0; i < 50; i++) {
+      if (cache.getByKey(Model.class, "hot-" + i).isPresent()) hot++;
+    }
+    Assertions.assertEquals(50, hot);
+  }
+
+  @Test
+  public void demotion() throws InterruptedException {
+    OffHeapTier tier = new OffHeapTier(1 << 20).serializer(Model.class, new ModelSerializer());
+    BoundedCache cache = new BoundedCache(10, 1, TimeUnit.MILLISECONDS).demoteTo(tier);
+    List<Model> models = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Model model = new Model(String.valueOf(i), i < 50 ? 0 : 60000);
+      models.add(model);
+      cache.add(model);
+    }
+    Assertions.assertEquals(90, tier.getSize());
+    Assertions.assertTrue(models.stream().noneMatch(Model::isRemoved));
+    Assertions.assertTrue(cache.contains(models.get(75)));
+    Assertions.assertTrue(cache.getByKey(Model.class, "75").isPresent());
+    Assertions.assertEquals(10, cache.getWeightedSize());
+    Thread.sleep(1100);
+    cache.run();
+    Assertions.assertFalse(cache.getByKey(Model.class, "25").isPresent());
+    Assertions.assertTrue(cache.getByKey(Model.class, "60").isPresent());
+    cache.close();
+    Assertions.assertEquals(0, tier.getSize());
+  }
+
+  @Test
+  public void addDemoted() {
+    OffHeapTier tier = new OffHeapTier(1 << 20).serializer(Model.class, new ModelSerializer());
+    BoundedCache cache = new BoundedCache(10).demoteTo(tier);
+    for (int i = 0; i < 100; i++) {
+      cache.add(new Model(String.valueOf(i), 60000));
+    }
+    Assertions.assertEquals(90, tier.getSize());
+    for (int i = 0; i < 100; i++) {
+      String id = String.valueOf(i);
+      Assertions.assertThrows(IllegalStateException.class, () -> cache.add(new Model(id, 60000)));
+      Model fresh = new Model(id, 60000);
+      Model cached = cache.addIfAbsent(fresh);
+      Assertions.assertNotSame(fresh, cached);
+      Assertions.assertEquals(id, cached.getId());
+    }
+    Assertions.assertEquals(90, tier.getSize());
+  }
+
+  @Test
+  public void displacement() {
+    OffHeapTier tier = new OffHeapTier(32, 16).serializer(Model.class, new ModelSerializer());
+    BoundedCache cache = new BoundedCache(10).demoteTo(tier);
+    for (int i = 0; i < 100; i++) {
+      cache.add(new Model(String.valueOf(i), 60000));
+    }
+    Assertions.assertTrue(tier.getSize() <= 32);
+    int contained = 0;
+    for (int i = 0; i < 100; i++) {
+      if (cache.contains(new Model(String.valueOf(i), 60000))) contained++;
+    }
+    Assertions.assertEquals(10 + tier.getSize(), contained);
+  }
+
+  @Test
+  public void mostSpecificSerializer() {
+    OffHeapTier tier =
+        new OffHeapTier(1 << 20)
+            .serializer(Model.class, new ModelSerializer())
+            .serializer(
+                Other.class,
+                new CatchableSerializer<Other>() {
+                  @Override
+                  public @NonNull byte[] serialize(@NonNull Other other) {
+                    return other.getId().getBytes(StandardCharsets.UTF_8);
+                  }
+
+                  @Override
+                  public @NonNull Other deserialize(@NonNull byte[] bytes) {
+                    return new Other(new String(bytes, StandardCharsets.UTF_8), 60000);
+                  }
+                });
+    Assertions.assertTrue(tier.supports(Other.class));
+    Assertions.assertFalse(tier.supports(Catchable.class));
+    BoundedCache cache = new BoundedCache(10).demoteTo(tier);
+    for (int i = 0; i < 100; i++) {
+      cache.add(new Other(String.valueOf(i), 60000));
+    }
+    Assertions.assertEquals(90, tier.getSize());
+    Assertions.assertTrue(cache.getByKey(Other.class, "0").isPresent());
+  }
+
+  public static class ModelSerializer implements CatchableSerializer<Model> {
+
+    @Override
+    public @NonNull byte[] serialize(@NonNull Model model) {
+      return model.getId().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public @NonNull Model deserialize(@NonNull byte[] bytes) {
+      return new Model(new String(bytes, StandardCharsets.UTF_8), 60000);
+    }
+  }
+
+  public static class Heavy extends Model {
+
+    public Heavy(String id) {
+      super(id, 60000);
+    }
+
+    @Override
+    public long getWeight() {
+      return 10;
+    }
+  }
+}
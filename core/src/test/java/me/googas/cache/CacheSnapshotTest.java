@@ -0,0 +1,129 @@
+package me.googas.cache;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import lombok.NonNull;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.lazy.cache.CacheSnapshot;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.CatchableSerializer;
+import me.googas.lazy.cache.KeyedCache;
+import me.googas.lazy.cache.MemoryCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CacheSnapshotTest {
+
+  @Test
+  public void restore() throws IOException {
+    Path file = Files.createTempFile("lazy", ".snapshot");
+    try {
+      CacheSnapshot snapshot =
+          new CacheSnapshot(file).serializer(Model.class, new BoundedCacheTest.ModelSerializer());
+      MemoryCache memory = new MemoryCache().snapshotTo(snapshot);
+      memory.add(new Model("1", 60000));
+      memory.add(new Model("2", 0));
+      memory.add((Catchable) () -> 60000);
+      memory.close();
+      KeyedCache cache = new KeyedCache();
+      Model added = new Model("1", 60000);
+      cache.add(added);
+      Assertions.assertEquals(0, snapshot.restore(cache));
+      Assertions.assertSame(added, cache.getByKey(Model.class, "1").orElse(null));
+      cache.remove(added);
+      Assertions.assertEquals(1, snapshot.restore(cache));
+      Model restored = cache.getByKey(Model.class, "1").orElse(null);
+      Assertions.assertNotNull(restored);
+      Assertions.assertTrue(cache.getTimeLeft(restored) <= 60000);
+      Assertions.assertFalse(cache.getByKey(Model.class, "2").isPresent());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void restoreMany() throws IOException {
+    Path file = Files.createTempFile("lazy", ".snapshot");
+    try {
+      CacheSnapshot snapshot =
+          new CacheSnapshot(file).serializer(Equal.class, new EqualSerializer());
+      KeyedCache saved = new KeyedCache();
+      for (int i = 0; i < 1000; i++) {
+        saved.add(new Equal(String.valueOf(i)));
+      }
+      Assertions.assertEquals(1000, snapshot.save(saved));
+      MemoryCache cache = new MemoryCache();
+      Equal added = new Equal("1");
+      cache.add(added);
+      Assertions.assertEquals(999, snapshot.restore(cache));
+      Assertions.assertEquals(1000, cache.size());
+      Assertions.assertSame(added, cache.getByKey(Equal.class, "1").orElse(null));
+      // The file is closed once restored
+      Files.delete(file);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void corrupt() throws IOException {
+    Path file = Files.createTempFile("lazy", ".snapshot");
+    try {
+      CacheSnapshot snapshot =
+          new CacheSnapshot(file).serializer(Model.class, new BoundedCacheTest.ModelSerializer());
+      snapshot.save(new KeyedCache());
+      byte[] name = Model.class.getName().getBytes(StandardCharsets.UTF_8);
+      try (DataOutputStream output =
+          new DataOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND))) {
+        output.writeInt(name.length);
+        output.write(name);
+        output.writeLong(Long.MAX_VALUE);
+        output.writeInt(-1);
+      }
+      Assertions.assertThrows(IOException.class, () -> snapshot.restore(new KeyedCache()));
+      try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(file))) {
+        output.writeInt(0x4C415A59);
+        output.writeInt(1);
+        output.writeInt(Integer.MAX_VALUE);
+      }
+      Assertions.assertThrows(IOException.class, () -> snapshot.restore(new KeyedCache()));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /** A model that is equal to the models with the same id, as objects inside a MemoryCache. */
+  public static class Equal extends Model {
+
+    public Equal(@NonNull String id) {
+      super(id, 60000);
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      return object instanceof Equal && ((Equal) object).getId().equals(this.getId());
+    }
+
+    @Override
+    public int hashCode() {
+      return this.getId().hashCode();
+    }
+  }
+
+  public static class EqualSerializer implements CatchableSerializer<Equal> {
+
+    @Override
+    public @NonNull byte[] serialize(@NonNull Equal equal) {
+      return equal.getId().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public @NonNull Equal deserialize(@NonNull byte[] bytes) {
+      return new Equal(new String(bytes, StandardCharsets.UTF_8));
+    }
+  }
+}
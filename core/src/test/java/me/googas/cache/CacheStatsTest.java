@@ -0,0 +1,68 @@
+package me.googas.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import me.googas.cache.KeyedCacheTest.Failing;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.cache.KeyedCacheTest.Other;
+import me.googas.lazy.cache.CacheStats;
+import me.googas.lazy.cache.CacheStatsBean;
+import me.googas.lazy.cache.KeyedCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CacheStatsTest {
+
+  @Test
+  public void keyedCache() throws InterruptedException, JMException {
+    KeyedCache cache = new KeyedCache(1, TimeUnit.MILLISECONDS).handle(e -> {});
+    cache.add(new Model("1", 60000));
+    cache.add(new Other("2", 60000));
+    cache.add(new Failing("3"));
+    cache.getByKey(Model.class, "1");
+    cache.getByKey(Model.class, "4");
+    cache.remove(new Model("1", 60000));
+    Thread.sleep(5);
+    cache.run();
+    CacheStats stats = cache.getStats();
+    Assertions.assertEquals(1, stats.getHits());
+    Assertions.assertEquals(1, stats.getMisses());
+    Assertions.assertEquals(0.5, stats.getHitRate());
+    Assertions.assertEquals(3, stats.getAdds());
+    Assertions.assertEquals(1, stats.getRemovals());
+    Assertions.assertEquals(1, stats.getExpirations());
+    Assertions.assertEquals(1, stats.getFailures());
+    Assertions.assertEquals(1, stats.getSweeps());
+    Assertions.assertEquals(1, stats.getSize());
+    Assertions.assertEquals(1L, stats.getSizes().get(Other.class));
+    ObjectName name = CacheStatsBean.register(cache, "test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    Assertions.assertEquals(1L, server.getAttribute(name, "Hits"));
+    server.unregisterMBean(name);
+  }
+
+  @Test
+  public void beanSnapshot() throws JMException {
+    KeyedCache cache = new KeyedCache();
+    cache.add(new Model("1", 60000));
+    ObjectName name =
+        CacheStatsBean.register(new CacheStatsBean(cache, 1, TimeUnit.HOURS), "snapshot");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      Assertions.assertEquals(0L, server.getAttribute(name, "Hits"));
+      cache.getByKey(Model.class, "1");
+      // Every attribute is read from the same snapshot until the interval elapses
+      Assertions.assertEquals(0L, server.getAttribute(name, "Hits"));
+      Assertions.assertEquals(1L, server.getAttribute(name, "Size"));
+    } finally {
+      server.unregisterMBean(name);
+    }
+    CacheStatsBean current = new CacheStatsBean(cache, 0, TimeUnit.SECONDS);
+    Assertions.assertEquals(1, current.getHits());
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(2, current.getHits());
+  }
+}
@@ -0,0 +1,95 @@
+package me.googas.cache;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.lazy.cache.Cache;
+import me.googas.lazy.cache.CacheStats;
+import me.googas.lazy.cache.Invalidation;
+import me.googas.lazy.cache.KeyedCache;
+import me.googas.lazy.cache.LazyCache;
+import me.googas.lazy.cache.LocalInvalidationBus;
+import me.googas.lazy.cache.MemoryCache;
+import me.googas.lazy.cache.SocketInvalidationBus;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class InvalidationBusTest {
+
+  @Test
+  public void local() {
+    LocalInvalidationBus first = new LocalInvalidationBus();
+    LocalInvalidationBus second = first.join();
+    KeyedCache cache = new KeyedCache();
+    KeyedCache other = new KeyedCache();
+    LazyCache loader = LazyCache.using(cache).invalidateWith(first).build();
+    LazyCache.using(other).invalidateWith(second).build();
+    Model model = new Model("1", 60000);
+    cache.add(model);
+    other.add(new Model("1", 60000));
+    loader.invalidate(model);
+    // The node that wrote keeps its copy
+    Assertions.assertTrue(cache.contains(model));
+    Assertions.assertFalse(other.getByKey(Model.class, "1").isPresent());
+    second.close();
+    other.add(new Model("1", 60000));
+    loader.invalidate(model);
+    Assertions.assertTrue(other.getByKey(Model.class, "1").isPresent());
+  }
+
+  @Test
+  public void socket() throws SocketException, InterruptedException {
+    SocketInvalidationBus first = new SocketInvalidationBus(0);
+    SocketInvalidationBus second = new SocketInvalidationBus(0);
+    try {
+      first.addPeer(second.getAddress());
+      KeyedCache cache = new KeyedCache();
+      cache.add(new Model("1", 60000));
+      CountDownLatch received = new CountDownLatch(2);
+      second.bind(cache).subscribe(invalidation -> received.countDown());
+      UUID key = UUID.randomUUID();
+      first.publish(new Invalidation(Model.class.getName(), key));
+      first.publish(new Invalidation(Model.class.getName(), "1"));
+      Assertions.assertTrue(received.await(5, TimeUnit.SECONDS));
+      Assertions.assertFalse(cache.getByKey(Model.class, "1").isPresent());
+    } finally {
+      first.close();
+      second.close();
+    }
+  }
+
+  @Test
+  public void applyWithoutReading() {
+    KeyedCache keyed = new KeyedCache();
+    MemoryCache memory = new MemoryCache();
+    Invalidation invalidation = new Invalidation(Model.class.getName(), "1");
+    for (Cache cache : new Cache[] {keyed, memory}) {
+      cache.add(new Model("1", 60000));
+      Assertions.assertTrue(invalidation.apply(cache));
+      Assertions.assertFalse(invalidation.apply(cache));
+      CacheStats stats = cache.getStats();
+      Assertions.assertEquals(0, stats.getHits());
+      Assertions.assertEquals(0, stats.getMisses());
+      Assertions.assertEquals(1, stats.getRemovals());
+    }
+  }
+
+  @Test
+  public void unsupportedKey() throws SocketException {
+    List<Throwable> failures = new ArrayList<>();
+    SocketInvalidationBus bus = new SocketInvalidationBus(0).handle(failures::add);
+    try {
+      bus.publish(new Invalidation(Model.class.getName(), Collections.singletonList("1")));
+      Assertions.assertEquals(1, failures.size());
+      Assertions.assertTrue(failures.get(0) instanceof IOException);
+    } finally {
+      bus.close();
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package me.googas.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.NonNull;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.KeyedCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class KeyedCacheTest {
+
+  @Test
+  public void keyedLookups() {
+    KeyedCache cache = new KeyedCache();
+    Model model = new Model("1", 60000);
+    cache.add(model);
+    Assertions.assertTrue(cache.contains(model));
+    Assertions.assertTrue(cache.contains(new Model("1", 60000)));
+    Assertions.assertSame(model, cache.getByKey(Model.class, "1").orElse(null));
+    Assertions.assertThrows(IllegalStateException.class, () -> cache.add(new Model("1", 60000)));
+    Assertions.assertSame(model, cache.addIfAbsent(new Model("1", 60000)));
+    Assertions.assertTrue(cache.getTimeLeft(model) > 0);
+    Assertions.assertTrue(cache.remove(model));
+    Assertions.assertFalse(cache.contains(model));
+    Assertions.assertEquals(0, cache.getTimeLeft(model));
+  }
+
+  @Test
+  public void partitions() {
+    KeyedCache cache = new KeyedCache();
+    cache.add(new Model("1", 60000));
+    cache.add(new Other("1", 60000));
+    cache.add(new Other("2", 60000));
+    Assertions.assertEquals(3, cache.getMany(Catchable.class, catchable -> true).size());
+    Assertions.assertEquals(2, cache.getMany(Other.class, other -> true).size());
+    Assertions.assertEquals(3, cache.getMany(Model.class, model -> true).size());
+    Assertions.assertTrue(cache.getByKey(Other.class, "2").isPresent());
+    Assertions.assertFalse(cache.getByKey(Other.class, "3").isPresent());
+  }
+
+  @Test
+  public void indexes() throws InterruptedException {
+    KeyedCache cache = new KeyedCache(1, TimeUnit.MILLISECONDS);
+    Model first = new Model("a-1", 60000);
+    cache.add(first);
+    cache.index(Model.class, "prefix", model -> model.getId().substring(0, 1));
+    Model second = new Model("a-2", 60000);
+    Model expiring = new Model("b-1", 0);
+    cache.add(second);
+    cache.add(expiring);
+    Assertions.assertEquals(2, cache.getManyByIndex(Model.class, "prefix", "a").size());
+    Assertions.assertSame(expiring, cache.getByIndex(Model.class, "prefix", "b").orElse(null));
+    cache.remove(first);
+    Assertions.assertEquals(1, cache.getManyByIndex(Model.class, "prefix", "a").size());
+    Thread.sleep(5);
+    cache.run();
+    Assertions.assertFalse(cache.getByIndex(Model.class, "prefix", "b").isPresent());
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> cache.getByIndex(Model.class, "id", "a-2"));
+  }
+
+  @Test
+  public void expire() throws InterruptedException {
+    KeyedCache cache = new KeyedCache(1, TimeUnit.MILLISECONDS);
+    List<Model> expiring = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Model model = new Model("expiring-" + i, i);
+      expiring.add(model);
+      cache.add(model);
+    }
+    Model staying = new Model("staying", 60000);
+    cache.add(staying);
+    Thread.sleep(250);
+    cache.run();
+    for (Model model : expiring) {
+      Assertions.assertFalse(cache.contains(model));
+      Assertions.assertTrue(model.isRemoved());
+    }
+    Assertions.assertTrue(cache.contains(staying));
+    Assertions.assertFalse(staying.isRemoved());
+  }
+
+  @Test
+  public void refreshed() {
+    ManualClock clock = new ManualClock();
+    KeyedCache cache = new KeyedCache(1, TimeUnit.MILLISECONDS, clock);
+    Model model = new Model("1", 100);
+    cache.add(model);
+    clock.advance(50);
+    cache.refresh(model);
+    clock.advance(70);
+    cache.run();
+    Assertions.assertTrue(cache.contains(model));
+    clock.advance(80);
+    cache.run();
+    Assertions.assertFalse(cache.contains(model));
+  }
+
+  @Test
+  public void refreshAhead() {
+    ManualClock clock = new ManualClock();
+    KeyedCache cache =
+        new KeyedCache(1, TimeUnit.MILLISECONDS, clock)
+            .index(Model.class, "id", Model::getId)
+            .refreshAhead(Model.class, 0.5, Runnable::run, stale -> new Model(stale.getId(), 100));
+    Model model = new Model("1", 100);
+    cache.add(model);
+    Assertions.assertSame(model, cache.getByKey(Model.class, "1").orElse(null));
+    clock.advance(60);
+    // The read that triggers the reload still gets the current object
+    Assertions.assertSame(model, cache.getByKey(Model.class, "1").orElse(null));
+    Model reloaded = cache.getByKey(Model.class, "1").orElse(null);
+    Assertions.assertNotNull(reloaded);
+    Assertions.assertNotSame(model, reloaded);
+    Assertions.assertSame(reloaded, cache.getByIndex(Model.class, "id", "1").orElse(null));
+    clock.advance(60);
+    cache.run();
+    Assertions.assertTrue(cache.contains(reloaded));
+    Assertions.assertFalse(model.isRemoved());
+  }
+
+  @Test
+  public void refreshAheadRefreshed() {
+    ManualClock clock = new ManualClock();
+    AtomicInteger reloads = new AtomicInteger();
+    KeyedCache cache =
+        new KeyedCache(1, TimeUnit.MILLISECONDS, clock)
+            .refreshAhead(
+                Model.class,
+                0.5,
+                Runnable::run,
+                stale -> {
+                  reloads.incrementAndGet();
+                  return stale;
+                });
+    Model model = new Model("1", 100);
+    cache.add(model);
+    clock.advance(40);
+    // Refreshing delays the reload to half of the new time to be removed
+    cache.refresh(model);
+    clock.advance(20);
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(0, reloads.get());
+    clock.advance(30);
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(1, reloads.get());
+  }
+
+  @Test
+  public void refreshAheadRetried() {
+    ManualClock clock = new ManualClock();
+    AtomicInteger reloads = new AtomicInteger();
+    List<Throwable> failures = new ArrayList<>();
+    KeyedCache cache =
+        new KeyedCache(1, TimeUnit.MILLISECONDS, clock)
+            .handle(failures::add)
+            .refreshAhead(
+                Model.class,
+                0.5,
+                Runnable::run,
+                stale -> {
+                  int reload = reloads.incrementAndGet();
+                  if (reload == 1) throw new IllegalStateException();
+                  return reload == 2 ? null : new Model(stale.getId(), 100);
+                });
+    Model model = new Model("1", 100);
+    cache.add(model);
+    clock.advance(60);
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(1, reloads.get());
+    Assertions.assertEquals(1, failures.size());
+    // The failed reload is retried after half of the 40 millis that the object has left
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(1, reloads.get());
+    clock.advance(20);
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(2, reloads.get());
+    // And so is the one that gave no object, after half of the 20 millis left
+    clock.advance(5);
+    cache.getByKey(Model.class, "1");
+    Assertions.assertEquals(2, reloads.get());
+    clock.advance(5);
+    Assertions.assertSame(model, cache.getByKey(Model.class, "1").orElse(null));
+    Assertions.assertEquals(3, reloads.get());
+    Assertions.assertNotSame(model, cache.getByKey(Model.class, "1").orElse(null));
+  }
+
+  public static class Failing extends Model {
+
+    public Failing(@NonNull String id) {
+      super(id, 0);
+    }
+
+    @Override
+    public void onRemove() {
+      throw new IllegalStateException();
+    }
+  }
+
+  public static class Model implements Catchable {
+
+    @NonNull @Getter private final String id;
+    private final long toRemove;
+    @Getter private boolean removed;
+
+    public Model(@NonNull String id, long toRemove) {
+      this.id = id;
+      this.toRemove = toRemove;
+    }
+
+    @Override
+    public void onRemove() {
+      this.removed = true;
+    }
+
+    @Override
+    public long getToRemove() {
+      return this.toRemove;
+    }
+
+    @Override
+    public Object getCacheKey() {
+      return this.id;
+    }
+  }
+
+  public static class Other extends Model {
+
+    public Other(@NonNull String id, long toRemove) {
+      super(id, toRemove);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package me.googas.cache;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.lazy.ElementCouldNotBeLoadedException;
+import me.googas.lazy.Subloader;
+import me.googas.lazy.SubloaderRegistry;
+import me.googas.lazy.cache.CacheMap;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.KeyedCache;
+import me.googas.lazy.cache.LazyCache;
+import me.googas.lazy.cache.NegativeCache;
+import me.googas.lazy.cache.WriteBehind;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LazyCacheTest {
+
+  @Test
+  public void readThrough() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+    LazyCache loader =
+        LazyCache.using(new KeyedCache())
+            .loadWith(
+                Model.class,
+                (child, key) -> {
+                  loads.incrementAndGet();
+                  if (key.equals("missing")) return null;
+                  if (key.equals("failing")) throw new IllegalStateException();
+                  Thread.sleep(100);
+                  return new Model((String) key, 60000);
+                })
+            .build();
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    List<Future<Model>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(service.submit(() -> loader.getOrLoad(Model.class, "1").orElse(null)));
+    }
+    Model model = futures.get(0).get();
+    Assertions.assertNotNull(model);
+    for (Future<Model> future : futures) {
+      Assertions.assertSame(model, future.get());
+    }
+    service.shutdown();
+    Assertions.assertEquals(1, loads.get());
+    Assertions.assertSame(model, loader.getOrLoad(Model.class, "1").orElse(null));
+    Assertions.assertEquals(1, loads.get());
+    Assertions.assertFalse(loader.getOrLoad(Model.class, "missing").isPresent());
+    Assertions.assertThrows(
+        ElementCouldNotBeLoadedException.class, () -> loader.getOrLoad(Model.class, "failing"));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> loader.getOrLoad(KeyedCacheTest.Other.class, "1"));
+    // Elements without a key would never be found and always loaded again
+    LazyCache keyless =
+        LazyCache.using(new KeyedCache())
+            .loadWith(Catchable.class, (child, key) -> () -> 60000)
+            .build();
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> keyless.getOrLoad(Catchable.class, "1"));
+  }
+
+  @Test
+  public void negativeCache() throws Exception {
+    AtomicInteger loads = new AtomicInteger();
+    NegativeCache negatives = new NegativeCache(2, 1, TimeUnit.HOURS);
+    LazyCache loader =
+        LazyCache.using(new KeyedCache())
+            .loadWith(
+                Model.class,
+                (child, key) -> {
+                  loads.incrementAndGet();
+                  return null;
+                })
+            .negativeCache(negatives)
+            .build();
+    Assertions.assertFalse(loader.getOrLoad(Model.class, "1").isPresent());
+    Assertions.assertFalse(loader.getOrLoad(Model.class, "1").isPresent());
+    Assertions.assertEquals(1, loads.get());
+    Assertions.assertTrue(negatives.isAbsent(Model.class, "1"));
+    // Adding the object invalidates its marker
+    Model model = new Model("1", 60000);
+    loader.add(model);
+    Assertions.assertFalse(negatives.isAbsent(Model.class, "1"));
+    Assertions.assertSame(model, loader.getOrLoad(Model.class, "1").orElse(null));
+    // Markers are bounded, the oldest is dropped first
+    negatives.markAbsent(Model.class, "2");
+    negatives.markAbsent(Model.class, "3");
+    negatives.markAbsent(Model.class, "4");
+    Assertions.assertEquals(2, negatives.getSize());
+    Assertions.assertFalse(negatives.isAbsent(Model.class, "2"));
+    Assertions.assertTrue(negatives.isAbsent(Model.class, "4"));
+    // Only the matching markers of the class and its subclasses are invalidated
+    negatives.markAbsent(KeyedCacheTest.Other.class, "3");
+    negatives.invalidateIf(Model.class, key -> key.equals("3"));
+    Assertions.assertTrue(negatives.isAbsent(Model.class, "4"));
+    Assertions.assertFalse(negatives.isAbsent(KeyedCacheTest.Other.class, "3"));
+    negatives.invalidateAll(Catchable.class);
+    Assertions.assertEquals(0, negatives.getSize());
+  }
+
+  @Test
+  public void subloaders() {
+    SubloaderRegistry<Subloader> registry = new SubloaderRegistry<>();
+    Assertions.assertThrows(NullPointerException.class, () -> registry.get(Named.class));
+    NamedSubloader named = new NamedSubloader();
+    registry.add(named);
+    // Found by its class, interfaces and superclasses
+    Assertions.assertSame(named, registry.get(NamedSubloader.class));
+    Assertions.assertSame(named, registry.get(Named.class));
+    Assertions.assertSame(named, registry.get(Subloader.class));
+    registry.remove(named);
+    Assertions.assertThrows(NullPointerException.class, () -> registry.get(Named.class));
+    // Subloaders added through the list of a loader are found by it
+    LazyCache loader = LazyCache.using(new KeyedCache()).build();
+    List<Subloader> subloaders = loader.getSubloaders();
+    subloaders.add(named);
+    Assertions.assertSame(named, loader.getSubloader(Named.class));
+    Assertions.assertSame(subloaders, loader.getSubloaderRegistry());
+  }
+
+  @Test
+  public void writeBehind() throws Exception {
+    List<List<Model>> writes = Collections.synchronizedList(new ArrayList<>());
+    List<String> threads = Collections.synchronizedList(new ArrayList<>());
+    ManualClock clock = new ManualClock();
+    KeyedCache cache = new KeyedCache(1, TimeUnit.MILLISECONDS, clock);
+    LazyCache loader =
+        LazyCache.using(cache)
+            .writeBehind(
+                new WriteBehind(3, 1, TimeUnit.HOURS)
+                    .writeWith(
+                        Model.class,
+                        (child, models) -> {
+                          threads.add(Thread.currentThread().getName());
+                          writes.add(new ArrayList<>(models));
+                        }))
+            .build();
+    List<Model> models = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Model model = new Model(String.valueOf(i), i == 5 ? 0 : 60000);
+      models.add(model);
+      cache.add(model);
+    }
+    // Marking an object many times writes it once
+    loader.markDirty(models.get(0));
+    loader.markDirty(models.get(0));
+    loader.markDirty(models.get(1));
+    loader.markDirty(models.get(2));
+    for (int i = 0; i < 100 && writes.isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(1, writes.size());
+    Assertions.assertEquals(3, writes.get(0).size());
+    // Dirty objects are written when they expire, but not by the thread that expires them
+    loader.markDirty(models.get(5));
+    clock.advance(5);
+    cache.run();
+    for (int i = 0; i < 100 && writes.size() < 2; i++) {
+      Thread.sleep(10);
+    }
+    Assertions.assertEquals(Collections.singletonList(models.get(5)), writes.get(1));
+    Assertions.assertEquals("lazy-write-behind", threads.get(1));
+    // And when the loader closes
+    loader.markDirty(models.get(3));
+    Assertions.assertEquals(2, writes.size());
+    loader.close();
+    Assertions.assertEquals(Collections.singletonList(models.get(3)), writes.get(2));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> loader.markDirty((Catchable) () -> 60000));
+  }
+
+  @Test
+  public void writeBehindRetries() throws Exception {
+    AtomicInteger attempts = new AtomicInteger();
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    WriteBehind writeBehind =
+        new WriteBehind(10, 1, TimeUnit.HOURS)
+            .maxAttempts(2)
+            .handle(failures::add)
+            .writeWith(
+                Model.class,
+                (child, models) -> {
+                  attempts.incrementAndGet();
+                  throw new IllegalStateException();
+                });
+    // A cache that ignores listeners can still write behind
+    LazyCache loader = LazyCache.using(new PlainCache()).writeBehind(writeBehind).build();
+    Model model = new Model("1", 60000);
+    loader.markDirty(model);
+    writeBehind.flush();
+    Assertions.assertTrue(writeBehind.isDirty(model));
+    writeBehind.flush();
+    Assertions.assertFalse(writeBehind.isDirty(model));
+    writeBehind.flush();
+    Assertions.assertEquals(2, attempts.get());
+    // Both failures and the dropped objects are reported
+    Assertions.assertEquals(3, failures.size());
+    loader.close();
+    Assertions.assertThrows(IllegalStateException.class, () -> loader.markDirty(model));
+  }
+
+  public interface Named extends Subloader {}
+
+  /** A cache that does not support listeners. */
+  public static class PlainCache implements CacheMap {
+
+    @NonNull @Getter
+    private final Map<SoftReference<Catchable>, Long> map = new ConcurrentHashMap<>();
+
+    @NonNull @Getter private Consumer<Throwable> handler = Throwable::printStackTrace;
+
+    @Override
+    public @NonNull PlainCache handle(@NonNull Consumer<Throwable> handler) {
+      this.handler = handler;
+      return this;
+    }
+  }
+
+  public static class NamedSubloader implements Named {}
+}
@@ -0,0 +1,42 @@
+package me.googas.cache;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import lombok.NonNull;
+
+/** A {@link Clock} that only moves when it is advanced, so that tests do not have to sleep. */
+public class ManualClock extends Clock {
+
+  private volatile long millis = System.currentTimeMillis();
+
+  /**
+   * Move the clock forward.
+   *
+   * @param millis the millis to move the clock
+   */
+  public void advance(long millis) {
+    this.millis += millis;
+  }
+
+  @Override
+  public long millis() {
+    return this.millis;
+  }
+
+  @Override
+  public ZoneId getZone() {
+    return ZoneOffset.UTC;
+  }
+
+  @Override
+  public Clock withZone(@NonNull ZoneId zone) {
+    throw new UnsupportedOperationException("The zone of a manual clock is always UTC");
+  }
+
+  @Override
+  public Instant instant() {
+    return Instant.ofEpochMilli(this.millis);
+  }
+}
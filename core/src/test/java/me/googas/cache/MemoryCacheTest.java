@@ -0,0 +1,67 @@
+package me.googas.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.cache.KeyedCacheTest.Other;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.MemoryCache;
+import me.googas.lazy.cache.ReferenceStrength;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MemoryCacheTest {
+
+  @Test
+  public void concurrentAdds() throws Exception {
+    MemoryCache cache = new MemoryCache();
+    List<Model> models = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      models.add(new Model(String.valueOf(i), 60000));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  boolean same = true;
+                  for (Model model : models) {
+                    same &= cache.addIfAbsent(model) == model;
+                  }
+                  return same;
+                }));
+      }
+      for (Future<Boolean> future : futures) {
+        Assertions.assertTrue(future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    Assertions.assertEquals(200, cache.size());
+  }
+
+  @Test
+  public void referenceStrength() throws InterruptedException {
+    MemoryCache cache =
+        new MemoryCache()
+            .referenceStrength(Catchable.class, ReferenceStrength.WEAK)
+            .referenceStrength(Model.class, ReferenceStrength.WEAK)
+            .referenceStrength(Other.class, ReferenceStrength.STRONG);
+    // The strength of the most specific class is used
+    cache.add(new Model("weak", 60000));
+    cache.add(new Other("strong", 60000));
+    for (int i = 0; i < 50 && cache.size() > 1; i++) {
+      System.gc();
+      Thread.sleep(10);
+      cache.run();
+    }
+    Assertions.assertEquals(1, cache.size());
+    Assertions.assertEquals(1, cache.getStats().getCollections());
+    Assertions.assertTrue(cache.getByKey(Other.class, "strong").isPresent());
+  }
+}
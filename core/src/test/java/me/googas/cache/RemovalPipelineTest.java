@@ -0,0 +1,75 @@
+package me.googas.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import me.googas.cache.KeyedCacheTest.Failing;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.cache.KeyedCacheTest.Other;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.KeyedCache;
+import me.googas.lazy.cache.RemovalPipeline;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RemovalPipelineTest {
+
+  @Test
+  public void batches() throws InterruptedException {
+    List<Other> batched = Collections.synchronizedList(new ArrayList<>());
+    RemovalPipeline pipeline = new RemovalPipeline(1, 16, 10).batch(Other.class, batched::addAll);
+    KeyedCache cache = new KeyedCache(1, TimeUnit.MILLISECONDS).removeWith(pipeline);
+    Model model = new Model("model", 0);
+    cache.add(model);
+    for (int i = 0; i < 25; i++) {
+      cache.add(new Other(String.valueOf(i), 0));
+    }
+    Other closing = new Other("closing", 60000);
+    cache.add(closing);
+    Thread.sleep(5);
+    cache.run();
+    Assertions.assertTrue(pipeline.close(1, TimeUnit.SECONDS));
+    Assertions.assertTrue(model.isRemoved());
+    Assertions.assertEquals(25, batched.size());
+    Assertions.assertTrue(batched.stream().noneMatch(Model::isRemoved));
+    cache.close();
+    Assertions.assertTrue(batched.contains(closing));
+  }
+
+  @Test
+  public void mostSpecificBatch() throws InterruptedException {
+    List<Catchable> catchables = Collections.synchronizedList(new ArrayList<>());
+    List<Model> models = Collections.synchronizedList(new ArrayList<>());
+    List<Other> others = Collections.synchronizedList(new ArrayList<>());
+    RemovalPipeline pipeline =
+        new RemovalPipeline(1, 16, 10)
+            .batch(Catchable.class, catchables::addAll)
+            .batch(Other.class, others::addAll)
+            .batch(Model.class, models::addAll);
+    Model model = new Model("model", 0);
+    Other other = new Other("other", 0);
+    Catchable catchable = () -> 0;
+    pipeline.submit(Arrays.asList(model, other, catchable), e -> {});
+    Assertions.assertTrue(pipeline.close(1, TimeUnit.SECONDS));
+    Assertions.assertEquals(Collections.singletonList(model), models);
+    Assertions.assertEquals(Collections.singletonList(other), others);
+    Assertions.assertEquals(Collections.singletonList(catchable), catchables);
+  }
+
+  @Test
+  public void closed() throws InterruptedException {
+    List<Other> batched = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    RemovalPipeline pipeline = new RemovalPipeline(1, 16, 10).batch(Other.class, batched::addAll);
+    Assertions.assertTrue(pipeline.close(1, TimeUnit.SECONDS));
+    Model model = new Model("model", 0);
+    Other other = new Other("other", 0);
+    pipeline.submit(Arrays.asList(model, other, new Failing("failing")), failures::add);
+    // The removals are called by this thread once the pipeline is closed
+    Assertions.assertTrue(model.isRemoved());
+    Assertions.assertEquals(Collections.singletonList(other), batched);
+    Assertions.assertEquals(1, failures.size());
+  }
+}
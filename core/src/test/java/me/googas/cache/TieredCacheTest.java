@@ -0,0 +1,133 @@
+package me.googas.cache;
+
+import java.util.concurrent.TimeUnit;
+import me.googas.cache.KeyedCacheTest.Model;
+import me.googas.cache.KeyedCacheTest.Other;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.KeyedCache;
+import me.googas.lazy.cache.TieredCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TieredCacheTest {
+
+  @Test
+  public void promotion() {
+    KeyedCache shared = new KeyedCache();
+    TieredCache first = new TieredCache(shared, 2);
+    TieredCache second = new TieredCache(shared, 2);
+    Model model = new Model("1", 60000);
+    first.add(model);
+    Assertions.assertTrue(second.contains(model));
+    // The first lookup misses the near tier and promotes the object from the shared cache
+    Assertions.assertSame(model, first.getByKey(Model.class, "1").orElse(null));
+    Assertions.assertSame(model, first.getByKey(Model.class, "1").orElse(null));
+    Assertions.assertEquals(1, first.getStats().getHits());
+    Assertions.assertEquals(1, first.getStats().getMisses());
+    Assertions.assertEquals(1, first.getStats().getSize());
+    Assertions.assertEquals(0, second.getStats().getSize());
+    Assertions.assertEquals(1, first.getSharedStats().getHits());
+  }
+
+  @Test
+  public void eviction() {
+    KeyedCache shared = new KeyedCache();
+    TieredCache tiered = new TieredCache(shared, 2);
+    for (int i = 1; i <= 3; i++) {
+      tiered.add(new Model(String.valueOf(i), 60000));
+    }
+    tiered.getByKey(Model.class, "1");
+    tiered.getByKey(Model.class, "2");
+    // Reading the object gives it a second chance
+    tiered.getByKey(Model.class, "1");
+    tiered.getByKey(Model.class, "3");
+    Assertions.assertEquals(2, tiered.getStats().getSize());
+    Assertions.assertEquals(1, tiered.getStats().getEvictions());
+    long hits = tiered.getStats().getHits();
+    tiered.getByKey(Model.class, "1");
+    tiered.getByKey(Model.class, "3");
+    Assertions.assertEquals(hits + 2, tiered.getStats().getHits());
+    // The near tier stays bounded
+    for (int i = 4; i <= 8; i++) {
+      tiered.add(new Model(String.valueOf(i), 60000));
+      tiered.getByKey(Model.class, String.valueOf(i));
+    }
+    Assertions.assertEquals(2, tiered.getStats().getSize());
+    Assertions.assertEquals(6, tiered.getStats().getEvictions());
+  }
+
+  @Test
+  public void removal() {
+    KeyedCache shared = new KeyedCache();
+    TieredCache tiered = new TieredCache(shared, 2);
+    tiered.add(new Model("1", 60000));
+    tiered.getByKey(Model.class, "1");
+    // Removing goes to both tiers
+    Assertions.assertTrue(tiered.remove(new Model("1", 60000)));
+    Assertions.assertEquals(0, tiered.getStats().getSize());
+    Assertions.assertFalse(tiered.getByKey(Model.class, "1").isPresent());
+    Assertions.assertFalse(shared.getByKey(Model.class, "1").isPresent());
+  }
+
+  @Test
+  public void removalByKey() {
+    KeyedCache shared = new KeyedCache();
+    TieredCache tiered = new TieredCache(shared, 2);
+    tiered.add(new Model("1", 60000));
+    tiered.getByKey(Catchable.class, "1");
+    // The object is dropped even if it was requested as a supertype
+    Assertions.assertTrue(tiered.remove(Model.class, "1"));
+    Assertions.assertEquals(0, tiered.getStats().getSize());
+    Assertions.assertFalse(tiered.getByKey(Catchable.class, "1").isPresent());
+  }
+
+  @Test
+  public void expiration() throws InterruptedException {
+    KeyedCache shared = new KeyedCache(1, TimeUnit.MILLISECONDS);
+    TieredCache tiered = new TieredCache(shared, 2);
+    Model model = new Model("1", 100);
+    tiered.add(model);
+    tiered.getByKey(Model.class, "1");
+    // Objects that expire in the shared cache leave the near tiers
+    Thread.sleep(120);
+    shared.run();
+    Assertions.assertTrue(model.isRemoved());
+    Assertions.assertEquals(0, tiered.getStats().getSize());
+    Assertions.assertFalse(tiered.getByKey(Model.class, "1").isPresent());
+  }
+
+  @Test
+  public void close() {
+    KeyedCache shared = new KeyedCache();
+    TieredCache first = new TieredCache(shared, 2);
+    TieredCache second = new TieredCache(shared, 2);
+    first.add(new Model("1", 60000));
+    first.getByKey(Model.class, "1");
+    // Closing a tier does not close the shared cache
+    first.close();
+    Assertions.assertEquals(0, first.getStats().getSize());
+    Assertions.assertTrue(second.getByKey(Model.class, "1").isPresent());
+  }
+
+  @Test
+  public void sharedKey() {
+    KeyedCache shared = new KeyedCache();
+    TieredCache tiered = new TieredCache(shared, 4);
+    Model model = new Model("1", 60000);
+    Other other = new Other("1", 60000);
+    tiered.add(model);
+    tiered.add(other);
+    // Objects of different classes with the same key are kept apart
+    Assertions.assertSame(other, tiered.getByKey(Other.class, "1").orElse(null));
+    Model requested = shared.getByKey(Model.class, "1").orElse(null);
+    Assertions.assertSame(requested, tiered.getByKey(Model.class, "1").orElse(null));
+    Assertions.assertSame(other, tiered.getByKey(Other.class, "1").orElse(null));
+    Assertions.assertSame(requested, tiered.getByKey(Model.class, "1").orElse(null));
+    Assertions.assertEquals(2, tiered.getStats().getHits());
+    Assertions.assertEquals(2, tiered.getStats().getSize());
+    // Removing one of them keeps the other
+    Assertions.assertTrue(tiered.remove(other));
+    Assertions.assertFalse(tiered.getByKey(Other.class, "1").isPresent());
+    Assertions.assertTrue(tiered.contains(model));
+  }
+}
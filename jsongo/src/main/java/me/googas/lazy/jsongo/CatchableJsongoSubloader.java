@@ -3,11 +3,18 @@ package me.googas.lazy.jsongo;
 import com.mongodb.client.MongoCollection;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Predicate;
 import lombok.NonNull;
 import me.googas.lazy.cache.Cache;
 import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.Invalidation;
+import me.googas.lazy.cache.InvalidationBus;
+import me.googas.lazy.cache.NegativeCache;
+import me.googas.lazy.util.SingleFlight;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
@@ -18,6 +25,9 @@ import org.bson.conversions.Bson;
  */
 public abstract class CatchableJsongoSubloader<T extends Catchable> extends JsongoSubloader<T> {
 
+  /** The queries that are running by their document. */
+  @NonNull private final SingleFlight<BsonDocument, Optional<T>> flights = new SingleFlight<>();
+
   /**
    * Create the subloader.
    *
@@ -31,7 +41,9 @@ public abstract class CatchableJsongoSubloader<T extends Catchable> extends Json
 
   /**
    * Get a {@link Catchable} from the database. If the object is obtained from the database it will
-   * be added to cache
+   * be added to cache. When many threads miss the same query at once only one of them queries the
+   * database and the rest wait for its result. If the parent has a {@link NegativeCache} queries
+   * that matched nothing are not run again until their marker expires
    *
    * @param query the query to match the catchable
    * @param predicate the predicate to match the catchable inside the cache
@@ -39,16 +51,91 @@ public abstract class CatchableJsongoSubloader<T extends Catchable> extends Json
    */
   @NonNull
   protected Optional<T> get(@NonNull Bson query, @NonNull Predicate<T> predicate) {
-    return Optional.ofNullable(
-        this.parent
-            .getCache()
-            .get(this.getTypeClazz(), predicate, true)
-            .orElseGet(
-                () -> {
-                  Optional<T> optional = this.get(query);
-                  optional.ifPresent(catchable -> this.parent.getCache().add(catchable));
-                  return optional.orElse(null);
-                }));
+    Cache cache = this.parent.getCache();
+    Optional<T> cached = cache.get(this.getTypeClazz(), predicate, true);
+    if (cached.isPresent()) return cached;
+    BsonDocument document =
+        query.toBsonDocument(BsonDocument.class, this.collection.getCodecRegistry());
+    NegativeCache negatives = this.parent.getNegatives();
+    if (negatives != null && negatives.isAbsent(this.getTypeClazz(), document)) {
+      return Optional.empty();
+    }
+    return this.flights.get(
+        document,
+        () -> {
+          // It may have been added while waiting to query it
+          Optional<T> added = cache.get(this.getTypeClazz(), predicate, true);
+          if (added.isPresent()) return added;
+          Optional<T> found = this.get(query);
+          if (!found.isPresent() && negatives != null) {
+            negatives.markAbsent(this.getTypeClazz(), document);
+          }
+          return found.map(cache::addIfAbsent);
+        });
+  }
+
+  /**
+   * Save/insert an element into the collection. Once the element is saved the markers of the {@link
+   * NegativeCache} of the parent that could match it are invalidated: the marker of its key and the
+   * queries of the type that could match the saved document. If the parent has an {@link
+   * InvalidationBus} the other nodes are told to remove their copy of the saved element
+   *
+   * @param query the query to check if the element already exists in the database
+   * @param object the object to save
+   * @return whether the replacement was acknowledged
+   */
+  @Override
+  protected boolean save(@NonNull Bson query, @NonNull T object) {
+    Document document = this.toDocument(object);
+    if (!this.replace(query, document)) return false;
+    NegativeCache negatives = this.parent.getNegatives();
+    if (negatives != null) {
+      if (object.getCacheKey() != null) negatives.invalidate(object);
+      BsonDocument saved =
+          document.toBsonDocument(BsonDocument.class, this.collection.getCodecRegistry());
+      negatives.invalidateIf(
+          this.getTypeClazz(),
+          key ->
+              !(key instanceof BsonDocument)
+                  || CatchableJsongoSubloader.couldMatch((BsonDocument) key, saved));
+    }
+    InvalidationBus bus = this.parent.getBus();
+    if (bus != null && object.getCacheKey() != null) bus.publish(Invalidation.of(object));
+    return true;
+  }
+
+  /**
+   * Check whether a query could match a document. Only the top level fields that are compared by
+   * equality are checked, any other condition such as operators, arrays or nested fields is assumed
+   * to match
+   *
+   * @param query the query to check
+   * @param document the document that could be matched
+   * @return false if the query can't match the document
+   */
+  static boolean couldMatch(@NonNull BsonDocument query, @NonNull BsonDocument document) {
+    for (Map.Entry<String, BsonValue> entry : query.entrySet()) {
+      String field = entry.getKey();
+      if (field.startsWith("$")) return true;
+      BsonValue expected = entry.getValue();
+      if (field.contains(".") || expected.isArray()) continue;
+      if (expected.isDocument()) {
+        BsonDocument condition = expected.asDocument();
+        if (!condition.isEmpty() && condition.getFirstKey().startsWith("$")) continue;
+      }
+      BsonValue actual = document.get(field);
+      if (actual == null) {
+        if (expected.isNull()) continue;
+        return false;
+      }
+      if (actual.isArray()) continue;
+      if (expected.isNumber() && actual.isNumber()) {
+        if (expected.asNumber().doubleValue() != actual.asNumber().doubleValue()) return false;
+      } else if (!expected.equals(actual)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -79,8 +166,8 @@ public abstract class CatchableJsongoSubloader<T extends Catchable> extends Json
     Collection<T> inCache = this.getParent().getCache().getMany(this.getTypeClazz(), predicate);
     for (T catchable : inDatabase) {
       if (!cache.contains(catchable)) {
-        this.getParent().getCache().add(catchable);
-        inCache.add(catchable);
+        T added = cache.addIfAbsent(catchable);
+        if (!inCache.contains(added)) inCache.add(added);
       }
     }
     return inCache;
@@ -14,6 +14,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -21,8 +22,11 @@ import lombok.Getter;
 import lombok.NonNull;
 import me.googas.lazy.Loader;
 import me.googas.lazy.Subloader;
+import me.googas.lazy.SubloaderRegistry;
 import me.googas.lazy.cache.Cache;
+import me.googas.lazy.cache.InvalidationBus;
 import me.googas.lazy.cache.MemoryCache;
+import me.googas.lazy.cache.NegativeCache;
 import me.googas.lazy.jsongo.adapters.ClassAdapter;
 import me.googas.lazy.jsongo.adapters.DateAdapter;
 import me.googas.lazy.jsongo.adapters.LocalDateTimeAdapter;
@@ -46,7 +50,13 @@ public class Jsongo implements Loader {
   @NonNull @Getter private final Cache cache;
   @NonNull @Getter private final Gson gson;
 
-  @NonNull private final Set<JsongoSubloader<?>> subloaders;
+  /** Remembers the queries that matched nothing, if null they are queried each time. */
+  @Getter private final NegativeCache negatives;
+
+  /** Tells the other nodes about the saved objects, if null they are not told. */
+  @Getter private final InvalidationBus bus;
+
+  @NonNull private final SubloaderRegistry<JsongoSubloader<?>> subloaders;
 
   /**
    * Create the loader.
@@ -63,11 +73,55 @@ public class Jsongo implements Loader {
       @NonNull Gson gson,
       @NonNull Cache cache,
       @NonNull Set<JsongoSubloader<?>> subloaders) {
+    this(client, database, gson, cache, null, subloaders);
+  }
+
+  /**
+   * Create the loader.
+   *
+   * @param client the mongo client for the connection
+   * @param database the database that subloaders will use for querying
+   * @param gson the gson instance for de/serializing objects
+   * @param cache cache instance to prevent objects from being always loading from the database
+   * @param negatives the negative cache to remember the queries that matched nothing or null
+   * @param subloaders the subloaders available for querying
+   */
+  protected Jsongo(
+      @NonNull MongoClient client,
+      @NonNull MongoDatabase database,
+      @NonNull Gson gson,
+      @NonNull Cache cache,
+      NegativeCache negatives,
+      @NonNull Set<JsongoSubloader<?>> subloaders) {
+    this(client, database, gson, cache, negatives, null, subloaders);
+  }
+
+  /**
+   * Create the loader.
+   *
+   * @param client the mongo client for the connection
+   * @param database the database that subloaders will use for querying
+   * @param gson the gson instance for de/serializing objects
+   * @param cache cache instance to prevent objects from being always loading from the database
+   * @param negatives the negative cache to remember the queries that matched nothing or null
+   * @param bus the bus to tell other nodes about the saved objects or null
+   * @param subloaders the subloaders available for querying
+   */
+  protected Jsongo(
+      @NonNull MongoClient client,
+      @NonNull MongoDatabase database,
+      @NonNull Gson gson,
+      @NonNull Cache cache,
+      NegativeCache negatives,
+      InvalidationBus bus,
+      @NonNull Set<JsongoSubloader<?>> subloaders) {
     this.client = client;
     this.database = database;
-    this.subloaders = subloaders;
+    this.subloaders = new SubloaderRegistry<>(subloaders);
     this.gson = gson;
     this.cache = cache;
+    this.negatives = negatives;
+    this.bus = bus;
   }
 
   /**
@@ -91,16 +145,12 @@ public class Jsongo implements Loader {
    */
   @NonNull
   public Set<JsongoSubloader<?>> getSubloaders() {
-    return Collections.unmodifiableSet(subloaders);
+    return Collections.unmodifiableSet(new LinkedHashSet<>(this.subloaders));
   }
 
   @Override
   public <S extends Subloader> @NonNull S getSubloader(@NonNull Class<S> clazz) {
-    return this.subloaders.stream()
-        .filter(subloader -> clazz.isAssignableFrom(subloader.getClass()))
-        .map(clazz::cast)
-        .findFirst()
-        .orElseThrow(() -> new NullPointerException("Could not find subloader for " + clazz));
+    return this.subloaders.get(clazz);
   }
 
   /**
@@ -159,6 +209,16 @@ public class Jsongo implements Loader {
       return (Builder) super.setCache(cache);
     }
 
+    @Override
+    public @NonNull Builder setNegativeCache(@NonNull NegativeCache negatives) {
+      return (Builder) super.setNegativeCache(negatives);
+    }
+
+    @Override
+    public @NonNull Builder setInvalidationBus(@NonNull InvalidationBus bus) {
+      return (Builder) super.setInvalidationBus(bus);
+    }
+
     @Override
     public @NonNull Builder add(@NonNull JsongoSubloaderBuilder... builders) {
       return (Builder) super.add(builders);
@@ -216,7 +276,10 @@ public class Jsongo implements Loader {
               client.getDatabase(this.database),
               this.configureGson(),
               this.cache == null ? new MemoryCache() : this.cache,
+              this.negatives,
+              this.bus,
               new HashSet<>());
+      if (this.bus != null) this.bus.bind(jsongo.cache);
       if (ping) {
         jsongo.ping();
       }
@@ -245,6 +308,16 @@ public class Jsongo implements Loader {
       return (Copy) super.setCache(cache);
     }
 
+    @Override
+    public @NonNull Copy setNegativeCache(@NonNull NegativeCache negatives) {
+      return (Copy) super.setNegativeCache(negatives);
+    }
+
+    @Override
+    public @NonNull Copy setInvalidationBus(@NonNull InvalidationBus bus) {
+      return (Copy) super.setInvalidationBus(bus);
+    }
+
     @Override
     public @NonNull Copy add(@NonNull JsongoSubloaderBuilder... builders) {
       return (Copy) super.add(builders);
@@ -258,7 +331,13 @@ public class Jsongo implements Loader {
               this.base.database,
               this.configureGson(),
               this.cache == null ? this.base.cache : this.cache,
-              Collections.synchronizedSet(new HashSet<>(this.base.subloaders)));
+              this.negatives == null ? this.base.negatives : this.negatives,
+              this.bus == null ? this.base.bus : this.bus,
+              new LinkedHashSet<>(this.base.subloaders));
+      // The cache of the base is bound already unless the copy has its own
+      if (built.bus != null && (this.cache != null || this.bus != null)) {
+        built.bus.bind(built.cache);
+      }
       return this.configureSubloadersBuilder(built);
     }
   }
@@ -268,6 +347,8 @@ public class Jsongo implements Loader {
     @NonNull @Getter private final List<JsongoSubloaderBuilder> subloaders;
     @NonNull private GsonBuilder gson;
     protected Cache cache;
+    protected NegativeCache negatives;
+    protected InvalidationBus bus;
 
     private Configuration(@NonNull List<JsongoSubloaderBuilder> subloaders) {
       this.subloaders = subloaders;
@@ -308,6 +389,32 @@ public class Jsongo implements Loader {
       return this;
     }
 
+    /**
+     * Set the negative cache to remember the queries that matched nothing, so that {@link
+     * CatchableJsongoSubloader} does not query them again until their marker expires.
+     *
+     * @param negatives the negative cache to use
+     * @return this same instance
+     */
+    @NonNull
+    public Configuration setNegativeCache(@NonNull NegativeCache negatives) {
+      this.negatives = negatives;
+      return this;
+    }
+
+    /**
+     * Set the bus to tell other nodes about the objects saved by {@link CatchableJsongoSubloader}
+     * and to remove the objects that they save from the cache.
+     *
+     * @param bus the bus to use
+     * @return this same instance
+     */
+    @NonNull
+    public Configuration setInvalidationBus(@NonNull InvalidationBus bus) {
+      this.bus = bus;
+      return this;
+    }
+
     /**
      * Add subloader builds for jsongo.
      *
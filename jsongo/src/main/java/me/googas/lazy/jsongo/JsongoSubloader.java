@@ -100,7 +100,28 @@ public abstract class JsongoSubloader<T> implements Subloader {
    * @return whether the replacement was acknowledged
    */
   protected boolean save(@NonNull Bson query, @NonNull T object) {
-    Document document = Document.parse(this.parent.getGson().toJson(object));
+    return this.replace(query, this.toDocument(object));
+  }
+
+  /**
+   * Serialize an object into the document that is saved in the collection.
+   *
+   * @param object the object to serialize
+   * @return the document of the object
+   */
+  @NonNull
+  protected Document toDocument(@NonNull T object) {
+    return Document.parse(this.parent.getGson().toJson(object));
+  }
+
+  /**
+   * Replace the document that matches a query or insert it if none does.
+   *
+   * @param query the query to check if the document already exists in the database
+   * @param document the document to save
+   * @return whether the replacement was acknowledged
+   */
+  protected boolean replace(@NonNull Bson query, @NonNull Document document) {
     return this.collection
         .replaceOne(query, document, new ReplaceOptions().upsert(true))
         .wasAcknowledged();
@@ -0,0 +1,105 @@
+package me.googas.jsongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.NonNull;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.jsongo.CatchableJsongoSubloader;
+import me.googas.lazy.jsongo.Jsongo;
+import me.googas.lazy.jsongo.Query;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CoalescingTest {
+
+  @Test
+  public void coalesce() throws Exception {
+    // The client connects lazily and the queries never reach it
+    Jsongo jsongo =
+        Jsongo.join("mongodb://localhost:1", "test").add(CountingSubloader::new).build();
+    CountingSubloader subloader = jsongo.getSubloader(CountingSubloader.class);
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<Counted>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(
+            service.submit(
+                () -> {
+                  start.await();
+                  return subloader.getById("1").orElse(null);
+                }));
+      }
+      start.countDown();
+      Counted counted = futures.get(0).get();
+      Assertions.assertNotNull(counted);
+      for (Future<Counted> future : futures) {
+        Assertions.assertSame(counted, future.get());
+      }
+    } finally {
+      service.shutdown();
+    }
+    Assertions.assertEquals(1, subloader.getQueries().get());
+    // The loaded object is cached
+    Assertions.assertTrue(subloader.getById("1").isPresent());
+    Assertions.assertEquals(1, subloader.getQueries().get());
+    jsongo.close();
+  }
+
+  public static class Counted implements Catchable {
+
+    @NonNull @Getter private final String id;
+
+    public Counted(@NonNull String id) {
+      this.id = id;
+    }
+
+    @Override
+    public long getToRemove() {
+      return 60000;
+    }
+
+    @Override
+    public Object getCacheKey() {
+      return this.id;
+    }
+  }
+
+  public static class CountingSubloader extends CatchableJsongoSubloader<Counted> {
+
+    @NonNull @Getter private final AtomicInteger queries = new AtomicInteger();
+
+    public CountingSubloader(@NonNull Jsongo parent) {
+      super(parent, parent.getDatabase().getCollection("counted"));
+    }
+
+    @NonNull
+    public Optional<Counted> getById(@NonNull String id) {
+      return this.get(Query.of("{_id:#}", id), counted -> counted.getId().equals(id));
+    }
+
+    @Override
+    protected Optional<Counted> get(@NonNull Bson query) {
+      this.queries.incrementAndGet();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return Optional.of(new Counted("1"));
+    }
+
+    @Override
+    public Class<Counted> getTypeClazz() {
+      return Counted.class;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package me.googas.jsongo;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import me.googas.lazy.cache.Catchable;
+import me.googas.lazy.cache.NegativeCache;
+import me.googas.lazy.jsongo.CatchableJsongoSubloader;
+import me.googas.lazy.jsongo.Jsongo;
+import me.googas.lazy.jsongo.Query;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class NegativeSaveTest {
+
+  @Test
+  public void invalidateMatching() {
+    // The client connects lazily and the queries never reach it
+    Jsongo jsongo =
+        Jsongo.join("mongodb://localhost:1", "test")
+            .setNegativeCache(new NegativeCache(16, 1, TimeUnit.HOURS))
+            .add(NamedSubloader::new)
+            .build();
+    NamedSubloader subloader = jsongo.getSubloader(NamedSubloader.class);
+    Assertions.assertFalse(subloader.getByName("a").isPresent());
+    Assertions.assertFalse(subloader.getByName("b").isPresent());
+    Assertions.assertEquals(2, subloader.getQueries().get());
+    // A failed save keeps the markers
+    subloader.setAcknowledge(false);
+    Assertions.assertFalse(subloader.save(new Named("1", "a")));
+    Assertions.assertFalse(subloader.getByName("a").isPresent());
+    Assertions.assertEquals(2, subloader.getQueries().get());
+    // Only the query that could match the saved object is run again
+    subloader.setAcknowledge(true);
+    Assertions.assertTrue(subloader.save(new Named("1", "a")));
+    Assertions.assertFalse(subloader.getByName("b").isPresent());
+    Assertions.assertEquals(2, subloader.getQueries().get());
+    Assertions.assertFalse(subloader.getByName("a").isPresent());
+    Assertions.assertEquals(3, subloader.getQueries().get());
+    jsongo.close();
+  }
+
+  public static class Named implements Catchable {
+
+    @NonNull @Getter private final String id;
+    @NonNull @Getter private final String name;
+
+    public Named(@NonNull String id, @NonNull String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    @Override
+    public long getToRemove() {
+      return 60000;
+    }
+
+    @Override
+    public Object getCacheKey() {
+      return this.id;
+    }
+  }
+
+  public static class NamedSubloader extends CatchableJsongoSubloader<Named> {
+
+    @NonNull @Getter private final AtomicInteger queries = new AtomicInteger();
+    @Setter private boolean acknowledge;
+
+    public NamedSubloader(@NonNull Jsongo parent) {
+      super(parent, parent.getDatabase().getCollection("named"));
+    }
+
+    @NonNull
+    public Optional<Named> getByName(@NonNull String name) {
+      return this.get(Query.of("{name:#}", name), named -> named.getName().equals(name));
+    }
+
+    public boolean save(@NonNull Named named) {
+      return this.save(Query.of("{id:#}", named.getId()), named);
+    }
+
+    @Override
+    protected Optional<Named> get(@NonNull Bson query) {
+      this.queries.incrementAndGet();
+      return Optional.empty();
+    }
+
+    @Override
+    protected boolean replace(@NonNull Bson query, @NonNull Document document) {
+      return this.acknowledge;
+    }
+
+    @Override
+    public Class<Named> getTypeClazz() {
+      return Named.class;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package me.googas.lazy.sql;
+
+import java.sql.SQLException;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Given to the handler of a {@link LazySQL} when a connection has been in use for longer than the
+ * leak threshold of its {@link ConnectionPool}. If the borrow of the connection was sampled the
+ * cause holds the stack trace of the code that acquired it.
+ */
+public class ConnectionLeakException extends SQLException {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The milliseconds that the connection had been in use. */
+  @Getter private final long held;
+  /** Whether the pool closed the connection and took it back. */
+  @Getter private final boolean reclaimed;
+
+  /**
+   * Create the exception.
+   *
+   * @param thread the name of the thread that acquired the connection
+   * @param held the milliseconds that the connection had been in use
+   * @param reclaimed whether the pool closed the connection and took it back
+   * @param borrow the stack trace of the code that acquired the connection or null if it was not
+   *     sampled
+   */
+  ConnectionLeakException(@NonNull String thread, long held, boolean reclaimed, Throwable borrow) {
+    super(
+        "Connection acquired by "
+            + thread
+            + " has been in use for "
+            + held
+            + "ms"
+            + (reclaimed ? " and was reclaimed" : "")
+            + (borrow == null ? ", the borrow was not sampled" : ""),
+        borrow);
+    this.held = held;
+    this.reclaimed = reclaimed;
+  }
+}
@@ -0,0 +1,744 @@
+package me.googas.lazy.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The pool of connections of a {@link LazySQL}. There are never more than the maximum connections
+ * in use, a thread that needs a connection while all of them are in use waits until one is released
+ * or the maximum wait passes. Waiting threads are given the released connections in the order in
+ * which they started waiting.
+ *
+ * <p>Idle connections are kept in a lock-free queue, the most recently released connection is the
+ * first to be used again so the rest idle for longer. With an idle timeout released connections
+ * stay idle, so a burst of work does not open and close connections over and over, and once they
+ * idle for longer than the timeout the housekeeping closes the ones above the base. Without it the
+ * connections above the base are closed as soon as they are released, unless a thread is waiting
+ * for one.
+ *
+ * <p>Connections may be kept healthy so that dead ones are not given to statements:
+ *
+ * <pre>
+ *     LazySQL.at(url)
+ *         .setValidation(ConnectionPool.Validation.ON_BORROW, 2)
+ *         .setIdleTimeout(10, TimeUnit.MINUTES)
+ *         .setMaxLifetime(30, TimeUnit.MINUTES)
+ *         .setKeepalive(2, TimeUnit.MINUTES)
+ *         .build();
+ * </pre>
+ *
+ * <p>A housekeeping thread closes the idle connections that timed out or outlived the maximum
+ * lifetime, validates the idle connections on the keepalive interval and opens connections until
+ * there are as many idle as the base. Connections in use that outlive the maximum lifetime are
+ * closed when they are released.
+ *
+ * <p>The pool records how many connections it opens and closes and how long threads wait for and
+ * hold connections, see {@link #getStats()} and {@link PoolStatsBean}.
+ *
+ * <p>Connections that are never released, such as the ones of the deprecated {@link
+ * LazySQLSubloader#statementOf(String)}, may be detected by the housekeeping:
+ *
+ * <pre>
+ *     LazySQL.at(url)
+ *         .setLeakDetection(1, TimeUnit.MINUTES, 0.1, ConnectionPool.LeakAction.WARN)
+ *         .build();
+ * </pre>
+ *
+ * <p>A connection in use for longer than the threshold is reported once to the handler using a
+ * {@link ConnectionLeakException}, which holds the stack trace of the code that acquired the
+ * connection if its borrow was sampled. Capturing stack traces is expensive, so only a part of the
+ * borrows are sampled.
+ *
+ * <p>Each connection may keep the statements prepared by {@link LazyStatement} so that the driver
+ * does not parse and plan the same sql on every execution. The statements that were not used for
+ * the longest are closed once there are more than the size of the cache:
+ *
+ * <pre>
+ *     LazySQL.at(url).setStatementCache(64).build();
+ * </pre>
+ */
+public class ConnectionPool {
+
+  /** Connections used in this time are not validated again when borrowed. */
+  private static final long VALIDATION_BYPASS = 500;
+
+  @NonNull private final LazySQL.ConnectionSupplier supplier;
+  @NonNull @Getter private final Consumer<SQLException> handler;
+  @Getter private final int base;
+  @Getter private final int max;
+  @Getter private final long maxWait;
+
+  /** The permits to use a connection, fair so that waiting threads are served in order. */
+  @NonNull private final Semaphore permits;
+
+  /** The source of the times of the pool in nanoseconds, {@link System#nanoTime()} by default. */
+  @NonNull private final LongSupplier ticker;
+
+  @NonNull private final Deque<Pooled> idle = new ConcurrentLinkedDeque<>();
+
+  /** The size of the idle queue, as counting the queue goes through every connection. */
+  @NonNull private final AtomicInteger idleCount = new AtomicInteger();
+
+  @NonNull private final Map<Connection, Pooled> used = new ConcurrentHashMap<>();
+
+  @NonNull @Getter private Validation validation = Validation.NONE;
+  @Getter private int validationTimeout = 5;
+  @Getter private long idleTimeout;
+  @Getter private long maxLifetime;
+  @Getter private long keepalive;
+  @Getter private long housekeeping = TimeUnit.SECONDS.toMillis(30);
+  @Getter private long leakThreshold;
+  @Getter private double leakSampling;
+  @NonNull @Getter private LeakAction leakAction = LeakAction.WARN;
+  @Getter private int statementCache;
+
+  /**
+   * The connections that were reclaimed while in use, so releasing them later is not an error. They
+   * are weakly referenced as leaked connections may never be released.
+   */
+  @NonNull
+  private final Set<Connection> reclaimed =
+      Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  @NonNull private final LongAdder created = new LongAdder();
+  @NonNull private final LongAdder closedConnections = new LongAdder();
+  @NonNull private final LongAdder acquires = new LongAdder();
+  @NonNull private final LongAdder timeouts = new LongAdder();
+  @NonNull private final LongAdder leaks = new LongAdder();
+  @NonNull private final Histogram.Recorder acquireTime = new Histogram.Recorder();
+  @NonNull private final Histogram.Recorder holdTime = new Histogram.Recorder();
+
+  /** Runs the housekeeping, null until the pool starts or if there's nothing to keep. */
+  private ScheduledExecutorService executor;
+
+  private volatile boolean closed;
+
+  /**
+   * Create the pool.
+   *
+   * @param supplier the supplier of the connections
+   * @param handler the handler for {@link SQLException} thrown while closing connections
+   * @param base the number of idle connections to keep open
+   * @param max the maximum number of connections in use
+   * @param maxWait the maximum time to wait for a connection
+   * @param unit the unit of the maximum wait
+   */
+  ConnectionPool(
+      @NonNull LazySQL.ConnectionSupplier supplier,
+      @NonNull Consumer<SQLException> handler,
+      int base,
+      int max,
+      long maxWait,
+      @NonNull TimeUnit unit) {
+    this(supplier, handler, base, max, maxWait, unit, System::nanoTime);
+  }
+
+  /**
+   * Create the pool reading the time from a ticker.
+   *
+   * @param supplier the supplier of the connections
+   * @param handler the handler for {@link SQLException} thrown while closing connections
+   * @param base the number of idle connections to keep open
+   * @param max the maximum number of connections in use
+   * @param maxWait the maximum time to wait for a connection
+   * @param unit the unit of the maximum wait
+   * @param ticker the source of the time in nanoseconds
+   */
+  ConnectionPool(
+      @NonNull LazySQL.ConnectionSupplier supplier,
+      @NonNull Consumer<SQLException> handler,
+      int base,
+      int max,
+      long maxWait,
+      @NonNull TimeUnit unit,
+      @NonNull LongSupplier ticker) {
+    if (max < 1) throw new IllegalArgumentException("Maximum connections must be positive");
+    this.supplier = supplier;
+    this.handler = handler;
+    this.base = Math.min(base, max);
+    this.max = max;
+    this.maxWait = unit.toMillis(maxWait);
+    this.permits = new Semaphore(max, true);
+    this.ticker = ticker;
+  }
+
+  /**
+   * Set when connections are validated using {@link Connection#isValid(int)}.
+   *
+   * @param validation when to validate connections
+   * @param timeout the seconds to wait for the validation
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool validate(@NonNull Validation validation, int timeout) {
+    if (timeout < 0) throw new IllegalArgumentException("Validation timeout can't be negative");
+    this.validation = validation;
+    this.validationTimeout = timeout;
+    return this;
+  }
+
+  /**
+   * Set the time after which idle connections above the base are closed.
+   *
+   * @param idleTimeout the time that a connection may idle, 0 to close the connections above the
+   *     base as soon as they are released
+   * @param unit the unit of the time
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool idleTimeout(long idleTimeout, @NonNull TimeUnit unit) {
+    this.idleTimeout = unit.toMillis(idleTimeout);
+    return this;
+  }
+
+  /**
+   * Set the time after which connections are closed and replaced, even if they are healthy. This
+   * should be shorter than any timeout of the database or the network between them
+   *
+   * @param maxLifetime the time that a connection may live, 0 to never replace connections
+   * @param unit the unit of the time
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool maxLifetime(long maxLifetime, @NonNull TimeUnit unit) {
+    this.maxLifetime = unit.toMillis(maxLifetime);
+    return this;
+  }
+
+  /**
+   * Set the interval in which idle connections are validated, which also keeps them from being
+   * closed by the database for idling.
+   *
+   * @param keepalive the interval, 0 to not validate idle connections
+   * @param unit the unit of the interval
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool keepalive(long keepalive, @NonNull TimeUnit unit) {
+    this.keepalive = unit.toMillis(keepalive);
+    return this;
+  }
+
+  /**
+   * Set how often the housekeeping runs. It must be shorter than the idle timeout, the maximum
+   * lifetime and the keepalive for them to be precise
+   *
+   * @param housekeeping the interval of the housekeeping
+   * @param unit the unit of the interval
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool housekeeping(long housekeeping, @NonNull TimeUnit unit) {
+    if (housekeeping <= 0) throw new IllegalArgumentException("Housekeeping must be positive");
+    this.housekeeping = unit.toMillis(housekeeping);
+    return this;
+  }
+
+  /**
+   * Detect the connections that are in use for too long.
+   *
+   * @param threshold the time that a connection may be in use before it is a leak, 0 to not detect
+   *     leaks
+   * @param unit the unit of the threshold
+   * @param sampling the ratio from 0 to 1 of borrows that capture the stack trace of the code that
+   *     acquired the connection
+   * @param action what to do with the leaked connections
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool detectLeaks(
+      long threshold, @NonNull TimeUnit unit, double sampling, @NonNull LeakAction action) {
+    if (sampling < 0 || sampling > 1) {
+      throw new IllegalArgumentException("Sampling must be from 0 to 1");
+    }
+    this.leakThreshold = unit.toMillis(threshold);
+    this.leakSampling = sampling;
+    this.leakAction = action;
+    return this;
+  }
+
+  /**
+   * Set the number of prepared statements that each connection keeps to be reused.
+   *
+   * @param size the size of the cache of each connection, 0 to close statements after use
+   * @return this same instance
+   */
+  @NonNull
+  public ConnectionPool cacheStatements(int size) {
+    if (size < 0) throw new IllegalArgumentException("Statement cache size must not be negative");
+    this.statementCache = size;
+    return this;
+  }
+
+  /**
+   * Open the base connections and start the housekeeping.
+   *
+   * @throws SQLException if a connection could not be open
+   */
+  void start() throws SQLException {
+    this.fill();
+    if (this.executor == null
+        && (this.idleTimeout > 0
+            || this.maxLifetime > 0
+            || this.keepalive > 0
+            || this.leakThreshold > 0
+            || this.validation == Validation.SCHEDULED)) {
+      ScheduledThreadPoolExecutor executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              runnable -> {
+                Thread thread = new Thread(runnable, "lazy-sql-housekeeping");
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+      executor.scheduleWithFixedDelay(
+          this::housekeepQuietly, this.housekeeping, this.housekeeping, TimeUnit.MILLISECONDS);
+      this.executor = executor;
+    }
+  }
+
+  /**
+   * Count a connection that is about to be idle unless there are already as many idle connections
+   * as the limit.
+   *
+   * @param limit the maximum number of idle connections
+   * @return whether the connection was counted and may be added to the idle queue
+   */
+  private boolean reserveIdle(int limit) {
+    int count;
+    do {
+      count = this.idleCount.get();
+      if (count >= limit) return false;
+    } while (!this.idleCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  /**
+   * Stop counting an idle connection unless there are as many idle connections as the base.
+   *
+   * @return whether the connection was uncounted and may be closed
+   */
+  private boolean trimIdle() {
+    int count;
+    do {
+      count = this.idleCount.get();
+      if (count <= this.base) return false;
+    } while (!this.idleCount.compareAndSet(count, count - 1));
+    return true;
+  }
+
+  /**
+   * Open connections until there are as many idle as the base.
+   *
+   * @throws SQLException if a connection could not be open
+   */
+  private void fill() throws SQLException {
+    while (!this.closed && this.reserveIdle(this.base)) {
+      try {
+        this.idle.offerLast(this.open());
+      } catch (SQLException | RuntimeException e) {
+        this.idleCount.decrementAndGet();
+        throw e;
+      }
+    }
+  }
+
+  @NonNull
+  private Pooled open() throws SQLException {
+    Connection connection = this.supplier.supply();
+    this.created.increment();
+    try {
+      connection.setAutoCommit(true);
+    } catch (SQLException e) {
+      this.closeQuietly(connection);
+      throw e;
+    }
+    return new Pooled(connection, this.millis());
+  }
+
+  /**
+   * Get the time of the ticker in milliseconds, used to measure how long connections live and idle.
+   *
+   * @return the time in milliseconds
+   */
+  private long millis() {
+    return TimeUnit.NANOSECONDS.toMillis(this.ticker.getAsLong());
+  }
+
+  /**
+   * Get a connection, waiting for one to be released if every connection is in use.
+   *
+   * @return the connection, which must be given back using {@link #release(Connection)}
+   * @throws SQLTimeoutException if no connection was released during the maximum wait
+   * @throws SQLException if the pool is closed, the thread was interrupted while waiting or a
+   *     connection could not be open
+   */
+  @NonNull
+  public Connection acquire() throws SQLException {
+    if (this.closed) throw new SQLException("The connection pool is closed");
+    long start = this.ticker.getAsLong();
+    try {
+      if (!this.permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+        this.timeouts.increment();
+        throw new SQLTimeoutException("No connection was released in " + this.maxWait + "ms");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection", e);
+    }
+    try {
+      Pooled pooled = this.poll();
+      if (pooled == null) pooled = this.open();
+      pooled.borrowed = this.ticker.getAsLong();
+      pooled.thread = Thread.currentThread().getName();
+      pooled.trace =
+          this.leakThreshold > 0 && ThreadLocalRandom.current().nextDouble() < this.leakSampling
+              ? new Throwable("Connection acquired here")
+              : null;
+      pooled.reported = false;
+      this.used.put(pooled.connection, pooled);
+      this.acquires.increment();
+      this.acquireTime.record(pooled.borrowed - start);
+      return pooled.connection;
+    } catch (SQLException | RuntimeException e) {
+      this.permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Get an idle connection that is healthy, the rest are closed.
+   *
+   * @return the connection or null if there's no healthy idle connection
+   */
+  private Pooled poll() {
+    Pooled pooled;
+    long now = this.millis();
+    while ((pooled = this.idle.pollFirst()) != null) {
+      this.idleCount.decrementAndGet();
+      if (this.isHealthy(pooled, now)) return pooled;
+      this.closeQuietly(pooled.connection);
+    }
+    return null;
+  }
+
+  private boolean isHealthy(@NonNull Pooled pooled, long now) {
+    if (this.isExpired(pooled, now)) return false;
+    try {
+      if (this.validation != Validation.ON_BORROW
+          || now - pooled.released < ConnectionPool.VALIDATION_BYPASS) {
+        return !pooled.connection.isClosed();
+      }
+      return this.isValid(pooled, now);
+    } catch (SQLException e) {
+      this.handler.accept(e);
+      return false;
+    }
+  }
+
+  private boolean isExpired(@NonNull Pooled pooled, long now) {
+    return this.maxLifetime > 0 && now - pooled.created >= this.maxLifetime;
+  }
+
+  private boolean isValid(@NonNull Pooled pooled, long now) throws SQLException {
+    boolean valid = pooled.connection.isValid(this.validationTimeout);
+    if (valid) pooled.validated = now;
+    return valid;
+  }
+
+  /**
+   * Give a connection back to the pool. It stays idle unless it outlived the maximum lifetime or,
+   * without an idle timeout, there are already as many idle connections as the base and no thread
+   * is waiting for one.
+   *
+   * @param connection the connection to release
+   * @throws IllegalArgumentException if the connection is not in use from this pool
+   * @throws SQLException if the connection had to be closed and closing it failed
+   */
+  public void release(@NonNull Connection connection) throws SQLException {
+    Pooled pooled = this.used.remove(connection);
+    if (pooled == null) {
+      // Closing the pool or reclaiming the connection closed it already
+      if (this.closed || this.reclaimed.remove(connection)) return;
+      throw new IllegalArgumentException(connection + " is not in this pool");
+    }
+    this.holdTime.record(this.ticker.getAsLong() - pooled.borrowed);
+    try {
+      long now = this.millis();
+      // Without an idle timeout nothing would close the connections above the base later
+      int limit = this.idleTimeout > 0 || this.permits.hasQueuedThreads() ? this.max : this.base;
+      if (!this.closed && !this.isExpired(pooled, now) && this.reserveIdle(limit)) {
+        pooled.released = now;
+        this.idle.offerFirst(pooled);
+      } else {
+        this.closedConnections.increment();
+        connection.close();
+      }
+    } finally {
+      this.permits.release();
+    }
+  }
+
+  /**
+   * Prepare a statement in a connection acquired from this pool. If statements are cached and the
+   * connection prepared the same sql before, the same statement is given back. Statements should be
+   * given back using {@link #release(PreparedStatement)} instead of being closed.
+   *
+   * @param connection the connection acquired from this pool
+   * @param sql the sql of the statement
+   * @param keys the {@link java.sql.Statement} flag of generated keys, 0 for the default of the
+   *     driver
+   * @return the prepared statement
+   * @throws SQLException if the statement could not be prepared
+   */
+  @NonNull
+  public PreparedStatement prepare(@NonNull Connection connection, @NonNull String sql, int keys)
+      throws SQLException {
+    Pooled pooled = this.used.get(connection);
+    if (pooled == null || this.statementCache == 0) {
+      return ConnectionPool.prepareStatement(connection, sql, keys);
+    }
+    if (pooled.statements == null) pooled.statements = new StatementCache(this);
+    return pooled.statements.prepare(connection, sql, keys);
+  }
+
+  /**
+   * Give back a statement prepared using {@link #prepare(Connection, String, int)}. Cached
+   * statements have their parameters cleared to be used again and the rest are closed. Statements
+   * must be released before their connection.
+   *
+   * @param statement the statement to release
+   * @throws SQLException if the statement had to be closed and closing it failed
+   */
+  public void release(@NonNull PreparedStatement statement) throws SQLException {
+    if (this.statementCache == 0
+        || !(statement instanceof CachedStatement)
+        || !((CachedStatement) statement).reset()) {
+      statement.close();
+    }
+  }
+
+  @NonNull
+  static PreparedStatement prepareStatement(
+      @NonNull Connection connection, @NonNull String sql, int keys) throws SQLException {
+    return keys == 0 ? connection.prepareStatement(sql) : connection.prepareStatement(sql, keys);
+  }
+
+  private void housekeepQuietly() {
+    try {
+      this.housekeep();
+    } catch (SQLException e) {
+      this.handler.accept(e);
+    } catch (Throwable e) {
+      this.handler.accept(new SQLException(e));
+    }
+  }
+
+  /**
+   * Report the leaked connections, close the idle connections that timed out, outlived the maximum
+   * lifetime or are not valid and open connections until there are as many idle as the base.
+   *
+   * @throws SQLException if a connection could not be open
+   */
+  void housekeep() throws SQLException {
+    if (this.leakThreshold > 0) this.detectLeaks();
+    long now = this.millis();
+    // Start from the connections that idle the longest
+    Iterator<Pooled> iterator = this.idle.descendingIterator();
+    while (iterator.hasNext() && !this.closed) {
+      Pooled pooled = iterator.next();
+      boolean expired = this.isExpired(pooled, now);
+      boolean timedOut = this.idleTimeout > 0 && now - pooled.released >= this.idleTimeout;
+      boolean validate =
+          this.validation == Validation.SCHEDULED
+              || (this.keepalive > 0 && now - pooled.validated >= this.keepalive);
+      if (!expired && !validate && !(timedOut && this.idleCount.get() > this.base)) continue;
+      // A connection that could not be removed was borrowed meanwhile
+      if (!this.idle.removeFirstOccurrence(pooled)) continue;
+      // Connections that timed out are only closed while there are more idle than the base
+      boolean trimmed = !expired && timedOut && this.trimIdle();
+      if (!trimmed) this.idleCount.decrementAndGet();
+      boolean keep = false;
+      if (!expired && !trimmed) {
+        try {
+          keep = !validate || this.isValid(pooled, now);
+        } catch (SQLException e) {
+          this.handler.accept(e);
+        }
+      }
+      if (keep) {
+        this.idleCount.incrementAndGet();
+        this.idle.offerLast(pooled);
+      } else {
+        this.closeQuietly(pooled.connection);
+      }
+    }
+    this.fill();
+  }
+
+  private void detectLeaks() {
+    long now = this.ticker.getAsLong();
+    for (Pooled pooled : this.used.values()) {
+      long held = TimeUnit.NANOSECONDS.toMillis(now - pooled.borrowed);
+      if (pooled.reported || held < this.leakThreshold) continue;
+      boolean reclaim = this.leakAction == LeakAction.RECLAIM;
+      // A connection that could not be removed was released meanwhile
+      if (reclaim && !this.used.remove(pooled.connection, pooled)) continue;
+      pooled.reported = true;
+      this.leaks.increment();
+      this.handler.accept(new ConnectionLeakException(pooled.thread, held, reclaim, pooled.trace));
+      if (reclaim) {
+        this.reclaimed.add(pooled.connection);
+        this.closeQuietly(pooled.connection);
+        this.permits.release();
+      }
+    }
+  }
+
+  /**
+   * Get the number of connections in use.
+   *
+   * @return the number of connections in use
+   */
+  public int getUsed() {
+    return this.used.size();
+  }
+
+  /**
+   * Get the number of idle connections.
+   *
+   * @return the number of idle connections
+   */
+  public int getIdle() {
+    return this.idleCount.get();
+  }
+
+  /**
+   * Get the number of threads waiting for a connection. This is an estimate as threads may stop
+   * waiting at any time
+   *
+   * @return the number of waiting threads
+   */
+  public int getWaiting() {
+    return this.permits.getQueueLength();
+  }
+
+  /**
+   * Get a snapshot of the statistics of the pool.
+   *
+   * @return the snapshot
+   */
+  @NonNull
+  public PoolStats getStats() {
+    return new PoolStats(
+        this.max,
+        this.getUsed(),
+        this.getIdle(),
+        this.getWaiting(),
+        this.created.sum(),
+        this.closedConnections.sum(),
+        this.acquires.sum(),
+        this.timeouts.sum(),
+        this.leaks.sum(),
+        this.acquireTime.snapshot(),
+        this.holdTime.snapshot());
+  }
+
+  /**
+   * Close every connection of the pool, the ones in use included, and stop the housekeeping.
+   * Connections can't be acquired after closing.
+   */
+  void close() {
+    this.closed = true;
+    if (this.executor != null) this.executor.shutdownNow();
+    Iterator<Connection> iterator = this.used.keySet().iterator();
+    while (iterator.hasNext()) {
+      Connection connection = iterator.next();
+      iterator.remove();
+      this.closeQuietly(connection);
+    }
+    Pooled pooled;
+    while ((pooled = this.idle.pollFirst()) != null) {
+      this.idleCount.decrementAndGet();
+      this.closeQuietly(pooled.connection);
+    }
+  }
+
+  private void closeQuietly(@NonNull Connection connection) {
+    this.closedConnections.increment();
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      this.handler.accept(e);
+    }
+  }
+
+  /** When connections are validated using {@link Connection#isValid(int)}. */
+  public enum Validation {
+    /** Connections are not validated, only checked to not be closed when borrowed. */
+    NONE,
+    /** Idle connections are validated when borrowed, unless they were used a moment ago. */
+    ON_BORROW,
+    /** Idle connections are validated by the housekeeping every time it runs. */
+    SCHEDULED
+  }
+
+  /** What to do with the connections that are in use for longer than the leak threshold. */
+  public enum LeakAction {
+    /** The leak is reported and the connection stays in use. */
+    WARN,
+    /**
+     * The leak is reported and the connection is closed, so that its place in the pool may be used
+     * by other threads. Statements that still use it will fail.
+     */
+    RECLAIM
+  }
+
+  /** A connection of the pool with the times needed to keep it healthy. */
+  private static final class Pooled {
+
+    @NonNull private final Connection connection;
+    private final long created;
+    private volatile long released;
+    private volatile long validated;
+    /** The time of the ticker in nanoseconds in which the connection was last acquired. */
+    private volatile long borrowed;
+    /** The name of the thread that acquired the connection. */
+    private volatile String thread;
+    /** Where the connection was acquired, null if the borrow was not sampled. */
+    private volatile Throwable trace;
+    /** Whether the connection was reported as a leak since it was acquired. */
+    private volatile boolean reported;
+    /** The statements that the connection keeps, created when the first one is prepared. */
+    private StatementCache statements;
+
+    private Pooled(@NonNull Connection connection, long created) {
+      this.connection = connection;
+      this.created = created;
+      this.released = this.created;
+      this.validated = this.created;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package me.googas.lazy.sql;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A snapshot of the distribution of durations in nanoseconds. Durations are counted in buckets
+ * which bounds are powers of two, so percentiles are precise up to a factor of two, which is enough
+ * to tell whether threads wait microseconds or seconds for a connection.
+ *
+ * @see PoolStats
+ */
+public final class Histogram {
+
+  /** The number of buckets, one for each possible bit length of a duration. */
+  private static final int BUCKETS = 64;
+
+  /** A histogram that has not counted any duration. */
+  @NonNull public static final Histogram EMPTY = new Histogram(new long[BUCKETS], 0, 0);
+
+  /** The number of durations in each bucket, bucket i holds the durations under 2^i. */
+  @NonNull private final long[] buckets;
+
+  /** The number of counted durations. */
+  @Getter private final long count;
+  /** The sum of the counted durations. */
+  @Getter private final long total;
+  /** The longest counted duration. */
+  @Getter private final long max;
+
+  private Histogram(@NonNull long[] buckets, long total, long max) {
+    this.buckets = buckets;
+    long count = 0;
+    for (long bucket : buckets) {
+      count += bucket;
+    }
+    this.count = count;
+    this.total = total;
+    this.max = max;
+  }
+
+  private static int bucketOf(long nanos) {
+    return Math.min(Histogram.BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+  }
+
+  /**
+   * Get the average duration.
+   *
+   * @return the average nanoseconds, 0 if no duration was counted
+   */
+  public double getMean() {
+    return this.count == 0 ? 0 : (double) this.total / this.count;
+  }
+
+  /**
+   * Get the duration under which a percentage of the durations are.
+   *
+   * @param percentile the percentage from 0 to 1
+   * @return the upper bound in nanoseconds of the bucket of the percentile, 0 if no duration was
+   *     counted
+   */
+  public long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 1) {
+      throw new IllegalArgumentException("Percentile must be from 0 to 1");
+    }
+    if (this.count == 0) return 0;
+    long rank = Math.max(1, (long) Math.ceil(percentile * this.count));
+    long seen = 0;
+    for (int i = 0; i < this.buckets.length; i++) {
+      seen += this.buckets[i];
+      if (seen >= rank) return Math.min(this.max, (1L << i) - 1);
+    }
+    return this.max;
+  }
+
+  /**
+   * Get the durations counted since a previous snapshot. The maximum is the one of this snapshot
+   *
+   * @param other the previous snapshot
+   * @return the difference between the snapshots
+   */
+  @NonNull
+  public Histogram minus(@NonNull Histogram other) {
+    long[] buckets = new long[Histogram.BUCKETS];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = this.buckets[i] - other.buckets[i];
+    }
+    return new Histogram(buckets, this.total - other.total, this.max);
+  }
+
+  @Override
+  public String toString() {
+    return "Histogram{"
+        + "count="
+        + this.count
+        + ", mean="
+        + this.getMean()
+        + ", p50="
+        + this.getPercentile(0.5)
+        + ", p99="
+        + this.getPercentile(0.99)
+        + ", max="
+        + this.max
+        + '}';
+  }
+
+  /**
+   * Counts durations into a {@link Histogram}. Buckets are {@link LongAdder}, so threads that
+   * record at once do not contend with each other.
+   */
+  static final class Recorder {
+
+    @NonNull private final LongAdder[] buckets = new LongAdder[Histogram.BUCKETS];
+    @NonNull private final LongAdder total = new LongAdder();
+    @NonNull private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Recorder() {
+      Arrays.setAll(this.buckets, i -> new LongAdder());
+    }
+
+    /**
+     * Count a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative durations are counted as 0
+     */
+    void record(long nanos) {
+      nanos = Math.max(0, nanos);
+      this.buckets[Histogram.bucketOf(nanos)].increment();
+      this.total.add(nanos);
+      this.max.accumulate(nanos);
+    }
+
+    /**
+     * Get a snapshot of the counted durations.
+     *
+     * @return the snapshot
+     */
+    @NonNull
+    Histogram snapshot() {
+      long[] buckets = new long[Histogram.BUCKETS];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = this.buckets[i].sum();
+      }
+      return new Histogram(buckets, this.total.sum(), this.max.get());
+    }
+  }
+}
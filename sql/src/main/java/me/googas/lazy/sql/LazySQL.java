@@ -8,11 +8,13 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import lombok.Getter;
 import lombok.NonNull;
 import me.googas.lazy.Loader;
 import me.googas.lazy.Subloader;
+import me.googas.lazy.SubloaderRegistry;
 import me.googas.lazy.builders.Builder;
 import me.googas.lazy.cache.Cache;
 import me.googas.lazy.cache.MemoryCache;
@@ -23,15 +25,11 @@ import me.googas.lazy.cache.MemoryCache;
  */
 public class LazySQL implements Loader {
 
-  @NonNull private final ConnectionSupplier supplier;
   @NonNull @Getter private final LazySchema schema;
-  @NonNull @Getter private final List<LazySQLSubloader> subloaders;
+  @NonNull private final SubloaderRegistry<LazySQLSubloader> subloaders;
   @NonNull @Getter private final Cache cache;
   @NonNull @Getter private final Consumer<SQLException> handler;
-  private final int base;
-  private final int max;
-  @NonNull private final List<Connection> open = new ArrayList<>();
-  @NonNull private final List<Connection> used = new ArrayList<>();
+  @NonNull @Getter private final ConnectionPool pool;
 
   /**
    * Create the loader.
@@ -52,13 +50,37 @@ public class LazySQL implements Loader {
       @NonNull Consumer<SQLException> handler,
       int base,
       int max) {
-    this.supplier = supplier;
+    this(supplier, schema, subloaders, cache, handler, base, max, 5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Create the loader.
+   *
+   * @param supplier the supplier for the connection
+   * @param schema the schema of the sql connection
+   * @param subloaders the subloaders available for querying
+   * @param cache cache instance to prevent objects from being always loading from the database
+   * @param handler the handler for {@link SQLException}
+   * @param base the base connections that the pool may have
+   * @param max the maximum open connections of the pool
+   * @param maxWait the maximum time to wait for a connection when all of them are in use
+   * @param unit the unit of the maximum wait
+   */
+  protected LazySQL(
+      @NonNull ConnectionSupplier supplier,
+      @NonNull LazySchema schema,
+      @NonNull List<LazySQLSubloader> subloaders,
+      @NonNull Cache cache,
+      @NonNull Consumer<SQLException> handler,
+      int base,
+      int max,
+      long maxWait,
+      @NonNull TimeUnit unit) {
     this.schema = schema;
-    this.subloaders = subloaders;
+    this.subloaders = new SubloaderRegistry<>(subloaders);
     this.cache = cache;
     this.handler = handler;
-    this.base = base;
-    this.max = max;
+    this.pool = new ConnectionPool(supplier, handler, base, max, maxWait, unit);
   }
 
   /**
@@ -90,13 +112,29 @@ public class LazySQL implements Loader {
     return new LazySQLBuilder(url.startsWith("jdbc:") ? url : "jdbc:" + url);
   }
 
+  /**
+   * Get the subloaders of this loader.
+   *
+   * @return the subloaders
+   */
+  @NonNull
+  public List<LazySQLSubloader> getSubloaders() {
+    return this.subloaders;
+  }
+
+  /**
+   * Get the registry that keeps the subloaders of this loader and resolves them by class.
+   *
+   * @return the registry of subloaders
+   */
+  @NonNull
+  public SubloaderRegistry<LazySQLSubloader> getSubloaderRegistry() {
+    return this.subloaders;
+  }
+
   @Override
   public <S extends Subloader> @NonNull S getSubloader(@NonNull Class<S> clazz) {
-    return this.subloaders.stream()
-        .filter(subloader -> clazz.isAssignableFrom(subloader.getClass()))
-        .map(clazz::cast)
-        .findFirst()
-        .orElseThrow(() -> new NullPointerException("Could not find subloader for " + clazz));
+    return this.subloaders.get(clazz);
   }
 
   void releaseQuietly(Connection connection) {
@@ -111,25 +149,21 @@ public class LazySQL implements Loader {
   void releaseQuietly(PreparedStatement statement) {
     if (statement == null) return;
     try {
-      statement.close();
+      this.pool.release(statement);
     } catch (SQLException e) {
       this.handler.accept(e);
     }
   }
 
   /**
-   * Starts the connection tables.
+   * Starts the connection tables and the housekeeping of the connection pool.
    *
    * @return this same instance
    * @throws SQLException if the base connections could not be open
    */
   @NonNull
   public LazySQL start() throws SQLException {
-    for (int i = 0; i < base; i++) {
-      Connection connection = this.supplier.supply();
-      connection.setAutoCommit(true);
-      this.open.add(connection);
-    }
+    this.pool.start();
     for (LazySQLSubloader subloader : this.subloaders) {
       try {
         subloader.createTable();
@@ -154,72 +188,32 @@ public class LazySQL implements Loader {
   /**
    * Releases a connection back to the pool.
    *
+   * @see ConnectionPool#release(Connection)
    * @param connection the connection to release
    * @throws SQLException if the base connections are filled it will attempt to close the connection
    *     thus if the connection cannot be closed it will be thrown
    */
   public void release(@NonNull Connection connection) throws SQLException {
-    if (this.used.contains(connection)) {
-      this.used.remove(connection);
-      if (this.open.size() < base) {
-        this.open.add(connection);
-      } else {
-        connection.close();
-      }
-    } else {
-      throw new IllegalArgumentException(connection + " is not in this pool");
-    }
+    this.pool.release(connection);
   }
 
   /**
-   * Get a new connection.
+   * Get a connection from the pool. If every connection is in use this waits for one to be
+   * released.
    *
-   * @return the new connection
-   * @throws SQLException if the connection could no be supplied
+   * @see ConnectionPool#acquire()
+   * @return the connection
+   * @throws SQLException if the connection could no be supplied or none was released in time
    */
   @NonNull
   public Connection getConnection() throws SQLException {
-    Connection connection;
-    if (this.open.isEmpty() && this.used.size() < this.max) {
-      connection = this.supplier.supply();
-      connection.setAutoCommit(true);
-      this.used.add(connection);
-    } else if (!this.open.isEmpty()) {
-      connection = this.open.get(0);
-      if (connection.isClosed()) {
-        this.open.remove(connection);
-        connection = this.getConnection();
-      } else {
-        this.used.add(connection);
-        this.open.remove(connection);
-      }
-    } else {
-      throw new SQLException("Maximum connections");
-    }
-    return connection;
+    return this.pool.acquire();
   }
 
   @Override
   public void close() {
     this.cache.close();
-    this.used.forEach(
-        connection -> {
-          try {
-            connection.close();
-          } catch (SQLException e) {
-            this.handler.accept(e);
-          }
-        });
-    this.open.forEach(
-        connection -> {
-          try {
-            connection.close();
-          } catch (SQLException e) {
-            this.handler.accept(e);
-          }
-        });
-    this.used.clear();
-    this.open.clear();
+    this.pool.close();
   }
 
   interface ConnectionSupplier {
@@ -245,6 +239,18 @@ public class LazySQL implements Loader {
     @NonNull private Consumer<SQLException> handler = Throwable::printStackTrace;
     private int base = 3;
     private int max = 10;
+    private long maxWait = 5;
+    @NonNull private TimeUnit maxWaitUnit = TimeUnit.SECONDS;
+    @NonNull private ConnectionPool.Validation validation = ConnectionPool.Validation.NONE;
+    private int validationTimeout = 5;
+    private long idleTimeout;
+    private long maxLifetime;
+    private long keepalive;
+    private long housekeeping = TimeUnit.SECONDS.toMillis(30);
+    private long leakThreshold;
+    private double leakSampling;
+    @NonNull private ConnectionPool.LeakAction leakAction = ConnectionPool.LeakAction.WARN;
+    private int statementCache;
 
     private LazySQLBuilder(@NonNull String url) {
       this.supplier = () -> DriverManager.getConnection(url);
@@ -274,6 +280,128 @@ public class LazySQL implements Loader {
       return this;
     }
 
+    /**
+     * Set the maximum time to wait for a connection when all of them are in use.
+     *
+     * @param maxWait the new maximum wait
+     * @param unit the unit of the maximum wait
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setMaxWait(long maxWait, @NonNull TimeUnit unit) {
+      this.maxWait = maxWait;
+      this.maxWaitUnit = unit;
+      return this;
+    }
+
+    /**
+     * Set when connections are validated.
+     *
+     * @see ConnectionPool#validate(ConnectionPool.Validation, int)
+     * @param validation when to validate connections
+     * @param timeout the seconds to wait for the validation
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setValidation(
+        @NonNull ConnectionPool.Validation validation, int timeout) {
+      this.validation = validation;
+      this.validationTimeout = timeout;
+      return this;
+    }
+
+    /**
+     * Set the time after which idle connections above the base are closed.
+     *
+     * @see ConnectionPool#idleTimeout(long, TimeUnit)
+     * @param idleTimeout the new idle timeout, 0 to close the connections above the base as soon as
+     *     they are released
+     * @param unit the unit of the idle timeout
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setIdleTimeout(long idleTimeout, @NonNull TimeUnit unit) {
+      this.idleTimeout = unit.toMillis(idleTimeout);
+      return this;
+    }
+
+    /**
+     * Set the time after which connections are replaced.
+     *
+     * @see ConnectionPool#maxLifetime(long, TimeUnit)
+     * @param maxLifetime the new maximum lifetime, 0 to never replace connections
+     * @param unit the unit of the maximum lifetime
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setMaxLifetime(long maxLifetime, @NonNull TimeUnit unit) {
+      this.maxLifetime = unit.toMillis(maxLifetime);
+      return this;
+    }
+
+    /**
+     * Set the interval in which idle connections are validated.
+     *
+     * @see ConnectionPool#keepalive(long, TimeUnit)
+     * @param keepalive the new interval, 0 to not validate idle connections
+     * @param unit the unit of the interval
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setKeepalive(long keepalive, @NonNull TimeUnit unit) {
+      this.keepalive = unit.toMillis(keepalive);
+      return this;
+    }
+
+    /**
+     * Set how often the housekeeping of the connections runs.
+     *
+     * @see ConnectionPool#housekeeping(long, TimeUnit)
+     * @param housekeeping the new interval
+     * @param unit the unit of the interval
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setHousekeeping(long housekeeping, @NonNull TimeUnit unit) {
+      this.housekeeping = unit.toMillis(housekeeping);
+      return this;
+    }
+
+    /**
+     * Detect the connections that are in use for too long.
+     *
+     * @see ConnectionPool#detectLeaks(long, TimeUnit, double, ConnectionPool.LeakAction)
+     * @param threshold the time that a connection may be in use before it is a leak
+     * @param unit the unit of the threshold
+     * @param sampling the ratio from 0 to 1 of borrows that capture their stack trace
+     * @param action what to do with the leaked connections
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setLeakDetection(
+        long threshold,
+        @NonNull TimeUnit unit,
+        double sampling,
+        @NonNull ConnectionPool.LeakAction action) {
+      this.leakThreshold = unit.toMillis(threshold);
+      this.leakSampling = sampling;
+      this.leakAction = action;
+      return this;
+    }
+
+    /**
+     * Set the number of prepared statements that each connection keeps to be reused.
+     *
+     * @see ConnectionPool#cacheStatements(int)
+     * @param size the size of the cache of each connection, 0 to close statements after use
+     * @return this same instance
+     */
+    @NonNull
+    public LazySQLBuilder setStatementCache(int size) {
+      this.statementCache = size;
+      return this;
+    }
+
     /**
      * Add subloader builds for sql.
      *
@@ -325,7 +453,17 @@ public class LazySQL implements Loader {
 
     @Override
     public @NonNull LazySQL build() {
-      LazySQL sql = new LazySQL(supplier, schema, new ArrayList<>(), cache, handler, base, max);
+      LazySQL sql =
+          new LazySQL(
+              supplier, schema, new ArrayList<>(), cache, handler, base, max, maxWait, maxWaitUnit);
+      sql.getPool()
+          .validate(validation, validationTimeout)
+          .idleTimeout(idleTimeout, TimeUnit.MILLISECONDS)
+          .maxLifetime(maxLifetime, TimeUnit.MILLISECONDS)
+          .keepalive(keepalive, TimeUnit.MILLISECONDS)
+          .housekeeping(housekeeping, TimeUnit.MILLISECONDS)
+          .detectLeaks(leakThreshold, TimeUnit.MILLISECONDS, leakSampling, leakAction)
+          .cacheStatements(statementCache);
       subloaders.forEach(
           builder -> {
             LazySQLSubloader subloader = builder.build(sql);
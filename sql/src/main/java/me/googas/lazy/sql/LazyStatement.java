@@ -8,7 +8,10 @@ import lombok.NonNull;
 
 /**
  * This wraps a {@link PreparedStatement} to execute and when finish easily close it and return the
- * connection to the {@link LazySQL} pool.
+ * connection to the {@link LazySQL} pool. If the pool caches statements the same statement is
+ * reused by the next executions in the connection, so the supplier must not close it.
+ *
+ * @see ConnectionPool#cacheStatements(int)
  */
 public class LazyStatement {
 
@@ -61,11 +64,7 @@ public class LazyStatement {
     O o = null;
     try {
       connection = this.parent.getConnection();
-      if (statement != 0) {
-        preparedStatement = connection.prepareStatement(sql, statement);
-      } else {
-        preparedStatement = connection.prepareStatement(sql);
-      }
+      preparedStatement = this.parent.getPool().prepare(connection, sql, statement);
       o = supplier.accept(preparedStatement);
     } catch (SQLException e) {
       this.parent.getHandler().accept(e);
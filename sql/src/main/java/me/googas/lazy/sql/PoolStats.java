@@ -0,0 +1,123 @@
+package me.googas.lazy.sql;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A snapshot of the statistics of a {@link ConnectionPool}. Counts start when the pool is created
+ * and never reset, to get the statistics of a period subtract two snapshots using {@link
+ * #minus(PoolStats)}. The number of active, idle and waiting threads are the ones at the moment of
+ * the snapshot.
+ *
+ * @see ConnectionPool#getStats()
+ */
+public final class PoolStats {
+
+  /** The maximum number of connections in use. */
+  @Getter private final int max;
+  /** The number of connections in use. */
+  @Getter private final int active;
+  /** The number of idle connections. */
+  @Getter private final int idle;
+  /** The number of threads waiting for a connection. */
+  @Getter private final int waiting;
+  /** The number of connections opened by the pool. */
+  @Getter private final long created;
+  /** The number of connections closed by the pool. */
+  @Getter private final long closed;
+  /** The number of connections given to threads. */
+  @Getter private final long acquires;
+  /** The number of threads that did not get a connection in the maximum wait. */
+  @Getter private final long timeouts;
+  /** The number of connections that were in use for longer than the leak threshold. */
+  @Getter private final long leaks;
+  /** The nanoseconds that threads waited to get a connection. */
+  @NonNull @Getter private final Histogram acquireTime;
+  /** The nanoseconds that connections were in use before being released. */
+  @NonNull @Getter private final Histogram holdTime;
+
+  PoolStats(
+      int max,
+      int active,
+      int idle,
+      int waiting,
+      long created,
+      long closed,
+      long acquires,
+      long timeouts,
+      long leaks,
+      @NonNull Histogram acquireTime,
+      @NonNull Histogram holdTime) {
+    this.max = max;
+    this.active = active;
+    this.idle = idle;
+    this.waiting = waiting;
+    this.created = created;
+    this.closed = closed;
+    this.acquires = acquires;
+    this.timeouts = timeouts;
+    this.leaks = leaks;
+    this.acquireTime = acquireTime;
+    this.holdTime = holdTime;
+  }
+
+  /**
+   * Get the ratio of the maximum connections that are in use.
+   *
+   * @return the ratio from 0 to 1
+   */
+  public double getUsage() {
+    return (double) this.active / this.max;
+  }
+
+  /**
+   * Get the statistics recorded since a previous snapshot. The number of active, idle and waiting
+   * threads are the ones of this snapshot
+   *
+   * @param other the previous snapshot
+   * @return the difference between the snapshots
+   */
+  @NonNull
+  public PoolStats minus(@NonNull PoolStats other) {
+    return new PoolStats(
+        this.max,
+        this.active,
+        this.idle,
+        this.waiting,
+        this.created - other.created,
+        this.closed - other.closed,
+        this.acquires - other.acquires,
+        this.timeouts - other.timeouts,
+        this.leaks - other.leaks,
+        this.acquireTime.minus(other.acquireTime),
+        this.holdTime.minus(other.holdTime));
+  }
+
+  @Override
+  public String toString() {
+    return "PoolStats{"
+        + "max="
+        + this.max
+        + ", active="
+        + this.active
+        + ", idle="
+        + this.idle
+        + ", waiting="
+        + this.waiting
+        + ", created="
+        + this.created
+        + ", closed="
+        + this.closed
+        + ", acquires="
+        + this.acquires
+        + ", timeouts="
+        + this.timeouts
+        + ", leaks="
+        + this.leaks
+        + ", acquireTime="
+        + this.acquireTime
+        + ", holdTime="
+        + this.holdTime
+        + '}';
+  }
+}
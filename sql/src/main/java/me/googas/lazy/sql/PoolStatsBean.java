@@ -0,0 +1,180 @@
+package me.googas.lazy.sql;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.NonNull;
+
+/**
+ * Publishes the {@link PoolStats} of a {@link ConnectionPool} through JMX:
+ *
+ * <pre>
+ *     ObjectName name = PoolStatsBean.register(sql.getPool(), "main");
+ * </pre>
+ *
+ * <p>Taking the statistics copies the histograms of the pool, so the attributes are read from a
+ * snapshot that is only taken again once it is older than an interval, a second by default. A tool
+ * that reads every attribute at once copies the histograms a single time and gets values that agree
+ * with each other.
+ */
+public class PoolStatsBean implements PoolStatsMXBean {
+
+  @NonNull private final ConnectionPool pool;
+  private final long interval;
+
+  private volatile PoolStats stats;
+  private volatile long takenAt;
+
+  /**
+   * Create the bean.
+   *
+   * @param pool the pool to publish the statistics of
+   * @param interval the time that a snapshot of the statistics is used before taking another
+   * @param unit the unit of the interval
+   */
+  public PoolStatsBean(@NonNull ConnectionPool pool, long interval, @NonNull TimeUnit unit) {
+    this.pool = pool;
+    this.interval = unit.toNanos(interval);
+  }
+
+  /**
+   * Create the bean taking a snapshot of the statistics at most once a second.
+   *
+   * @param pool the pool to publish the statistics of
+   */
+  public PoolStatsBean(@NonNull ConnectionPool pool) {
+    this(pool, 1, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Register the statistics of a pool in the platform {@link MBeanServer} with the name {@code
+   * me.googas.lazy:type=ConnectionPool,name=<name>}.
+   *
+   * @param pool the pool to publish the statistics of
+   * @param name the name to identify the pool
+   * @return the name of the registered bean, to unregister it once the pool is closed
+   * @throws JMException if the bean could not be registered
+   */
+  @NonNull
+  public static ObjectName register(@NonNull ConnectionPool pool, @NonNull String name)
+      throws JMException {
+    return PoolStatsBean.register(new PoolStatsBean(pool), name);
+  }
+
+  /**
+   * Register a bean in the platform {@link MBeanServer} with the name {@code
+   * me.googas.lazy:type=ConnectionPool,name=<name>}.
+   *
+   * @param bean the bean to register
+   * @param name the name to identify the pool
+   * @return the name of the registered bean, to unregister it once the pool is closed
+   * @throws JMException if the bean could not be registered
+   */
+  @NonNull
+  public static ObjectName register(@NonNull PoolStatsBean bean, @NonNull String name)
+      throws JMException {
+    ObjectName objectName =
+        new ObjectName("me.googas.lazy:type=ConnectionPool,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+    return objectName;
+  }
+
+  /**
+   * Get the snapshot of the statistics, taking a new one if it is older than the interval.
+   *
+   * @return the snapshot of the statistics
+   */
+  @NonNull
+  private PoolStats stats() {
+    PoolStats stats = this.stats;
+    long now = System.nanoTime();
+    if (stats == null || now - this.takenAt >= this.interval) {
+      stats = this.pool.getStats();
+      this.stats = stats;
+      this.takenAt = now;
+    }
+    return stats;
+  }
+
+  @Override
+  public int getMax() {
+    return this.stats().getMax();
+  }
+
+  @Override
+  public int getActive() {
+    return this.stats().getActive();
+  }
+
+  @Override
+  public int getIdle() {
+    return this.stats().getIdle();
+  }
+
+  @Override
+  public int getWaiting() {
+    return this.stats().getWaiting();
+  }
+
+  @Override
+  public double getUsage() {
+    return this.stats().getUsage();
+  }
+
+  @Override
+  public long getCreated() {
+    return this.stats().getCreated();
+  }
+
+  @Override
+  public long getClosed() {
+    return this.stats().getClosed();
+  }
+
+  @Override
+  public long getAcquires() {
+    return this.stats().getAcquires();
+  }
+
+  @Override
+  public long getTimeouts() {
+    return this.stats().getTimeouts();
+  }
+
+  @Override
+  public long getLeaks() {
+    return this.stats().getLeaks();
+  }
+
+  @Override
+  public double getAcquireTimeMean() {
+    return this.stats().getAcquireTime().getMean();
+  }
+
+  @Override
+  public long getAcquireTime99thPercentile() {
+    return this.stats().getAcquireTime().getPercentile(0.99);
+  }
+
+  @Override
+  public long getAcquireTimeMax() {
+    return this.stats().getAcquireTime().getMax();
+  }
+
+  @Override
+  public double getHoldTimeMean() {
+    return this.stats().getHoldTime().getMean();
+  }
+
+  @Override
+  public long getHoldTime99thPercentile() {
+    return this.stats().getHoldTime().getPercentile(0.99);
+  }
+
+  @Override
+  public long getHoldTimeMax() {
+    return this.stats().getHoldTime().getMax();
+  }
+}
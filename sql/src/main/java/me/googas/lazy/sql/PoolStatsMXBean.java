@@ -0,0 +1,121 @@
+package me.googas.lazy.sql;
+
+/**
+ * The statistics of a {@link ConnectionPool} published through JMX. Durations are in nanoseconds.
+ *
+ * @see PoolStatsBean#register(ConnectionPool, String)
+ */
+public interface PoolStatsMXBean {
+
+  /**
+   * Get the maximum number of connections in use.
+   *
+   * @return the maximum connections
+   */
+  int getMax();
+
+  /**
+   * Get the number of connections in use.
+   *
+   * @return the number of active connections
+   */
+  int getActive();
+
+  /**
+   * Get the number of idle connections.
+   *
+   * @return the number of idle connections
+   */
+  int getIdle();
+
+  /**
+   * Get the number of threads waiting for a connection.
+   *
+   * @return the number of waiting threads
+   */
+  int getWaiting();
+
+  /**
+   * Get the ratio of the maximum connections that are in use.
+   *
+   * @return the ratio from 0 to 1
+   */
+  double getUsage();
+
+  /**
+   * Get the number of connections opened by the pool.
+   *
+   * @return the number of created connections
+   */
+  long getCreated();
+
+  /**
+   * Get the number of connections closed by the pool.
+   *
+   * @return the number of closed connections
+   */
+  long getClosed();
+
+  /**
+   * Get the number of connections given to threads.
+   *
+   * @return the number of acquires
+   */
+  long getAcquires();
+
+  /**
+   * Get the number of threads that did not get a connection in the maximum wait.
+   *
+   * @return the number of timeouts
+   */
+  long getTimeouts();
+
+  /**
+   * Get the number of connections that were in use for longer than the leak threshold.
+   *
+   * @return the number of leaks
+   */
+  long getLeaks();
+
+  /**
+   * Get the average time that threads waited to get a connection.
+   *
+   * @return the average nanoseconds
+   */
+  double getAcquireTimeMean();
+
+  /**
+   * Get the time under which 99% of the threads got a connection.
+   *
+   * @return the nanoseconds of the 99th percentile
+   */
+  long getAcquireTime99thPercentile();
+
+  /**
+   * Get the longest time that a thread waited to get a connection.
+   *
+   * @return the maximum nanoseconds
+   */
+  long getAcquireTimeMax();
+
+  /**
+   * Get the average time that connections were in use.
+   *
+   * @return the average nanoseconds
+   */
+  double getHoldTimeMean();
+
+  /**
+   * Get the time under which 99% of the connections were released.
+   *
+   * @return the nanoseconds of the 99th percentile
+   */
+  long getHoldTime99thPercentile();
+
+  /**
+   * Get the longest time that a connection was in use.
+   *
+   * @return the maximum nanoseconds
+   */
+  long getHoldTimeMax();
+}
@@ -0,0 +1,93 @@
+package me.googas.lazy.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import lombok.NonNull;
+
+/**
+ * The statements prepared by a connection of a {@link ConnectionPool} ordered from the least to the
+ * most recently used. It is only used by the thread that holds the connection.
+ *
+ * <p>Cached statements are wrapped in a {@link CachedStatement} to remember the result sets that
+ * they give, statements are only closed once they are evicted so the result sets that the code
+ * using them left open are closed when the statement is reset. Otherwise they would keep the
+ * database busy until the statement is executed again.
+ *
+ * @see ConnectionPool#cacheStatements(int)
+ */
+final class StatementCache extends LinkedHashMap<StatementCache.Key, CachedStatement> {
+
+  private static final long serialVersionUID = 1L;
+
+  @NonNull private final transient ConnectionPool pool;
+
+  StatementCache(@NonNull ConnectionPool pool) {
+    super(16, 0.75f, true);
+    this.pool = pool;
+  }
+
+  /**
+   * Get the statement of a sql or prepare it if it is not cached.
+   *
+   * @param connection the connection that owns this cache
+   * @param sql the sql of the statement
+   * @param keys the {@link java.sql.Statement} flag of generated keys
+   * @return the cached statement
+   * @throws SQLException if the statement could not be prepared
+   */
+  @NonNull
+  PreparedStatement prepare(@NonNull Connection connection, @NonNull String sql, int keys)
+      throws SQLException {
+    Key key = new Key(sql, keys);
+    CachedStatement statement = this.get(key);
+    // The statement may have been closed by the code that used it
+    if (statement == null || statement.isClosed()) {
+      if (statement != null) statement.cached = false;
+      statement =
+          new CachedStatement(ConnectionPool.prepareStatement(connection, sql, keys), this, key);
+      this.put(key, statement);
+    }
+    return statement;
+  }
+
+  @Override
+  protected boolean removeEldestEntry(Map.Entry<Key, CachedStatement> eldest) {
+    if (this.size() <= this.pool.getStatementCache()) return false;
+    eldest.getValue().cached = false;
+    try {
+      eldest.getValue().close();
+    } catch (SQLException e) {
+      this.pool.getHandler().accept(e);
+    }
+    return true;
+  }
+
+  /** Statements are the same if they have the same sql and generated keys flag. */
+  static final class Key {
+
+    @NonNull private final String sql;
+    private final int keys;
+
+    private Key(@NonNull String sql, int keys) {
+      this.sql = sql;
+      this.keys = keys;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return this.keys == key.keys && this.sql.equals(key.sql);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.sql, this.keys);
+    }
+  }
+}
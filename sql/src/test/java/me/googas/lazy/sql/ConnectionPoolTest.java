@@ -0,0 +1,353 @@
+package me.googas.lazy.sql;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.NonNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConnectionPoolTest {
+
+  static ConnectionPool pool(int base, int max, long maxWait) {
+    return ConnectionPoolTest.pool(
+        base,
+        max,
+        maxWait,
+        e -> {
+          throw new AssertionError(e);
+        });
+  }
+
+  static ConnectionPool pool(
+      int base, int max, long maxWait, @NonNull Consumer<SQLException> handler) {
+    return ConnectionPoolTest.pool(base, max, maxWait, handler, System::nanoTime);
+  }
+
+  static ConnectionPool pool(
+      int base,
+      int max,
+      long maxWait,
+      @NonNull Consumer<SQLException> handler,
+      @NonNull LongSupplier ticker) {
+    return new ConnectionPool(
+        () -> DriverManager.getConnection("jdbc:sqlite::memory:"),
+        handler,
+        base,
+        max,
+        maxWait,
+        TimeUnit.MILLISECONDS,
+        ticker);
+  }
+
+  static ConnectionPool pool(int base, int max, long maxWait, @NonNull AtomicLong ticker) {
+    return ConnectionPoolTest.pool(
+        base,
+        max,
+        maxWait,
+        e -> {
+          throw new AssertionError(e);
+        },
+        ticker::get);
+  }
+
+  @Test
+  public void contention() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(1, 2, 5000);
+    pool.start();
+    Assertions.assertEquals(1, pool.getIdle());
+    AtomicInteger inUse = new AtomicInteger();
+    AtomicInteger maxInUse = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  for (int i = 0; i < 50; i++) {
+                    Connection connection = pool.acquire();
+                    maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                    Thread.sleep(1);
+                    inUse.decrementAndGet();
+                    pool.release(connection);
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    // The connections in use never went above the maximum
+    Assertions.assertTrue(maxInUse.get() <= 2);
+    Assertions.assertEquals(0, pool.getUsed());
+    Assertions.assertEquals(0, pool.getWaiting());
+    Assertions.assertTrue(pool.getIdle() >= 1 && pool.getIdle() <= 2);
+    pool.close();
+  }
+
+  @Test
+  public void handOff() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 5000);
+    pool.start();
+    Connection connection = pool.acquire();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Connection> waiting = executor.submit(pool::acquire);
+      while (pool.getWaiting() == 0) {
+        Thread.sleep(1);
+      }
+      // The waiting thread is given the released connection instead of opening another
+      pool.release(connection);
+      Connection handed = waiting.get();
+      Assertions.assertSame(connection, handed);
+      pool.release(handed);
+    } finally {
+      executor.shutdown();
+    }
+    Assertions.assertThrows(IllegalArgumentException.class, () -> pool.release(connection));
+    pool.close();
+  }
+
+  @Test
+  public void idleTimeout() throws Exception {
+    AtomicLong ticker = new AtomicLong();
+    ConnectionPool pool =
+        ConnectionPoolTest.pool(1, 3, 5000, ticker).idleTimeout(50, TimeUnit.MILLISECONDS);
+    pool.start();
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      connections.add(pool.acquire());
+    }
+    for (Connection connection : connections) {
+      pool.release(connection);
+    }
+    // Released connections stay idle until they time out
+    Assertions.assertEquals(3, pool.getIdle());
+    pool.housekeep();
+    Assertions.assertEquals(3, pool.getIdle());
+    ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+    pool.housekeep();
+    Assertions.assertEquals(1, pool.getIdle());
+    Assertions.assertEquals(2, connections.stream().filter(ConnectionPoolTest::isClosed).count());
+    pool.close();
+  }
+
+  @Test
+  public void withoutIdleTimeout() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(1, 3, 5000);
+    pool.start();
+    List<Connection> connections = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      connections.add(pool.acquire());
+    }
+    for (Connection connection : connections) {
+      pool.release(connection);
+    }
+    // Nothing would close the connections above the base later so they are closed on release
+    Assertions.assertEquals(1, pool.getIdle());
+    Assertions.assertEquals(2, connections.stream().filter(ConnectionPoolTest::isClosed).count());
+    pool.close();
+  }
+
+  @Test
+  public void health() throws Exception {
+    AtomicLong ticker = new AtomicLong();
+    ConnectionPool pool =
+        ConnectionPoolTest.pool(1, 2, 5000, ticker).maxLifetime(50, TimeUnit.MILLISECONDS);
+    pool.start();
+    Connection connection = pool.acquire();
+    ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+    // Connections that outlived the maximum lifetime are closed when released
+    pool.release(connection);
+    Assertions.assertTrue(connection.isClosed());
+    // and replaced by the housekeeping when idle
+    pool.housekeep();
+    Assertions.assertEquals(1, pool.getIdle());
+    Connection idle = pool.acquire();
+    pool.release(idle);
+    ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+    pool.housekeep();
+    Assertions.assertTrue(idle.isClosed());
+    Assertions.assertEquals(1, pool.getIdle());
+    // Dead idle connections are not given
+    Connection dead = pool.acquire();
+    pool.release(dead);
+    dead.close();
+    Connection replaced = pool.acquire();
+    Assertions.assertNotSame(dead, replaced);
+    Assertions.assertFalse(replaced.isClosed());
+    pool.release(replaced);
+    pool.close();
+  }
+
+  @Test
+  public void timeout() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 100);
+    pool.start();
+    Connection connection = pool.acquire();
+    long start = System.nanoTime();
+    Assertions.assertThrows(SQLTimeoutException.class, pool::acquire);
+    Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    // The permit of the timed out thread was not taken
+    pool.release(connection);
+    pool.release(pool.acquire());
+    pool.close();
+  }
+
+  @Test
+  public void stats() throws Exception {
+    AtomicLong ticker = new AtomicLong();
+    ConnectionPool pool = ConnectionPoolTest.pool(1, 2, 50, ticker);
+    pool.start();
+    PoolStats before = pool.getStats();
+    Connection first = pool.acquire();
+    Connection second = pool.acquire();
+    Assertions.assertThrows(SQLTimeoutException.class, pool::acquire);
+    PoolStats stats = pool.getStats();
+    Assertions.assertEquals(2, stats.getActive());
+    Assertions.assertEquals(0, stats.getIdle());
+    Assertions.assertEquals(1.0, stats.getUsage());
+    Assertions.assertEquals(2, stats.getAcquires());
+    Assertions.assertEquals(1, stats.getTimeouts());
+    Assertions.assertEquals(2, stats.getCreated());
+    ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(5));
+    pool.release(first);
+    pool.release(second);
+    PoolStats since = pool.getStats().minus(before);
+    Assertions.assertEquals(2, since.getAcquires());
+    Assertions.assertEquals(1, since.getCreated());
+    Assertions.assertEquals(2, since.getAcquireTime().getCount());
+    Assertions.assertEquals(2, since.getHoldTime().getCount());
+    Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(5), since.getHoldTime().getMax(), 1e5);
+    // The statistics are published through JMX
+    ObjectName name = PoolStatsBean.register(pool, "test");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      Assertions.assertEquals(2L, server.getAttribute(name, "Acquires"));
+      // The second connection is above the base and there's no idle timeout
+      Assertions.assertEquals(1, server.getAttribute(name, "Idle"));
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+    pool.close();
+  }
+
+  @Test
+  public void beanSnapshot() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 2, 50);
+    pool.start();
+    PoolStatsBean bean = new PoolStatsBean(pool, 1, TimeUnit.HOURS);
+    Assertions.assertEquals(0, bean.getAcquires());
+    Connection connection = pool.acquire();
+    // Every attribute is read from the same snapshot until the interval elapses
+    Assertions.assertEquals(0, bean.getAcquires());
+    Assertions.assertEquals(0, bean.getActive());
+    PoolStatsBean current = new PoolStatsBean(pool, 0, TimeUnit.SECONDS);
+    Assertions.assertEquals(1, current.getAcquires());
+    Assertions.assertEquals(1, current.getActive());
+    Assertions.assertEquals(0.5, current.getUsage());
+    pool.release(connection);
+    pool.close();
+  }
+
+  @Test
+  public void leakWarning() throws Exception {
+    List<SQLException> handled = new CopyOnWriteArrayList<>();
+    AtomicLong ticker = new AtomicLong();
+    ConnectionPool pool =
+        ConnectionPoolTest.pool(0, 1, 50, handled::add, ticker::get)
+            .detectLeaks(20, TimeUnit.MILLISECONDS, 1, ConnectionPool.LeakAction.WARN);
+    pool.start();
+    Connection connection = pool.acquire();
+    pool.housekeep();
+    Assertions.assertTrue(handled.isEmpty());
+    ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+    pool.housekeep();
+    // Each leak is reported once with where the connection was acquired
+    pool.housekeep();
+    Assertions.assertEquals(1, handled.size());
+    ConnectionLeakException leak = (ConnectionLeakException) handled.get(0);
+    Assertions.assertFalse(leak.isReclaimed());
+    Assertions.assertEquals(30, leak.getHeld());
+    Assertions.assertNotNull(leak.getCause());
+    Assertions.assertEquals(1, pool.getStats().getLeaks());
+    // The connection stays in use
+    Assertions.assertFalse(connection.isClosed());
+    Assertions.assertEquals(1, pool.getUsed());
+    pool.release(connection);
+    pool.close();
+  }
+
+  @Test
+  public void leakReclaim() throws Exception {
+    List<SQLException> handled = new CopyOnWriteArrayList<>();
+    AtomicLong ticker = new AtomicLong();
+    ConnectionPool pool =
+        ConnectionPoolTest.pool(0, 1, 50, handled::add, ticker::get)
+            .detectLeaks(20, TimeUnit.MILLISECONDS, 0, ConnectionPool.LeakAction.RECLAIM);
+    pool.start();
+    Connection connection = pool.acquire();
+    ticker.addAndGet(TimeUnit.MILLISECONDS.toNanos(30));
+    pool.housekeep();
+    Assertions.assertEquals(1, handled.size());
+    ConnectionLeakException leak = (ConnectionLeakException) handled.get(0);
+    Assertions.assertTrue(leak.isReclaimed());
+    Assertions.assertNull(leak.getCause());
+    // The connection is closed and its place may be used by another thread
+    Assertions.assertTrue(connection.isClosed());
+    Assertions.assertEquals(0, pool.getUsed());
+    Connection other = pool.acquire();
+    Assertions.assertNotSame(connection, other);
+    // Releasing the reclaimed connection later is not an error
+    pool.release(connection);
+    pool.release(other);
+    Assertions.assertEquals(1, handled.size());
+    pool.close();
+  }
+
+  private static boolean isClosed(Connection connection) {
+    try {
+      return connection.isClosed();
+    } catch (SQLException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Test
+  public void closeWhileBorrowed() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(1, 2, 5000);
+    pool.start();
+    Connection connection = pool.acquire();
+    pool.close();
+    // Connections in use are closed too and releasing them later is not an error
+    Assertions.assertTrue(connection.isClosed());
+    Assertions.assertEquals(0, pool.getUsed());
+    Assertions.assertEquals(0, pool.getIdle());
+    pool.release(connection);
+    SQLException e = Assertions.assertThrows(SQLException.class, pool::acquire);
+    Assertions.assertFalse(e instanceof SQLTimeoutException);
+  }
+}
@@ -0,0 +1,41 @@
+package me.googas.lazy.sql;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+  @Test
+  public void percentiles() {
+    Histogram.Recorder recorder = new Histogram.Recorder();
+    Assertions.assertEquals(0, recorder.snapshot().getPercentile(0.99));
+    for (int i = 0; i < 99; i++) {
+      recorder.record(100);
+    }
+    recorder.record(1_000_000);
+    recorder.record(-5);
+    Histogram histogram = recorder.snapshot();
+    Assertions.assertEquals(101, histogram.getCount());
+    Assertions.assertEquals(1_000_000, histogram.getMax());
+    Assertions.assertEquals((99 * 100 + 1_000_000) / 101d, histogram.getMean(), 0.001);
+    // Percentiles are the upper bound of their bucket, precise up to a factor of two
+    long median = histogram.getPercentile(0.5);
+    Assertions.assertTrue(median >= 100 && median < 200);
+    Assertions.assertEquals(1_000_000, histogram.getPercentile(1));
+    Assertions.assertEquals(0, histogram.getPercentile(0));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(2));
+  }
+
+  @Test
+  public void minus() {
+    Histogram.Recorder recorder = new Histogram.Recorder();
+    recorder.record(100);
+    Histogram before = recorder.snapshot();
+    recorder.record(5000);
+    recorder.record(5000);
+    Histogram since = recorder.snapshot().minus(before);
+    Assertions.assertEquals(2, since.getCount());
+    Assertions.assertEquals(10000, since.getTotal());
+    Assertions.assertTrue(since.getPercentile(0.5) >= 5000);
+  }
+}
@@ -0,0 +1,110 @@
+package me.googas.lazy.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StatementCacheTest {
+
+  @Test
+  public void reuse() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 5000).cacheStatements(2);
+    pool.start();
+    Connection connection = pool.acquire();
+    PreparedStatement statement = pool.prepare(connection, "SELECT ?", 0);
+    statement.setInt(1, 1);
+    pool.release(statement);
+    // The same statement is given back with its parameters cleared
+    Assertions.assertSame(statement, pool.prepare(connection, "SELECT ?", 0));
+    Assertions.assertFalse(statement.isClosed());
+    Assertions.assertNotSame(statement, pool.prepare(connection, "SELECT ?", 1));
+    // A statement closed by the code that used it is prepared again
+    statement.close();
+    PreparedStatement prepared = pool.prepare(connection, "SELECT ?", 0);
+    Assertions.assertNotSame(statement, prepared);
+    pool.release(prepared);
+    pool.release(connection);
+    pool.close();
+  }
+
+  @Test
+  public void disabled() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 5000);
+    pool.start();
+    Connection connection = pool.acquire();
+    PreparedStatement statement = pool.prepare(connection, "SELECT 1", 0);
+    pool.release(statement);
+    Assertions.assertTrue(statement.isClosed());
+    Assertions.assertNotSame(statement, pool.prepare(connection, "SELECT 1", 0));
+    pool.release(connection);
+    pool.close();
+  }
+
+  @Test
+  public void eviction() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 5000).cacheStatements(2);
+    pool.start();
+    Connection connection = pool.acquire();
+    PreparedStatement first = pool.prepare(connection, "SELECT 1", 0);
+    pool.release(first);
+    PreparedStatement second = pool.prepare(connection, "SELECT 2", 0);
+    pool.release(second);
+    // Using the first statement again makes the second the least recently used
+    pool.release(pool.prepare(connection, "SELECT 1", 0));
+    PreparedStatement third = pool.prepare(connection, "SELECT 3", 0);
+    pool.release(third);
+    Assertions.assertTrue(second.isClosed());
+    Assertions.assertFalse(first.isClosed());
+    Assertions.assertSame(first, pool.prepare(connection, "SELECT 1", 0));
+    Assertions.assertNotSame(second, pool.prepare(connection, "SELECT 2", 0));
+    pool.release(connection);
+    pool.close();
+  }
+
+  @Test
+  public void results() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 5000).cacheStatements(2);
+    pool.start();
+    Connection connection = pool.acquire();
+    PreparedStatement statement = pool.prepare(connection, "SELECT 1", 0);
+    ResultSet result = statement.executeQuery();
+    Assertions.assertTrue(result.next());
+    // The result set left open is closed when the statement is released
+    pool.release(statement);
+    Assertions.assertTrue(result.isClosed());
+    Assertions.assertFalse(statement.isClosed());
+    ResultSet again = pool.prepare(connection, "SELECT 1", 0).executeQuery();
+    Assertions.assertTrue(again.next());
+    Assertions.assertEquals(1, again.getInt(1));
+    pool.release(statement);
+    Assertions.assertTrue(again.isClosed());
+    Assertions.assertTrue(statement.isWrapperFor(PreparedStatement.class));
+    pool.release(connection);
+    pool.close();
+  }
+
+  @Test
+  public void settings() throws Exception {
+    ConnectionPool pool = ConnectionPoolTest.pool(0, 1, 5000).cacheStatements(2);
+    pool.start();
+    Connection connection = pool.acquire();
+    PreparedStatement statement = pool.prepare(connection, "SELECT 1", 0);
+    int maxRows = statement.getMaxRows();
+    int timeout = statement.getQueryTimeout();
+    statement.setMaxRows(maxRows + 1);
+    statement.setQueryTimeout(timeout + 1);
+    // A statement with changed settings is closed instead of reaching the next caller
+    pool.release(statement);
+    Assertions.assertTrue(statement.isClosed());
+    PreparedStatement prepared = pool.prepare(connection, "SELECT 1", 0);
+    Assertions.assertNotSame(statement, prepared);
+    Assertions.assertEquals(maxRows, prepared.getMaxRows());
+    Assertions.assertEquals(timeout, prepared.getQueryTimeout());
+    pool.release(prepared);
+    Assertions.assertSame(prepared, pool.prepare(connection, "SELECT 1", 0));
+    pool.release(connection);
+    pool.close();
+  }
+}